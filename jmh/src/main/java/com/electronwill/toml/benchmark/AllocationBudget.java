@@ -0,0 +1,175 @@
+package com.electronwill.toml.benchmark;
+
+import com.electronwill.toml.FastStringWriter;
+import com.electronwill.toml.Toml;
+import com.electronwill.toml.TomlReader;
+import com.electronwill.toml.TomlWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * Measures the number of bytes allocated to parse and to write each {@link Corpus}, and compares it to the budgets
+ * of a properties file. Exits with the status 1 if an operation allocates more than its budget.
+ * <p>
+ * A budget is a number of bytes allocated per character of TOML data (read or written), for example
+ * {@code read\:STRING_HEAVY=4.5}. The allocations are measured with
+ * {@link com.sun.management.ThreadMXBean#getThreadAllocatedBytes(long)}, after a warmup, and the lowest measure
+ * is kept. Unlike the throughput, they hardly depend on the machine, but they may depend on the JVM.
+ * </p>
+ * <p>
+ * Arguments: {@code --budgets <file> [--update [--margin <fraction>]]}. With --update, or if the file doesn't
+ * exist, the budgets are set to the measures plus the margin (0.1 by default, ie 10%).
+ * </p>
+ */
+public final class AllocationBudget {
+
+	private static final int WARMUP = 20, MEASURES = 5;
+
+	private AllocationBudget() {}
+
+	/**
+	 * An operation whose allocations are measured.
+	 */
+	private enum Operation {
+		/** TomlReader.read() on a String */
+		read,
+		/** Toml.read(Reader): decodes the input to a String and parses it */
+		readReader,
+		/** TomlWriter.write() to a FastStringWriter */
+		write,
+		/** Toml.writeToString() */
+		writeToString
+	}
+
+	public static void main(String[] args) throws IOException {
+		File budgetsFile = null;
+		boolean update = false;
+		double margin = 0.1;
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+				case "--budgets":
+					budgetsFile = new File(args[++i]);
+					break;
+				case "--update":
+					update = true;
+					break;
+				case "--margin":
+					margin = Double.parseDouble(args[++i]);
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown argument " + args[i]);
+			}
+		}
+		if (budgetsFile == null) {
+			System.err.println("Usage: AllocationBudget --budgets <file> [--update [--margin <fraction>]]");
+			System.exit(2);
+		}
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		if (!threads.isThreadAllocatedMemorySupported()) {
+			System.err.println("This JVM can't measure the allocated memory");
+			System.exit(2);
+		}
+		threads.setThreadAllocatedMemoryEnabled(true);
+
+		Map<String, Double> budgets = (update || !budgetsFile.exists()) ? null : load(budgetsFile);
+		Map<String, Double> measures = new TreeMap<>();
+		boolean failed = false;
+		System.out.println(String.format("%-32s %10s %14s %10s %10s", "Operation", "Chars", "Allocated", "Bytes/char",
+				"Budget"));
+		for (Corpus corpus : Corpus.values()) {
+			String toml = corpus.generateToml();
+			Map<String, Object> data = corpus.generateData();
+			for (Operation operation : Operation.values()) {
+				long allocated = measure(threads, operation, toml, data);
+				double ratio = (double) allocated / toml.length();
+				String name = operation + ":" + corpus;
+				measures.put(name, ratio);
+				Double budget = (budgets == null) ? null : budgets.get(name);
+				boolean exceeded = budget != null && ratio > budget;
+				failed |= exceeded;
+				System.out.println(String.format("%-32s %10d %14d %10.3f %10s%s", name, toml.length(), allocated, ratio,
+						(budget == null) ? "-" : String.format("%.3f", budget), exceeded ? "  OVER BUDGET" : ""));
+			}
+		}
+		if (budgets == null) {
+			save(measures, margin, budgetsFile);
+			System.out.println("Budgets saved to " + budgetsFile);
+		} else if (failed) {
+			System.out.println("Some operations allocate more than their budget in " + budgetsFile);
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Runs an operation several times, and returns the lowest number of bytes that it allocated.
+	 */
+	private static long measure(com.sun.management.ThreadMXBean threads, Operation operation, String toml,
+			Map<String, Object> data) throws IOException {
+		long thread = Thread.currentThread().getId();
+		long min = Long.MAX_VALUE;
+		for (int i = 0; i < WARMUP + MEASURES; i++) {
+			long before = threads.getThreadAllocatedBytes(thread);
+			run(operation, toml, data);
+			long allocated = threads.getThreadAllocatedBytes(thread) - before;
+			if (i >= WARMUP) {
+				min = Math.min(min, allocated);
+			}
+		}
+		return min;
+	}
+
+	private static void run(Operation operation, String toml, Map<String, Object> data) throws IOException {
+		switch (operation) {
+			case read:
+				new TomlReader(toml, false).read();
+				break;
+			case readReader:
+				Toml.read(new StringReader(toml), toml.length(), false);
+				break;
+			case write:
+				FastStringWriter writer = new FastStringWriter();
+				TomlWriter tw = new TomlWriter(writer);
+				tw.write(data);
+				writer.release();
+				break;
+			case writeToString:
+				Toml.writeToString(data);
+				break;
+		}
+	}
+
+	private static Map<String, Double> load(File file) throws IOException {
+		Properties properties = new Properties();
+		try (InputStream in = new FileInputStream(file)) {
+			properties.load(in);
+		}
+		Map<String, Double> map = new TreeMap<>();
+		for (String name : properties.stringPropertyNames()) {
+			map.put(name, Double.parseDouble(properties.getProperty(name)));
+		}
+		return map;
+	}
+
+	private static void save(Map<String, Double> measures, double margin, File file) throws IOException {
+		try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.ISO_8859_1)) {
+			writer.write("# Maximum number of bytes allocated per character of TOML data, checked by AllocationBudget\n");
+			writer.write("# java.version=" + System.getProperty("java.version") + ", margin=" + margin + "\n");
+			for (Map.Entry<String, Double> entry : measures.entrySet()) {
+				double budget = Math.ceil(entry.getValue() * (1 + margin) * 1000) / 1000;
+				writer.write(entry.getKey().replace(":", "\\:") + "=" + budget + "\n");
+			}
+		}
+	}
+
+}
@@ -0,0 +1,78 @@
+package com.electronwill.toml.benchmark;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * The shapes of the TOML documents used by the benchmarks. Each document is generated by a
+ * {@link CorpusGenerator} with a fixed seed, so the results of different runs can be compared. The documents are
+ * roughly 1 MB big.
+ */
+public enum Corpus {
+
+	/**
+	 * Tables nested in tables, up to 12 levels.
+	 */
+	DEEP_NESTING(new CorpusGenerator(Corpus.SEED).depth(12).valuesPerTable(4).tableArrayCardinality(0)),
+
+	/**
+	 * Big arrays of tables.
+	 */
+	HUGE_TABLE_ARRAYS(new CorpusGenerator(Corpus.SEED).depth(1).valuesPerTable(6).tableArrayCardinality(5_000)),
+
+	/**
+	 * Long strings, some of them with characters to escape.
+	 */
+	STRING_HEAVY(new CorpusGenerator(Corpus.SEED).valueMix(1, 0, 0, 0, 0, 0).escapeDensity(0.01)),
+
+	/**
+	 * Integers and decimals, in values and in arrays.
+	 */
+	NUMBER_HEAVY(new CorpusGenerator(Corpus.SEED).valueMix(0, 3, 3, 0, 0, 2)),
+
+	/**
+	 * Dates and datetimes, with and without offsets.
+	 */
+	DATE_HEAVY(new CorpusGenerator(Corpus.SEED).valueMix(0, 0, 0, 0, 4, 1)),
+
+	/**
+	 * The default mix of values, with many comments.
+	 */
+	COMMENT_HEAVY(new CorpusGenerator(Corpus.SEED).commentDensity(0.8)),
+
+	/**
+	 * Tables with many simple values.
+	 */
+	WIDE_FLAT(new CorpusGenerator(Corpus.SEED).depth(1).valuesPerTable(5_000).tableArrayCardinality(0));
+
+	/**
+	 * The seed used to generate the documents.
+	 */
+	public static final long SEED = 20161019;
+
+	private final CorpusGenerator generator;
+
+	private Corpus(CorpusGenerator generator) {
+		this.generator = generator;
+	}
+
+	/**
+	 * Generates the data of this corpus.
+	 *
+	 * @return the data, as it is given to Toml.write()
+	 */
+	public Map<String, Object> generateData() {
+		return generator.generateData();
+	}
+
+	/**
+	 * Generates the TOML document of this corpus.
+	 *
+	 * @return the document
+	 * @throws IOException if an error occurs
+	 */
+	public String generateToml() throws IOException {
+		return generator.generateToml();
+	}
+
+}
@@ -0,0 +1,363 @@
+package com.electronwill.toml.benchmark;
+
+import com.electronwill.toml.FastStringWriter;
+import com.electronwill.toml.TomlWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Generates synthetic TOML documents. The same parameters always give the same document, so the documents can be
+ * used to compare the performance of different versions of the library, on any machine.
+ * <p>
+ * A document is made of top-level tables, added until the document reaches the requested size. Each top-level
+ * table contains some simple values, a chain of nested sub-tables and an array of tables. Example:
+ *
+ * <pre>
+ * String toml = new CorpusGenerator(42).size(10_000_000).depth(4).tableArrayCardinality(100).generateToml();
+ * </pre>
+ * </p>
+ * It can also be run from the command line: {@code CorpusGenerator <file> [param=value...]}, where the params
+ * are seed, size, depth, cardinality, values, escapes, comments and mix. The mix is given as
+ * strings,integers,decimals,booleans,dates,arrays, for instance mix=4,2,1,1,1,1.
+ */
+public final class CorpusGenerator {
+
+	private static final int STRINGS = 0, INTEGERS = 1, DECIMALS = 2, BOOLEANS = 3, DATES = 4, ARRAYS = 5;
+
+	private final long seed;
+	private int size = 1_000_000, depth = 2, tableArrayCardinality = 10, valuesPerTable = 8;
+	private int[] mix = { 4, 2, 1, 1, 1, 1 };
+	private double escapeDensity = 0, commentDensity = 0;
+
+	/**
+	 * Creates a new CorpusGenerator with the default parameters.
+	 *
+	 * @param seed the seed of the random generator
+	 */
+	public CorpusGenerator(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * Sets the approximate size of the documents, in characters. The default size is 1 million characters.
+	 *
+	 * @param size the size
+	 * @return this CorpusGenerator
+	 */
+	public CorpusGenerator size(int size) {
+		this.size = size;
+		return this;
+	}
+
+	/**
+	 * Sets the nesting depth of the tables: 1 for top-level tables only, 2 to add one sub-table in each of them,
+	 * etc. The default depth is 2.
+	 *
+	 * @param depth the depth
+	 * @return this CorpusGenerator
+	 */
+	public CorpusGenerator depth(int depth) {
+		if (depth < 1)
+			throw new IllegalArgumentException("Invalid depth " + depth);
+		this.depth = depth;
+		return this;
+	}
+
+	/**
+	 * Sets the number of elements of the array of tables added in each top-level table, or 0 for no array of
+	 * tables. The default cardinality is 10.
+	 *
+	 * @param cardinality the number of elements
+	 * @return this CorpusGenerator
+	 */
+	public CorpusGenerator tableArrayCardinality(int cardinality) {
+		this.tableArrayCardinality = cardinality;
+		return this;
+	}
+
+	/**
+	 * Sets the number of simple values in each table. The default is 8.
+	 *
+	 * @param valuesPerTable the number of values
+	 * @return this CorpusGenerator
+	 */
+	public CorpusGenerator valuesPerTable(int valuesPerTable) {
+		this.valuesPerTable = valuesPerTable;
+		return this;
+	}
+
+	/**
+	 * Sets the relative frequency of each type of value. The default mix is 4, 2, 1, 1, 1, 1.
+	 *
+	 * @param strings the weight of the strings
+	 * @param integers the weight of the integers
+	 * @param decimals the weight of the decimals
+	 * @param booleans the weight of the booleans
+	 * @param dates the weight of the dates
+	 * @param arrays the weight of the arrays
+	 * @return this CorpusGenerator
+	 */
+	public CorpusGenerator valueMix(int strings, int integers, int decimals, int booleans, int dates, int arrays) {
+		int[] newMix = { strings, integers, decimals, booleans, dates, arrays };
+		int total = 0;
+		for (int weight : newMix) {
+			if (weight < 0)
+				throw new IllegalArgumentException("Invalid negative weight " + weight);
+			total += weight;
+		}
+		if (total == 0)
+			throw new IllegalArgumentException("At least one weight must be positive");
+		this.mix = newMix;
+		return this;
+	}
+
+	/**
+	 * Sets the probability for each character of a string to be a character that must be escaped, like a quote,
+	 * a backslash or a newline. The default is 0.
+	 *
+	 * @param escapeDensity the probability, between 0 and 1
+	 * @return this CorpusGenerator
+	 */
+	public CorpusGenerator escapeDensity(double escapeDensity) {
+		this.escapeDensity = escapeDensity;
+		return this;
+	}
+
+	/**
+	 * Sets the probability for each line of the document to be preceded by a comment line, and followed by an end
+	 * of line comment. The default is 0. The comments only exist in {@link #generateToml()}.
+	 *
+	 * @param commentDensity the probability, between 0 and 1
+	 * @return this CorpusGenerator
+	 */
+	public CorpusGenerator commentDensity(double commentDensity) {
+		this.commentDensity = commentDensity;
+		return this;
+	}
+
+	/**
+	 * Generates the data of the document.
+	 *
+	 * @return the data, as it is given to TomlWriter
+	 */
+	public Map<String, Object> generateData() {
+		Random random = new Random(seed);
+		Map<String, Object> root = new LinkedHashMap<>();
+		int[] estimatedSize = { 0 };
+		for (int i = 0; estimatedSize[0] < size; i++) {
+			Map<String, Object> table = generateTable(random, valuesPerTable, estimatedSize);
+			Map<String, Object> parent = table;
+			for (int d = 1; d < depth; d++) {
+				Map<String, Object> child = generateTable(random, Math.max(1, valuesPerTable / 2), estimatedSize);
+				parent.put("level" + d, child);
+				parent = child;
+			}
+			if (tableArrayCardinality > 0) {
+				List<Map<String, Object>> elements = new ArrayList<>(tableArrayCardinality);
+				for (int j = 0; j < tableArrayCardinality; j++) {
+					elements.add(generateTable(random, Math.max(1, valuesPerTable / 2), estimatedSize));
+				}
+				table.put("items", elements);
+			}
+			root.put("table" + i, table);
+		}
+		return root;
+	}
+
+	/**
+	 * Generates the document.
+	 *
+	 * @return the document, in the TOML format
+	 * @throws IOException if an error occurs
+	 */
+	public String generateToml() throws IOException {
+		FastStringWriter writer = new FastStringWriter();
+		new TomlWriter(writer, 1, false, "\n").write(generateData());
+		String toml = writer.toString();
+		writer.release();
+		if (commentDensity <= 0)
+			return toml;
+
+		Random random = new Random(~seed);
+		StringBuilder sb = new StringBuilder(toml.length() * 2);
+		int lineStart = 0;
+		while (lineStart < toml.length()) {
+			int lineEnd = toml.indexOf('\n', lineStart);
+			if (lineEnd == -1)
+				lineEnd = toml.length();
+			if (random.nextDouble() < commentDensity) {
+				sb.append("# ").append(randomText(random, 20 + random.nextInt(60), 0)).append('\n');
+			}
+			sb.append(toml, lineStart, lineEnd);
+			int equalSign = toml.indexOf('=', lineStart);
+			if (equalSign != -1 && equalSign < lineEnd && random.nextDouble() < commentDensity) {// a key = value line
+				sb.append(" # ").append(randomText(random, 10 + random.nextInt(30), 0));
+			}
+			sb.append('\n');
+			lineStart = lineEnd + 1;
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Generates the document and writes it to a file, with the UTF-8 encoding.
+	 *
+	 * @param file the file to write
+	 * @throws IOException if an error occurs
+	 */
+	public void generateFile(File file) throws IOException {
+		try (OutputStream out = new FileOutputStream(file)) {
+			out.write(generateToml().getBytes(StandardCharsets.UTF_8));
+		}
+	}
+
+	private Map<String, Object> generateTable(Random random, int valuesCount, int[] estimatedSize) {
+		Map<String, Object> table = new LinkedHashMap<>();
+		for (int i = 0; i < valuesCount; i++) {
+			String key = "key" + i;
+			table.put(key, generateValue(random, pickType(random, true), false, estimatedSize));
+			estimatedSize[0] += key.length() + 4;
+		}
+		return table;
+	}
+
+	/**
+	 * Picks the type of a value according to the mix. The arrays are excluded if arraysAllowed is false.
+	 */
+	private int pickType(Random random, boolean arraysAllowed) {
+		int count = arraysAllowed ? mix.length : ARRAYS;
+		int total = 0;
+		for (int i = 0; i < count; i++) {
+			total += mix[i];
+		}
+		if (total == 0)// only arrays
+			return INTEGERS;
+		int r = random.nextInt(total);
+		int type = 0;
+		while (r >= mix[type]) {
+			r -= mix[type];
+			type++;
+		}
+		return type;
+	}
+
+	private Object generateValue(Random random, int type, boolean inArray, int[] estimatedSize) {
+		switch (type) {
+			case STRINGS: {
+				String str = randomText(random, 5 + random.nextInt(40), escapeDensity);
+				estimatedSize[0] += str.length() + 2;
+				return str;
+			}
+			case INTEGERS:
+				estimatedSize[0] += 8;
+				return random.nextInt(199_999_999) - 99_999_999;// less than 10 characters: read as an Integer
+			case DECIMALS:
+				estimatedSize[0] += 18;
+				return random.nextGaussian() * Math.pow(10, random.nextInt(12) - 4);
+			case BOOLEANS:
+				estimatedSize[0] += 5;
+				return random.nextBoolean();
+			case DATES: {
+				estimatedSize[0] += 20;
+				LocalDateTime dateTime = LocalDateTime.of(2000, 1, 1, 0, 0).plusSeconds(random.nextInt(Integer.MAX_VALUE));
+				if (inArray)// the elements of an array must have the same type
+					return dateTime.toLocalDate();
+				switch (random.nextInt(3)) {
+					case 0:
+						return dateTime.toLocalDate();
+					case 1:
+						return dateTime;
+					default:
+						return ZonedDateTime.of(dateTime, ZoneOffset.ofHours(random.nextInt(25) - 12));
+				}
+			}
+			default: {
+				int elementType = pickType(random, false);
+				int length = 1 + random.nextInt(10);
+				List<Object> list = new ArrayList<>(length);
+				for (int i = 0; i < length; i++) {
+					list.add(generateValue(random, elementType, true, estimatedSize));
+					estimatedSize[0] += 2;
+				}
+				return list;
+			}
+		}
+	}
+
+	/**
+	 * Generates a String of printable ASCII characters. Some of them are replaced by characters that must be
+	 * escaped, according to the escape density.
+	 */
+	static String randomText(Random random, int length, double escapeDensity) {
+		char[] chars = new char[length];
+		for (int i = 0; i < length; i++) {
+			if (escapeDensity > 0 && random.nextDouble() < escapeDensity) {
+				chars[i] = "\"\\\t\n".charAt(random.nextInt(4));
+			} else {
+				chars[i] = (char) (' ' + random.nextInt(95));
+			}
+		}
+		return new String(chars);
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length == 0) {
+			System.err.println("Usage: CorpusGenerator <file> [seed=n] [size=n] [depth=n] [cardinality=n] [values=n]"
+					+ " [escapes=p] [comments=p] [mix=strings,integers,decimals,booleans,dates,arrays]");
+			System.exit(2);
+		}
+		long seed = Corpus.SEED;
+		for (int i = 1; i < args.length; i++) {
+			if (args[i].startsWith("seed="))
+				seed = Long.parseLong(args[i].substring(5));
+		}
+		CorpusGenerator generator = new CorpusGenerator(seed);
+		for (int i = 1; i < args.length; i++) {
+			int eq = args[i].indexOf('=');
+			String name = args[i].substring(0, eq), value = args[i].substring(eq + 1);
+			switch (name) {
+				case "seed":
+					break;
+				case "size":
+					generator.size(Integer.parseInt(value));
+					break;
+				case "depth":
+					generator.depth(Integer.parseInt(value));
+					break;
+				case "cardinality":
+					generator.tableArrayCardinality(Integer.parseInt(value));
+					break;
+				case "values":
+					generator.valuesPerTable(Integer.parseInt(value));
+					break;
+				case "escapes":
+					generator.escapeDensity(Double.parseDouble(value));
+					break;
+				case "comments":
+					generator.commentDensity(Double.parseDouble(value));
+					break;
+				case "mix": {
+					String[] w = value.split(",");
+					generator.valueMix(Integer.parseInt(w[0]), Integer.parseInt(w[1]), Integer.parseInt(w[2]),
+							Integer.parseInt(w[3]), Integer.parseInt(w[4]), Integer.parseInt(w[5]));
+					break;
+				}
+				default:
+					throw new IllegalArgumentException("Unknown parameter " + name);
+			}
+		}
+		generator.generateFile(new File(args[0]));
+	}
+
+}
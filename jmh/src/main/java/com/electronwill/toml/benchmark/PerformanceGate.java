@@ -0,0 +1,148 @@
+package com.electronwill.toml.benchmark;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+/**
+ * Runs a short benchmark suite (parsing from a String and writing to a FastStringWriter, for each {@link Corpus})
+ * and compares the throughputs to a baseline file. Exits with the status 1 if a throughput dropped by more than
+ * the tolerance.
+ * <p>
+ * Arguments: {@code --baseline <file> [--tolerance <fraction>] [--update]}. The default tolerance is 0.15, ie
+ * 15%. With --update, the results are saved as the new baseline instead. If the baseline file doesn't exist and
+ * --update isn't given, the gate fails (status 2): a missing baseline must not let a regression pass. The baseline
+ * only makes sense on the machine that created it.
+ * </p>
+ */
+public final class PerformanceGate {
+
+	private PerformanceGate() {}
+
+	public static void main(String[] args) throws IOException, RunnerException {
+		File baselineFile = null;
+		double tolerance = 0.15;
+		boolean update = false;
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+				case "--baseline":
+					baselineFile = new File(args[++i]);
+					break;
+				case "--tolerance":
+					tolerance = Double.parseDouble(args[++i]);
+					break;
+				case "--update":
+					update = true;
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown argument " + args[i]);
+			}
+		}
+		if (baselineFile == null) {
+			System.err.println("Usage: PerformanceGate --baseline <file> [--tolerance <fraction>] [--update]");
+			System.exit(2);
+		}
+
+		if (!update && !baselineFile.exists()) {
+			System.err.println("The baseline " + baselineFile + " doesn't exist. Create it with --update");
+			System.exit(2);
+		}
+
+		Map<String, Double> results = runBenchmarks();
+		if (update) {
+			save(results, baselineFile);
+			System.out.println("Baseline saved to " + baselineFile);
+			return;
+		}
+
+		Map<String, Double> baseline = load(baselineFile);
+		boolean failed = false;
+		System.out.println();
+		System.out.println(String.format("%-50s %12s %12s %8s", "Benchmark", "Baseline", "Current", "Change"));
+		for (Map.Entry<String, Double> entry : results.entrySet()) {
+			String name = entry.getKey();
+			double current = entry.getValue();
+			Double reference = baseline.get(name);
+			if (reference == null) {
+				System.out.println(String.format("%-50s %12s %12.3f %8s", name, "-", current, "new"));
+				continue;
+			}
+			double change = (current - reference) / reference;
+			boolean regression = change < -tolerance;
+			failed |= regression;
+			System.out.println(String.format("%-50s %12.3f %12.3f %+7.1f%%%s", name, reference, current, change * 100,
+					regression ? "  REGRESSION" : ""));
+		}
+		if (failed) {
+			System.out.println("Throughput dropped by more than " + (tolerance * 100) + "% (ops/ms) compared to " + baselineFile);
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Runs the benchmarks, with few and short iterations.
+	 *
+	 * @return the throughput in ops/ms of each benchmark, by "benchmark:corpus"
+	 */
+	private static Map<String, Double> runBenchmarks() throws RunnerException {
+		Options options = new OptionsBuilder()
+				.include(ReadBenchmark.class.getName() + ".readString$")
+				.include(WriteBenchmark.class.getName() + ".writeFastStringWriter$")
+				.mode(Mode.Throughput)
+				.timeUnit(TimeUnit.MILLISECONDS)
+				.warmupIterations(2)
+				.warmupTime(TimeValue.seconds(1))
+				.measurementIterations(3)
+				.measurementTime(TimeValue.seconds(1))
+				.forks(1)
+				.build();
+		Collection<RunResult> runResults = new Runner(options).run();
+		Map<String, Double> results = new TreeMap<>();
+		for (RunResult result : runResults) {
+			String benchmark = result.getParams().getBenchmark();
+			String name = benchmark.substring(benchmark.lastIndexOf('.', benchmark.lastIndexOf('.') - 1) + 1);
+			results.put(name + ":" + result.getParams().getParam("corpus"), result.getPrimaryResult().getScore());
+		}
+		return results;
+	}
+
+	private static Map<String, Double> load(File file) throws IOException {
+		Properties properties = new Properties();
+		try (InputStream in = new FileInputStream(file)) {
+			properties.load(in);
+		}
+		Map<String, Double> map = new TreeMap<>();
+		for (String name : properties.stringPropertyNames()) {
+			map.put(name, Double.parseDouble(properties.getProperty(name)));
+		}
+		return map;
+	}
+
+	private static void save(Map<String, Double> results, File file) throws IOException {
+		try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.ISO_8859_1)) {
+			writer.write("# Throughput (ops/ms) of the benchmarks run by PerformanceGate\n");
+			writer.write("# java.version=" + System.getProperty("java.version") + ", os.arch=" + System.getProperty("os.arch") + "\n");
+			for (Map.Entry<String, Double> entry : results.entrySet()) {
+				writer.write(entry.getKey().replace(":", "\\:") + "=" + entry.getValue() + "\n");
+			}
+		}
+	}
+
+}
@@ -0,0 +1,80 @@
+package com.electronwill.toml.benchmark;
+
+import com.electronwill.toml.Toml;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the reading of each {@link Corpus}, from a String, a Reader, an InputStream and a File.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReadBenchmark {
+
+	@Param
+	public Corpus corpus;
+
+	private String toml;
+	private byte[] bytes;
+	private File file;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		toml = corpus.generateToml();
+		bytes = toml.getBytes(StandardCharsets.UTF_8);
+		file = File.createTempFile("toml-benchmark-" + corpus, ".toml");
+		try (OutputStream out = new FileOutputStream(file)) {
+			out.write(bytes);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		file.delete();
+	}
+
+	@Benchmark
+	public Map<String, Object> readString() {
+		return Toml.read(toml);
+	}
+
+	@Benchmark
+	public Map<String, Object> readReader() throws IOException {
+		return Toml.read(new StringReader(toml), toml.length(), false);
+	}
+
+	@Benchmark
+	public Map<String, Object> readInputStream() throws IOException {
+		return Toml.read(new ByteArrayInputStream(bytes));
+	}
+
+	@Benchmark
+	public Map<String, Object> readFile() throws IOException {
+		return Toml.read(file);
+	}
+
+}
@@ -0,0 +1,73 @@
+package com.electronwill.toml.benchmark;
+
+import com.electronwill.toml.FastStringWriter;
+import com.electronwill.toml.TomlWriter;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the writing of each {@link Corpus}, to a {@link FastStringWriter} and to a File.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WriteBenchmark {
+
+	@Param
+	public Corpus corpus;
+
+	private Map<String, Object> data;
+	private File file;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		data = corpus.generateData();
+		file = File.createTempFile("toml-benchmark-" + corpus, ".toml");
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		file.delete();
+	}
+
+	@Benchmark
+	public int writeFastStringWriter() throws IOException {
+		FastStringWriter writer = new FastStringWriter();
+		TomlWriter tw = new TomlWriter(writer);
+		tw.write(data);
+		int length = writer.length();
+		writer.release();
+		return length;
+	}
+
+	@Benchmark
+	public void writeFile() throws IOException {
+		BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+		TomlWriter tw = new TomlWriter(writer);
+		tw.write(data);
+		tw.close();
+	}
+
+}
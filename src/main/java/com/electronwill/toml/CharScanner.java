@@ -0,0 +1,73 @@
+package com.electronwill.toml;
+
+/**
+ * Finds the characters that matter to the {@link TomlReader}, to skip the others quickly. This implementation
+ * checks one character at a time. On Java 17+, {@link CharScanners} may return a subclass that checks several
+ * characters at a time with the Vector API.
+ */
+class CharScanner {
+
+	protected final String data;
+
+	CharScanner(String data) {
+		this.data = data;
+	}
+
+	/**
+	 * Skips the spaces and the tabs.
+	 *
+	 * @param from the index where to start
+	 * @return the index of the first character that isn't a space or a tab, or the length of the data
+	 */
+	int skipSpaces(int from) {
+		int i = from;
+		while (i < data.length()) {
+			char c = data.charAt(i);
+			if (c != ' ' && c != '\t')
+				return i;
+			i++;
+		}
+		return i;
+	}
+
+	/**
+	 * Finds the end of the ordinary characters of a basic string.
+	 *
+	 * @param from the index where to start
+	 * @return the index of the first '"', '\\', '\n' or '\r', or the length of the data
+	 */
+	int basicStringEnd(int from) {
+		for (int i = from; i < data.length(); i++) {
+			char c = data.charAt(i);
+			if (c == '"' || c == '\\' || c == '\n' || c == '\r')
+				return i;
+		}
+		return data.length();
+	}
+
+	/**
+	 * Finds the end of a bare key.
+	 *
+	 * @param from the index where to start
+	 * @param strict true for strict bare keys (A-Za-z0-9_-), false for lenient bare keys (all the characters
+	 * above ' ' except # = . [ and ])
+	 * @return the index of the first character that isn't allowed in a bare key, or the length of the data
+	 */
+	int bareKeyEnd(int from, boolean strict) {
+		for (int i = from; i < data.length(); i++) {
+			char c = data.charAt(i);
+			if (strict ? !isStrictKeyChar(c) : !isLenientKeyChar(c))
+				return i;
+		}
+		return data.length();
+	}
+
+	static boolean isStrictKeyChar(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_' || c == '-';
+	}
+
+	static boolean isLenientKeyChar(char c) {
+		return c > ' ' && c != '#' && c != '=' && c != '.' && c != '[' && c != ']';
+	}
+
+}
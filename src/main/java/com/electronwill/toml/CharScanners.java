@@ -0,0 +1,21 @@
+package com.electronwill.toml;
+
+/**
+ * Creates the {@link CharScanner}s. There is another version of this class for Java 17+, in the
+ * META-INF/versions/17 directory of the jar.
+ */
+final class CharScanners {
+
+	private CharScanners() {}
+
+	/**
+	 * Creates a scanner for the specified data.
+	 *
+	 * @param data the data to scan
+	 * @return a scanner
+	 */
+	static CharScanner create(String data) {
+		return new CharScanner(data);
+	}
+
+}
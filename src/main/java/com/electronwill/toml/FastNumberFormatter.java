@@ -0,0 +1,346 @@
+package com.electronwill.toml;
+
+import java.math.BigInteger;
+
+/**
+ * Formats integers and doubles into a char array, without creating any intermediate String. The integers are
+ * formatted like {@link Long#toString(long)}. The doubles are formatted with the Schubfach algorithm (Raffaello
+ * Giulietti, "The Schubfach way to render doubles", 2020): the result is the shortest decimal that rounds to the
+ * same double, in the same layout as {@link Double#toString(double)}. It's the same result as Double.toString on
+ * Java 19+. Older JDKs sometimes give more digits than needed, for instance "9.999999999999999E22" instead of
+ * "1.0E23", so the doubles written by this library may be shorter than Double.toString there, and still read back
+ * to the same value.
+ */
+final class FastNumberFormatter {
+
+	/**
+	 * The maximum number of chars written by {@link #formatLong(long, char[], int)} and
+	 * {@link #formatDouble(double, char[], int)}.
+	 */
+	static final int MAX_CHARS = 32;
+
+	private static final int P = 53;// precision of a double, in bits
+	private static final int Q_MIN = -1074;// minimum binary exponent
+	private static final long C_MIN = 1L << (P - 1);
+	private static final int BQ_MASK = (1 << 11) - 1;// mask of the biased exponent
+	private static final long T_MASK = (1L << (P - 1)) - 1;// mask of the trailing significand
+	private static final long C_TINY = 3;
+	private static final int K_MIN = -324, K_MAX = 292;// bounds of the decimal exponent k
+	private static final int H = 17;// maximum number of significant digits
+	private static final long MASK_63 = (1L << 63) - 1;
+	private static final int MASK_28 = (1 << 28) - 1;
+
+	private static final long[] POW10 = new long[H + 1];
+
+	/**
+	 * For each k in [K_MIN, K_MAX], 10^(-k) = b * 2^r with 2^125 <= b < 2^126. The 126 bits of floor(b) + 1 are
+	 * stored in two longs of 63 bits each: G[2*(k-K_MIN)] is the high part and G[2*(k-K_MIN)+1] the low part.
+	 */
+	private static final long[] G = new long[2 * (K_MAX - K_MIN + 1)];
+
+	static {
+		POW10[0] = 1;
+		for (int i = 1; i < POW10.length; i++) {
+			POW10[i] = POW10[i - 1] * 10;
+		}
+		BigInteger mask63 = BigInteger.valueOf(MASK_63);
+		for (int k = K_MIN; k <= K_MAX; k++) {
+			BigInteger floor;
+			if (k <= 0) {// 10^(-k) is an integer
+				BigInteger n = BigInteger.TEN.pow(-k);
+				int shift = 126 - n.bitLength();
+				floor = (shift >= 0) ? n.shiftLeft(shift) : n.shiftRight(-shift);
+			} else {
+				BigInteger d = BigInteger.TEN.pow(k);
+				floor = BigInteger.ONE.shiftLeft(125 + d.bitLength()).divide(d);
+			}
+			BigInteger g = floor.add(BigInteger.ONE);
+			int i = 2 * (k - K_MIN);
+			G[i] = g.shiftRight(63).longValue();
+			G[i + 1] = g.and(mask63).longValue();
+		}
+	}
+
+	private FastNumberFormatter() {}
+
+	/**
+	 * Writes the decimal representation of a long into a char array.
+	 *
+	 * @param value the value to format
+	 * @param buf the destination array, with at least {@link #MAX_CHARS} free chars after off
+	 * @param off the index where to start writing
+	 * @return the number of chars written
+	 */
+	static int formatLong(long value, char[] buf, int off) {
+		if (value == Long.MIN_VALUE) {
+			String str = "-9223372036854775808";
+			str.getChars(0, str.length(), buf, off);
+			return str.length();
+		}
+		int start = off;
+		if (value < 0) {
+			buf[off++] = '-';
+			value = -value;
+		}
+		int len = 1;
+		for (long v = value; v >= 10; v /= 10) {
+			len++;
+		}
+		int i = off + len;
+		do {
+			long q = value / 10;
+			buf[--i] = (char) ('0' + (value - q * 10));
+			value = q;
+		} while (value != 0);
+		return off + len - start;
+	}
+
+	/**
+	 * Writes the shortest decimal representation of a double into a char array, in the format of
+	 * {@link Double#toString(double)}.
+	 *
+	 * @param value the value to format
+	 * @param buf the destination array, with at least {@link #MAX_CHARS} free chars after off
+	 * @param off the index where to start writing
+	 * @return the number of chars written
+	 */
+	static int formatDouble(double value, char[] buf, int off) {
+		long bits = Double.doubleToRawLongBits(value);
+		long t = bits & T_MASK;
+		int bq = (int) (bits >>> (P - 1)) & BQ_MASK;
+		if (bq == BQ_MASK) {// infinity or NaN
+			return copy((t != 0) ? "NaN" : (bits > 0) ? "Infinity" : "-Infinity", buf, off);
+		}
+		int start = off;
+		if (bits < 0) {
+			buf[off++] = '-';
+		}
+		if (bq != 0) {// normal value
+			int mq = -Q_MIN + 1 - bq;
+			long c = C_MIN | t;
+			if (0 < mq && mq < P) {// fast path for integers
+				long f = c >> mq;
+				if (f << mq == c) {
+					return toChars(f, 0, buf, off) - start;
+				}
+			}
+			return toDecimal(-mq, c, 0, buf, off) - start;
+		}
+		if (t != 0) {// subnormal value
+			return ((t < C_TINY) ? toDecimal(Q_MIN, 10 * t, -1, buf, off) : toDecimal(Q_MIN, t, 0, buf, off)) - start;
+		}
+		buf[off++] = '0';
+		buf[off++] = '.';
+		buf[off++] = '0';
+		return off - start;
+	}
+
+	private static int copy(String str, char[] buf, int off) {
+		str.getChars(0, str.length(), buf, off);
+		return str.length();
+	}
+
+	/**
+	 * Computes the shortest decimal in the rounding interval of c * 2^q and writes it.
+	 *
+	 * @return the index after the last char written
+	 */
+	private static int toDecimal(int q, long c, int dk, char[] buf, int off) {
+		int out = (int) c & 0x1;
+		long cb = c << 2;
+		long cbr = cb + 2;
+		long cbl;
+		int k;
+		if (c != C_MIN || q == Q_MIN) {
+			cbl = cb - 2;
+			k = flog10pow2(q);
+		} else {
+			cbl = cb - 1;
+			k = flog10threeQuartersPow2(q);
+		}
+		int h = q + flog2pow10(-k) + 2;
+		int gi = 2 * (k - K_MIN);
+		long g1 = G[gi];
+		long g0 = G[gi + 1];
+
+		long vb = rop(g1, g0, cb << h);
+		long vbl = rop(g1, g0, cbl << h);
+		long vbr = rop(g1, g0, cbr << h);
+
+		long s = vb >> 2;
+		if (s >= 100) {
+			long sp10 = 10 * multiplyHigh(s, 115_292_150_460_684_698L << 4);
+			long tp10 = sp10 + 10;
+			boolean upin = vbl + out <= sp10 << 2;
+			boolean wpin = (tp10 << 2) + out <= vbr;
+			if (upin != wpin) {
+				return toChars(upin ? sp10 : tp10, k, buf, off);
+			}
+		}
+		long t = s + 1;
+		boolean uin = vbl + out <= s << 2;
+		boolean win = (t << 2) + out <= vbr;
+		if (uin != win) {
+			return toChars(uin ? s : t, k + dk, buf, off);
+		}
+		long cmp = vb - ((s + t) << 1);
+		return toChars((cmp < 0 || cmp == 0 && (s & 0x1) == 0) ? s : t, k + dk, buf, off);
+	}
+
+	/**
+	 * Rounds to odd the product of g = g1 * 2^63 + g0 and cp, divided by 2^127.
+	 */
+	private static long rop(long g1, long g0, long cp) {
+		long x1 = multiplyHigh(g0, cp);
+		long y0 = g1 * cp;
+		long y1 = multiplyHigh(g1, cp);
+		long z = (y0 >>> 1) + x1;
+		long vbp = y1 + (z >>> 63);
+		return vbp | ((z & MASK_63) + MASK_63) >>> 63;
+	}
+
+	/**
+	 * Writes f * 10^e, where f has at most 17 digits.
+	 *
+	 * @return the index after the last char written
+	 */
+	private static int toChars(long f, int e, char[] buf, int off) {
+		int len = flog10pow2(Long.SIZE - Long.numberOfLeadingZeros(f));
+		if (f >= POW10[len]) {
+			len++;
+		}
+		// 10^(H-1) <= f < 10^H and the value is 0.f * 10^e
+		f *= POW10[H - len];
+		e += len;
+
+		// splits f into its first digit h, the 8 next digits m, and the last 8 digits l
+		long hm = multiplyHigh(f, 193_428_131_138_340_668L) >>> 20;
+		int l = (int) (f - 100_000_000L * hm);
+		int h = (int) (hm * 1_441_151_881L >>> 57);
+		int m = (int) (hm - 100_000_000 * h);
+
+		if (0 < e && e <= 7) {// plain format without leading zeroes
+			buf[off++] = (char) ('0' + h);
+			int y = y(m);
+			int i = 1;
+			for (; i < e; i++) {
+				int d = 10 * y;
+				buf[off++] = (char) ('0' + (d >>> 28));
+				y = d & MASK_28;
+			}
+			buf[off++] = '.';
+			for (; i <= 8; i++) {
+				int d = 10 * y;
+				buf[off++] = (char) ('0' + (d >>> 28));
+				y = d & MASK_28;
+			}
+			return lowDigits(l, buf, off);
+		}
+		if (-3 < e && e <= 0) {// plain format with leading zeroes
+			buf[off++] = '0';
+			buf[off++] = '.';
+			for (; e < 0; e++) {
+				buf[off++] = '0';
+			}
+			buf[off++] = (char) ('0' + h);
+			off = append8Digits(m, buf, off);
+			return lowDigits(l, buf, off);
+		}
+		// computerized scientific notation
+		buf[off++] = (char) ('0' + h);
+		buf[off++] = '.';
+		off = append8Digits(m, buf, off);
+		off = lowDigits(l, buf, off);
+		return exponent(e - 1, buf, off);
+	}
+
+	private static int lowDigits(int l, char[] buf, int off) {
+		if (l != 0) {
+			off = append8Digits(l, buf, off);
+		}
+		// removes the trailing zeroes, but keeps the one directly after the '.'
+		while (buf[off - 1] == '0') {
+			off--;
+		}
+		if (buf[off - 1] == '.') {
+			off++;
+		}
+		return off;
+	}
+
+	private static int append8Digits(int m, char[] buf, int off) {
+		int y = y(m);
+		for (int i = 0; i < 8; i++) {
+			int d = 10 * y;
+			buf[off++] = (char) ('0' + (d >>> 28));
+			y = d & MASK_28;
+		}
+		return off;
+	}
+
+	/**
+	 * Computes floor((a + 1) * 2^28 / 10^8) - 1, for the left-to-right extraction of the 8 digits of a.
+	 */
+	private static int y(int a) {
+		return (int) (multiplyHigh((long) (a + 1) << 28, 193_428_131_138_340_668L) >>> 20) - 1;
+	}
+
+	private static int exponent(int e, char[] buf, int off) {
+		buf[off++] = 'E';
+		if (e < 0) {
+			buf[off++] = '-';
+			e = -e;
+		}
+		if (e < 10) {
+			buf[off++] = (char) ('0' + e);
+			return off;
+		}
+		int d;
+		if (e >= 100) {
+			d = e * 1_311 >>> 17;
+			buf[off++] = (char) ('0' + d);
+			e -= 100 * d;
+		}
+		d = e * 103 >>> 10;
+		buf[off++] = (char) ('0' + d);
+		buf[off++] = (char) ('0' + (e - 10 * d));
+		return off;
+	}
+
+	/**
+	 * Returns floor(log10(2^q)).
+	 */
+	private static int flog10pow2(int q) {
+		return (int) (q * 661_971_961_083L >> 41);
+	}
+
+	/**
+	 * Returns floor(log10(3/4 * 2^q)).
+	 */
+	private static int flog10threeQuartersPow2(int q) {
+		return (int) (q * 661_971_961_083L + (-274_743_187_321L) >> 41);
+	}
+
+	/**
+	 * Returns floor(log2(10^e)).
+	 */
+	private static int flog2pow10(int e) {
+		return (int) (e * 913_124_641_741L >> 38);
+	}
+
+	/**
+	 * Returns the 64 most significant bits of the 128-bit product of two longs. Equivalent to
+	 * Math.multiplyHigh, which isn't available in Java 8.
+	 */
+	private static long multiplyHigh(long x, long y) {
+		long x1 = x >> 32, x2 = x & 0xFFFFFFFFL;
+		long y1 = y >> 32, y2 = y & 0xFFFFFFFFL;
+		long z2 = x2 * y2;
+		long t = x1 * y2 + (z2 >>> 32);
+		long z1 = t & 0xFFFFFFFFL;
+		long z0 = t >> 32;
+		z1 += x2 * y1;
+		return x1 * y1 + z0 + (z1 >> 32);
+	}
+
+}
@@ -1,102 +1,361 @@
 package com.electronwill.toml;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * A Writer writing in a StringBuilder. This is NOT Thread safe.
- * 
+ * A Writer writing in memory. This is NOT Thread safe.
+ * <p>
+ * The characters are stored in fixed-size chunks, so the content is never copied when it grows, and no huge array
+ * is ever allocated. The chunks come from a pool shared by all the FastStringWriters: call {@link #release()} when
+ * the content isn't needed anymore to give them back. The content can be written to a Writer, an OutputStream or a
+ * channel without creating a String, and this writer is also a {@link CharSequence}.
+ * </p>
+ *
  * @author TheElectronWill
  */
-public class FastStringWriter extends Writer {
-	
+public class FastStringWriter extends Writer implements CharSequence {
+
+	private static final int CHUNK_SHIFT = 13;
+	private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;// 8192 chars
+	private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+	private static final int MAX_POOLED_CHUNKS = 256;
+
+	/**
+	 * The free chunks, reused by all the FastStringWriters.
+	 */
+	private static final ConcurrentLinkedQueue<char[]> POOL = new ConcurrentLinkedQueue<>();
+	private static final AtomicInteger POOL_SIZE = new AtomicInteger();
+
 	/**
-	 * The underlying StringBuilder. Everything is appended to it.
+	 * The StringBuilder given to the constructor, or null if the chunks are used.
 	 */
 	private final StringBuilder sb;
-	
+	private char[][] chunks = new char[4][];
+	private int chunksCount = 0, length = 0;
+
 	/**
-	 * Creates a new FastStringWriter with a default StringBuilder
+	 * Creates a new FastStringWriter, that stores its content in pooled chunks.
 	 */
 	public FastStringWriter() {
-		sb = new StringBuilder();
+		sb = null;
 	}
-	
+
 	/**
 	 * Creates a new FastStringWriter with a given StringBuilder. It will append everything to this StringBuilder.
 	 *
 	 * @param sb the StringBuilder
+	 * @deprecated The StringBuilder has to grow and be copied. Use {@link #FastStringWriter()} instead.
 	 */
+	@Deprecated
 	public FastStringWriter(StringBuilder sb) {
 		this.sb = sb;
 	}
-	
+
 	/**
-	 * Returns the underlying StringBuilder.
+	 * Returns the underlying StringBuilder. If this FastStringWriter doesn't use a StringBuilder, which is the case
+	 * unless it has been created with {@link #FastStringWriter(StringBuilder)}, a new StringBuilder is returned with
+	 * a <b>copy</b> of the content: modifying it doesn't modify this writer, and it doesn't see the next writes.
 	 *
-	 * @return the underlying StringBuilder
+	 * @return the underlying StringBuilder, or a copy of the content
+	 * @deprecated The content isn't stored in a StringBuilder anymore. Use {@link #writeTo(Writer)},
+	 * {@link #toString()} or the {@link CharSequence} methods to read it, and the write methods to modify it.
 	 */
+	@Deprecated
 	public StringBuilder getBuilder() {
-		return sb;
+		if (sb != null)
+			return sb;
+		// A single copy: the chunks are appended to the presized builder that is returned
+		StringBuilder copy = new StringBuilder(length);
+		for (int i = 0; i < chunksCount; i++) {
+			copy.append(chunks[i], 0, chunkLength(i));
+		}
+		return copy;
 	}
-	
+
 	/**
-	 * Returns the content of the underlying StringBuilder, as a String. Equivalent to {@link #getBuilder()#toString()}.
+	 * Returns the content of this writer, as a String.
 	 *
-	 * @return the content of the underlying StringBuilder
+	 * @return the content of this writer
 	 */
 	@Override
 	public String toString() {
-		return sb.toString();
+		if (sb != null)
+			return sb.toString();
+		if (chunksCount == 1)
+			return new String(chunks[0], 0, length);
+		char[] all = new char[length];
+		getChars(0, length, all);
+		return new String(all);
+	}
+
+	/**
+	 * Copies a part of the content to an array.
+	 *
+	 * @param start the index of the first char to copy
+	 * @param end the index after the last char to copy
+	 * @param dst where to copy the chars, from the index 0
+	 */
+	private void getChars(int start, int end, char[] dst) {
+		int i = start;
+		while (i < end) {
+			int chunkPos = i & CHUNK_MASK;
+			int n = Math.min(end - i, CHUNK_SIZE - chunkPos);
+			System.arraycopy(chunks[i >>> CHUNK_SHIFT], chunkPos, dst, i - start, n);
+			i += n;
+		}
+	}
+
+	/**
+	 * Writes the content of this writer to another Writer.
+	 *
+	 * @param out where to write the content
+	 * @throws IOException if an error occurs
+	 */
+	public void writeTo(Writer out) throws IOException {
+		if (sb != null) {
+			out.append(sb);
+			return;
+		}
+		for (int i = 0; i < chunksCount; i++) {
+			out.write(chunks[i], 0, chunkLength(i));
+		}
+	}
+
+	/**
+	 * Writes the content of this writer to an OutputStream, with the UTF-8 encoding. The stream is not closed.
+	 *
+	 * @param out where to write the content
+	 * @throws IOException if an error occurs
+	 */
+	public void writeTo(OutputStream out) throws IOException {
+		Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+		writeTo(writer);
+		writer.flush();
+	}
+
+	/**
+	 * Writes the content of this writer to a channel, with the UTF-8 encoding. The channel is not closed.
+	 *
+	 * @param out where to write the content
+	 * @throws IOException if an error occurs
+	 */
+	public void writeTo(WritableByteChannel out) throws IOException {
+		Writer writer = Channels.newWriter(out, StandardCharsets.UTF_8.newEncoder(), -1);
+		writeTo(writer);
+		writer.flush();
+	}
+
+	/**
+	 * Clears this writer and gives its chunks back to the pool. The CharSequences previously returned by
+	 * {@link #subSequence(int, int)} must not be used anymore. This has no effect if this writer uses a
+	 * StringBuilder.
+	 */
+	public void release() {
+		if (sb != null)
+			return;
+		for (int i = 0; i < chunksCount; i++) {
+			if (POOL_SIZE.incrementAndGet() <= MAX_POOLED_CHUNKS) {
+				POOL.offer(chunks[i]);
+			} else {
+				POOL_SIZE.decrementAndGet();
+			}
+			chunks[i] = null;
+		}
+		chunksCount = 0;
+		length = 0;
+	}
+
+	@Override
+	public int length() {
+		return (sb != null) ? sb.length() : length;
+	}
+
+	@Override
+	public char charAt(int index) {
+		if (sb != null)
+			return sb.charAt(index);
+		if (index < 0 || index >= length)
+			throw new IndexOutOfBoundsException("index " + index + ", length " + length);
+		return chunks[index >>> CHUNK_SHIFT][index & CHUNK_MASK];
+	}
+
+	/**
+	 * Returns a view of a part of the content. The characters aren't copied.
+	 */
+	@Override
+	public CharSequence subSequence(int start, int end) {
+		if (sb != null)
+			return sb.subSequence(start, end);
+		if (start < 0 || end > length || start > end)
+			throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + length);
+		return new View(start, end);
 	}
-	
+
 	@Override
 	public FastStringWriter append(char c) {
-		sb.append(c);
+		write(c);
 		return this;
 	}
-	
+
 	@Override
 	public FastStringWriter append(CharSequence csq, int start, int end) {
-		sb.append(csq, start, end);
+		if (csq == null)
+			csq = "null";
+		if (sb != null) {
+			sb.append(csq, start, end);
+		} else if (csq instanceof String) {
+			write((String) csq, start, end - start);
+		} else {
+			for (int i = start; i < end; i++) {
+				write(csq.charAt(i));
+			}
+		}
 		return this;
 	}
-	
+
 	@Override
 	public FastStringWriter append(CharSequence csq) {
-		sb.append(csq);
-		return this;
+		if (csq == null)
+			csq = "null";
+		return append(csq, 0, csq.length());
 	}
-	
+
 	@Override
 	public void write(String str, int off, int len) {
-		sb.append(str, off, off + len);
+		if (sb != null) {
+			sb.append(str, off, off + len);
+			return;
+		}
+		while (len > 0) {
+			char[] chunk = currentChunk();
+			int chunkPos = length & CHUNK_MASK;
+			int n = Math.min(len, CHUNK_SIZE - chunkPos);
+			str.getChars(off, off + n, chunk, chunkPos);
+			off += n;
+			len -= n;
+			length += n;
+		}
 	}
-	
+
 	@Override
 	public void write(String str) {
-		sb.append(str);
+		write(str, 0, str.length());
 	}
-	
+
 	@Override
 	public void write(char[] cbuf, int off, int len) {
-		sb.append(cbuf, off, len);
+		if (sb != null) {
+			sb.append(cbuf, off, len);
+			return;
+		}
+		while (len > 0) {
+			char[] chunk = currentChunk();
+			int chunkPos = length & CHUNK_MASK;
+			int n = Math.min(len, CHUNK_SIZE - chunkPos);
+			System.arraycopy(cbuf, off, chunk, chunkPos, n);
+			off += n;
+			len -= n;
+			length += n;
+		}
 	}
-	
+
 	@Override
 	public void write(int c) {
-		sb.append(c);
+		if (sb != null) {
+			sb.append((char) c);
+			return;
+		}
+		currentChunk()[length & CHUNK_MASK] = (char) c;
+		length++;
 	}
-	
+
 	/**
 	 * This method does nothing.
 	 */
 	@Override
 	public void flush() {}
-	
+
 	/**
-	 * This method does nothing.
+	 * This method does nothing. The content is still available after this call: use {@link #release()} to free
+	 * the memory.
 	 */
 	@Override
 	public void close() {}
-	
+
+	/**
+	 * Returns the chunk that contains the position {@code length}, taking a new chunk from the pool if needed.
+	 */
+	private char[] currentChunk() {
+		int index = length >>> CHUNK_SHIFT;
+		if (index == chunksCount) {
+			if (index == chunks.length) {
+				chunks = Arrays.copyOf(chunks, index * 2);
+			}
+			char[] chunk = POOL.poll();
+			if (chunk == null) {
+				chunk = new char[CHUNK_SIZE];
+			} else {
+				POOL_SIZE.decrementAndGet();
+			}
+			chunks[index] = chunk;
+			chunksCount++;
+		}
+		return chunks[index];
+	}
+
+	/**
+	 * Returns the number of chars used in the chunk at the given index.
+	 */
+	private int chunkLength(int index) {
+		return (index == chunksCount - 1) ? length - (index << CHUNK_SHIFT) : CHUNK_SIZE;
+	}
+
+	/**
+	 * A view of a part of the chunks.
+	 */
+	private final class View implements CharSequence {
+
+		private final int start, end;
+
+		View(int start, int end) {
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		public int length() {
+			return end - start;
+		}
+
+		@Override
+		public char charAt(int index) {
+			if (index < 0 || index >= end - start)
+				throw new IndexOutOfBoundsException("index " + index + ", length " + (end - start));
+			return FastStringWriter.this.charAt(start + index);
+		}
+
+		@Override
+		public CharSequence subSequence(int start, int end) {
+			if (start < 0 || end > this.end - this.start || start > end)
+				throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + length());
+			return new View(this.start + start, this.start + end);
+		}
+
+		@Override
+		public String toString() {
+			char[] chars = new char[end - start];
+			getChars(start, end, chars);
+			return new String(chars);
+		}
+	}
+
 }
@@ -3,6 +3,7 @@ package com.electronwill.toml;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -17,6 +18,9 @@ import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeFormatterBuilder;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 /**
  * Utility class for reading and writing TOML v0.4.0. This class internally uses {@link TomlReader} and
@@ -71,9 +75,66 @@ public final class Toml {
 			.optionalEnd()
 			.toFormatter();
 
+	/**
+	 * Metrics that emit JFR events, or {@link TomlMetrics#NONE} if JFR isn't available. The JfrMetrics class is in
+	 * the Java 11 part of the multi-release jar, so that the base classes compile for Java 8.
+	 */
+	private static final TomlMetrics JFR_METRICS = loadJfrMetrics();
+
+	private static volatile TomlMetrics metrics = TomlMetrics.NONE;
+	private static volatile TomlMetrics metricsWithJfr = JFR_METRICS;
+
 	private Toml() {
 	}
 
+	/**
+	 * Sets the metrics used by the methods of this class, and by the TomlReaders and TomlWriters that are created
+	 * without specifying metrics. The default metrics is {@link TomlMetrics#NONE}.
+	 *
+	 * @param metrics the metrics, or null to disable them
+	 */
+	public static void setMetrics(TomlMetrics metrics) {
+		Toml.metrics = (metrics == null) ? TomlMetrics.NONE : metrics;
+		Toml.metricsWithJfr = TomlMetrics.combine(Toml.metrics, JFR_METRICS);
+	}
+
+	/**
+	 * Returns the metrics used by default.
+	 *
+	 * @return the metrics, {@link TomlMetrics#NONE} if they are disabled
+	 */
+	public static TomlMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Returns the metrics used by the readers and writers that are created without specifying metrics: the
+	 * global metrics, and the JFR events while a recording has them enabled. When no metrics are set and nothing
+	 * is recorded, this is {@link TomlMetrics#NONE}, so nothing is measured at all.
+	 */
+	static TomlMetrics defaultMetrics() {
+		return JfrState.recording ? metricsWithJfr : metrics;
+	}
+
+	private static TomlMetrics loadJfrMetrics() {
+		try {
+			Class.forName("jdk.jfr.Event");
+			return (TomlMetrics) Class.forName("com.electronwill.toml.JfrMetrics").getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException | LinkageError | SecurityException e) {
+			return TomlMetrics.NONE;// JFR isn't available
+		}
+	}
+
+	/**
+	 * Tells whether a JFR recording has the events of {@code JfrMetrics} enabled. It's updated by the recorder's
+	 * thread, and it isn't a field of Toml so that this thread never waits for the initialization of Toml.
+	 */
+	static final class JfrState {
+		static volatile boolean recording = false;
+
+		private JfrState() {}
+	}
+
 	/**
 	 * Writes the specified data to a String, in the TOML format.
 	 *
@@ -83,8 +144,10 @@ public final class Toml {
 	 */
 	public static String writeToString(Map<String, Object> data) throws IOException {
 		FastStringWriter writer = new FastStringWriter();
-		write(data, writer);
-		return writer.toString();
+		write(data, writer, "string");
+		String str = writer.toString();
+		writer.release();
+		return str;
 	}
 
 	/**
@@ -98,7 +161,7 @@ public final class Toml {
 	 */
 	public static void write(Map<String, Object> data, File file) throws IOException {
 		FileOutputStream out = new FileOutputStream(file);
-		write(data, out);
+		write(data, new OutputStreamWriter(out, StandardCharsets.UTF_8), file.getPath());
 	}
 
 	/**
@@ -112,7 +175,7 @@ public final class Toml {
 	 */
 	public static void write(Map<String, Object> data, OutputStream out) throws IOException {
 		OutputStreamWriter writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
-		write(data, writer);
+		write(data, writer, "stream");
 	}
 
 	/**
@@ -126,7 +189,12 @@ public final class Toml {
 	 * @throws TomlException if a parse error occurs
 	 */
 	public static void write(Map<String, Object> data, Writer writer) throws IOException {
+		write(data, writer, "writer");
+	}
+
+	private static void write(Map<String, Object> data, Writer writer, String source) throws IOException {
 		TomlWriter tw = new TomlWriter(writer);
+		tw.setSource(source);
 		tw.write(data);
 		tw.close();
 	}
@@ -174,6 +242,50 @@ public final class Toml {
 		return tr.read();
 	}
 
+	/**
+	 * Reads a String that contains TOML data, and canonicalizes its keys, short strings and numbers with the
+	 * specified deduplicator. Sharing the deduplicator between several reads reduces the memory used by
+	 * documents that repeat the same values.
+	 *
+	 * @param toml a String containing TOML data
+	 * @param strictAsciiBareKeys <code>true</code> to enforce strict bare keys (see {@link Toml}).
+	 * @param deduplicator the deduplicator
+	 * @return a {@code Map<String, Object>} containing the parsed data
+	 * @throws TomlException if a parse error occurs
+	 */
+	public static Map<String, Object> read(String toml, boolean strictAsciiBareKeys, TomlDeduplicator deduplicator) {
+		TomlReader tr = new TomlReader(toml, strictAsciiBareKeys, deduplicator);
+		return tr.read();
+	}
+
+	/**
+	 * Reads a String that contains TOML data, and checks it against the specified schema while reading it.
+	 *
+	 * @param toml a String containing TOML data
+	 * @param strictAsciiBareKeys <code>true</code> to enforce strict bare keys (see {@link Toml}).
+	 * @param schema the schema
+	 * @return a {@code Map<String, Object>} containing the parsed data
+	 * @throws TomlException if a parse error occurs, or if the data doesn't match the schema
+	 */
+	public static Map<String, Object> read(String toml, boolean strictAsciiBareKeys, TomlSchema schema) {
+		TomlReader tr = new TomlReader(toml, strictAsciiBareKeys, schema);
+		return tr.read();
+	}
+
+	/**
+	 * Reads a String that contains TOML data, and enforces the limits of the specified options.
+	 *
+	 * @param toml a String containing TOML data
+	 * @param strictAsciiBareKeys <code>true</code> to enforce strict bare keys (see {@link Toml}).
+	 * @param options the limits
+	 * @return a {@code Map<String, Object>} containing the parsed data
+	 * @throws TomlException if a parse error occurs, or if a limit is exceeded
+	 */
+	public static Map<String, Object> read(String toml, boolean strictAsciiBareKeys, TomlReaderOptions options) {
+		TomlReader tr = new TomlReader(toml, strictAsciiBareKeys, options);
+		return tr.read();
+	}
+
 	/**
 	 * Reads TOML data from an UTF-8 encoded File. Lenient bare keys are allowed (see {@link Toml}).
 	 *
@@ -196,7 +308,68 @@ public final class Toml {
 	 * @throws TomlException if a parse error occurs
 	 */
 	public static Map<String, Object> read(File file, boolean strictAsciiBareKeys) throws IOException, TomlException {
-		return read(new FileInputStream(file), strictAsciiBareKeys);
+		return read(file, strictAsciiBareKeys, (TomlDeduplicator) null);
+	}
+
+	/**
+	 * Reads TOML data from an UTF-8 encoded File, and canonicalizes its keys, short strings and numbers with the
+	 * specified deduplicator.
+	 *
+	 * @param file the File to read data from
+	 * @param strictAsciiBareKeys <code>true</code> to enforce strict bare keys (see {@link Toml}).
+	 * @param deduplicator the deduplicator, or null
+	 * @return a {@code Map<String, Object>} containing the parsed data
+	 * @throws IOException if a read error occurs
+	 * @throws TomlException if a parse error occurs
+	 */
+	public static Map<String, Object> read(File file, boolean strictAsciiBareKeys, TomlDeduplicator deduplicator)
+			throws IOException, TomlException {
+		try (InputStream in = new FileInputStream(file)) {
+			Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8);
+			return read(reader, (int) file.length(), strictAsciiBareKeys, deduplicator, null, TomlReaderOptions.DEFAULT,
+					file.getPath(), file.length());
+		}
+	}
+
+	/**
+	 * Reads TOML data from an UTF-8 encoded File, and checks it against the specified schema while reading it.
+	 *
+	 * @param file the File to read data from
+	 * @param strictAsciiBareKeys <code>true</code> to enforce strict bare keys (see {@link Toml}).
+	 * @param schema the schema
+	 * @return a {@code Map<String, Object>} containing the parsed data
+	 * @throws IOException if a read error occurs
+	 * @throws TomlException if a parse error occurs, or if the data doesn't match the schema
+	 */
+	public static Map<String, Object> read(File file, boolean strictAsciiBareKeys, TomlSchema schema)
+			throws IOException, TomlException {
+		try (InputStream in = new FileInputStream(file)) {
+			Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8);
+			return read(reader, (int) file.length(), strictAsciiBareKeys, null, schema, TomlReaderOptions.DEFAULT,
+					file.getPath(), file.length());
+		}
+	}
+
+	/**
+	 * Reads TOML data from an UTF-8 encoded File, and enforces the limits of the specified options. The size of the
+	 * file is checked before reading it.
+	 *
+	 * @param file the File to read data from
+	 * @param strictAsciiBareKeys <code>true</code> to enforce strict bare keys (see {@link Toml}).
+	 * @param options the limits
+	 * @return a {@code Map<String, Object>} containing the parsed data
+	 * @throws IOException if a read error occurs
+	 * @throws TomlException if a parse error occurs, or if a limit is exceeded
+	 */
+	public static Map<String, Object> read(File file, boolean strictAsciiBareKeys, TomlReaderOptions options)
+			throws IOException, TomlException {
+		long size = file.length();
+		if (size > options.getMaxInputBytes())
+			throw new TomlException("Invalid data: larger than the maximum of " + options.getMaxInputBytes() + " bytes");
+		try (InputStream in = new FileInputStream(file)) {
+			Reader reader = new InputStreamReader(new LimitedInputStream(in, options.getMaxInputBytes()), StandardCharsets.UTF_8);
+			return read(reader, (int) size, strictAsciiBareKeys, null, null, options, file.getPath(), size);
+		}
 	}
 
 	/**
@@ -221,7 +394,27 @@ public final class Toml {
 	 * @throws TomlException if a parse error occurs
 	 */
 	public static Map<String, Object> read(InputStream in, boolean strictAsciiBareKeys) throws IOException, TomlException {
-		return read(new InputStreamReader(in, StandardCharsets.UTF_8), in.available(), strictAsciiBareKeys);
+		return read(new InputStreamReader(in, StandardCharsets.UTF_8), in.available(), strictAsciiBareKeys, null, null,
+				TomlReaderOptions.DEFAULT, "stream", -1);
+	}
+
+	/**
+	 * Reads TOML data from an UTF-8 encoded InputStream, and enforces the limits of the specified options. The
+	 * reading stops as soon as the maximum number of bytes is exceeded.
+	 *
+	 * @param in the InputStream to read data from
+	 * @param strictAsciiBareKeys <code>true</code> to enforce strict bare keys (see {@link Toml}).
+	 * @param options the limits
+	 * @return a {@code Map<String, Object>} containing the parsed data
+	 * @throws IOException if a read error occurs
+	 * @throws TomlException if a parse error occurs, or if a limit is exceeded
+	 */
+	public static Map<String, Object> read(InputStream in, boolean strictAsciiBareKeys, TomlReaderOptions options)
+			throws IOException, TomlException {
+		long maxBytes = options.getMaxInputBytes();
+		int bufferSize = (int) Math.min(in.available(), maxBytes);
+		Reader reader = new InputStreamReader(new LimitedInputStream(in, maxBytes), StandardCharsets.UTF_8);
+		return read(reader, bufferSize, strictAsciiBareKeys, null, null, options, "stream", -1);
 	}
 
 	/**
@@ -235,14 +428,115 @@ public final class Toml {
 	 * @throws TomlException if a parse error occurs
 	 */
 	public static Map<String, Object> read(Reader reader, int bufferSize, boolean strictAsciiBareKeys) throws IOException, TomlException {
+		return read(reader, bufferSize, strictAsciiBareKeys, null, null, TomlReaderOptions.DEFAULT, "reader", -1);
+	}
+
+	/**
+	 * Reads TOML data from an UTF-8 encoded File, and gives the elements of an array of tables to a handler, one
+	 * by one, instead of keeping them. Lenient bare keys are allowed (see {@link Toml}). See
+	 * {@link TomlReader#readRecords(Predicate, String...)}: the parsed elements aren't kept, but the whole file is
+	 * loaded in memory as a String before the reading begins.
+	 *
+	 * @param file the File to read data from
+	 * @param handler the handler of the elements. It returns true to continue, false to stop the reading.
+	 * @param arrayPath the path of the array of tables, for instance {@code ("events")} for [[events]]
+	 * @return the other data
+	 * @throws IOException if a read error occurs
+	 * @throws TomlException if a parse error occurs
+	 */
+	public static Map<String, Object> readRecords(File file, Predicate<? super Map<String, Object>> handler,
+			String... arrayPath) throws IOException, TomlException {
+		return createReader(file).readRecords(handler, arrayPath);
+	}
+
+	/**
+	 * Reads TOML data from an UTF-8 encoded File, and gives the elements of an array of tables to a consumer that
+	 * runs in parallel. Lenient bare keys are allowed (see {@link Toml}). See
+	 * {@link TomlReader#readRecordsParallel(Consumer, ForkJoinPool, int, String...)}: like with
+	 * {@link #readRecords(File, Predicate, String...)}, the whole file is loaded in memory.
+	 *
+	 * @param file the File to read data from
+	 * @param consumer the consumer of the elements
+	 * @param pool the pool that runs the consumer
+	 * @param maxPending the maximum number of elements given to the pool and not consumed yet
+	 * @param arrayPath the path of the array of tables, for instance {@code ("events")} for [[events]]
+	 * @return the other data
+	 * @throws IOException if a read error occurs
+	 * @throws TomlException if a parse error occurs
+	 */
+	public static Map<String, Object> readRecordsParallel(File file, Consumer<? super Map<String, Object>> consumer,
+			ForkJoinPool pool, int maxPending, String... arrayPath) throws IOException, TomlException {
+		return createReader(file).readRecordsParallel(consumer, pool, maxPending, arrayPath);
+	}
+
+	static TomlReader createReader(File file) throws IOException {
+		try (InputStream in = new FileInputStream(file)) {
+			Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8);
+			return createReader(reader, (int) file.length(), false, null, null, TomlReaderOptions.DEFAULT, file.getPath(),
+					file.length());
+		}
+	}
+
+	private static Map<String, Object> read(Reader reader, int bufferSize, boolean strictAsciiBareKeys,
+			TomlDeduplicator deduplicator, TomlSchema schema, TomlReaderOptions options, String source, long bytes)
+			throws IOException, TomlException {
+		return createReader(reader, bufferSize, strictAsciiBareKeys, deduplicator, schema, options, source, bytes).read();
+	}
+
+	private static TomlReader createReader(Reader reader, int bufferSize, boolean strictAsciiBareKeys,
+			TomlDeduplicator deduplicator, TomlSchema schema, TomlReaderOptions options, String source, long bytes)
+			throws IOException {
+		TomlMetrics metrics = defaultMetrics();
+		long start = (metrics == TomlMetrics.NONE) ? 0 : System.nanoTime();
 		StringBuilder sb = new StringBuilder(bufferSize);
 		char[] buf = new char[8192];
 		int read;
 		while ((read = reader.read(buf)) != -1) {
 			sb.append(buf, 0, read);
 		}
-		TomlReader tr = new TomlReader(sb.toString(), strictAsciiBareKeys);
-		return tr.read();
+		TomlReader tr = new TomlReader(sb.toString(), strictAsciiBareKeys, metrics, deduplicator, schema, options);
+		if (metrics != TomlMetrics.NONE)
+			tr.setSource(source, bytes, System.nanoTime() - start);
+		return tr;
+	}
+
+	/**
+	 * An InputStream that throws a TomlException when more than a maximum number of bytes are read.
+	 */
+	private static final class LimitedInputStream extends FilterInputStream {
+		private final long maxBytes;
+		private long count = 0;
+
+		LimitedInputStream(InputStream in, long maxBytes) {
+			super(in);
+			this.maxBytes = maxBytes;
+		}
+
+		private void count(long read) {
+			if (read > 0 && (count += read) > maxBytes)
+				throw new TomlException("Invalid data: larger than the maximum of " + maxBytes + " bytes");
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			count((b == -1) ? 0 : 1);
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int read = super.read(b, off, len);
+			count(read);
+			return read;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long skipped = super.skip(n);
+			count(skipped);
+			return skipped;
+		}
 	}
 
 }
@@ -0,0 +1,353 @@
+package com.electronwill.toml;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Appends elements to an array of tables at the end of a TOML file, without reading nor rewriting the rest of the
+ * file. Appending an element costs the same at any size of the file.
+ * <p>
+ * The end of the file is checked once, when the appender is created: the last table of the file must be valid, and
+ * the tables of the checked part must not define the path of the array as a simple table or as a value. When the
+ * file is small enough to be checked entirely, the file must stay valid with a new element. The elements are written
+ * with the same formatting as {@link TomlWriter}.
+ * </p>
+ * <h1>Group commit</h1>
+ * <p>
+ * A TomlAppender is thread-safe. Each thread formats its elements by itself, then the elements of all the threads
+ * that are waiting are written together, followed by a single {@link FileChannel#force(boolean)} if the durability
+ * requires it. The append methods return when their elements are written, and forced to the storage device if
+ * required.
+ * </p>
+ */
+public final class TomlAppender implements Closeable {
+
+	/**
+	 * The size of the end of the file that is checked.
+	 */
+	private static final int TAIL_SIZE = 64 * 1024;
+
+	/**
+	 * When the appended data is written to the storage device.
+	 */
+	public enum Durability {
+		/** The operating system decides. The data may be lost if the system crashes. */
+		NONE,
+		/** After each commit, the content of the file is forced to the storage device. */
+		FORCE_DATA,
+		/** After each commit, the content and the metadata (size, modification date) are forced. */
+		FORCE_ALL
+	}
+
+	private final String[] arrayPath;
+	private final Durability durability;
+	private final int indentSize;
+	private final boolean indentWithSpaces;
+	private final String lineSeparator;
+	private final FileChannel channel;
+	private boolean needsNewLine;// true if the file doesn't end with a newline
+
+	// Group commit
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition committedCondition = lock.newCondition();
+	private List<FastStringWriter> pending = new ArrayList<>();
+	private long enqueued = 0, committed = 0;// numbers of batches
+	private boolean writing = false, closed = false;
+	private IOException failure;
+
+	/**
+	 * Creates a new TomlAppender with the default formatting of {@link TomlWriter} and the durability
+	 * {@link Durability#FORCE_DATA}. The file is created if it doesn't exist.
+	 *
+	 * @param file the file
+	 * @param arrayPath the path of the array of tables, for instance {@code ("records")} for [[records]]
+	 * @throws IOException if an error occurs
+	 * @throws TomlException if the end of the file isn't valid
+	 */
+	public TomlAppender(File file, String... arrayPath) throws IOException {
+		this(file, Durability.FORCE_DATA, 1, false, System.lineSeparator(), arrayPath);
+	}
+
+	/**
+	 * Creates a new TomlAppender. The file is created if it doesn't exist.
+	 *
+	 * @param file the file
+	 * @param durability when the data is forced to the storage device
+	 * @param indentSize the size of each indent
+	 * @param indentWithSpaces true to indent with spaces, false to indent with tabs
+	 * @param lineSeparator the String to write to break lines
+	 * @param arrayPath the path of the array of tables, for instance {@code ("records")} for [[records]]
+	 * @throws IOException if an error occurs
+	 * @throws TomlException if the end of the file isn't valid
+	 */
+	public TomlAppender(File file, Durability durability, int indentSize, boolean indentWithSpaces,
+			String lineSeparator, String... arrayPath) throws IOException {
+		if (arrayPath.length == 0)
+			throw new IllegalArgumentException("Invalid empty path");
+		this.arrayPath = arrayPath.clone();
+		this.durability = durability;
+		this.indentSize = indentSize;
+		this.indentWithSpaces = indentWithSpaces;
+		this.lineSeparator = lineSeparator;
+		this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.APPEND);
+		try {
+			checkTail(file);
+		} catch (IOException | RuntimeException ex) {
+			channel.close();
+			throw ex;
+		}
+	}
+
+	/**
+	 * Checks the end of the file: all of it if it's smaller than {@link #TAIL_SIZE}, else the tables that begin in the
+	 * last {@link #TAIL_SIZE} bytes.
+	 */
+	private void checkTail(File file) throws IOException {
+		byte[] bytes;
+		long size;
+		try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			size = in.size();
+			int tailSize = (int) Math.min(size, TAIL_SIZE);
+			ByteBuffer buffer = ByteBuffer.allocate(tailSize);
+			while (buffer.hasRemaining() && in.read(buffer, size - tailSize + buffer.position()) != -1) {}
+			bytes = buffer.array();
+		}
+		if (bytes.length == 0)
+			return;
+		needsNewLine = bytes[bytes.length - 1] != '\n';
+
+		int start = 0;
+		if (bytes.length < size) {// begins after the first newline, to skip an incomplete character
+			while (start < bytes.length && bytes[start] != '\n') {
+				start++;
+			}
+		}
+		String tail = new String(bytes, start, bytes.length - start, StandardCharsets.UTF_8);
+		boolean wholeFile = bytes.length == size;
+		String checked;
+		int scanned;// the beginning of the tables to scan
+		if (wholeFile) {// checks the file as it will be after an append
+			FastStringWriter header = new FastStringWriter();
+			new TomlWriter(header, indentSize, indentWithSpaces, lineSeparator, TomlMetrics.NONE)
+					.writeArrayTableElement(arrayPath, Collections.emptyMap());
+			checked = tail + (needsNewLine ? lineSeparator : "") + header;
+			scanned = 0;
+		} else {
+			int firstTable = tableLine(tail, 0, 1), lastTable = tableLine(tail, tail.length() - 1, -1);
+			if (lastTable == -1)
+				return;// the last table is too big to be checked, assumes it's valid
+			checked = tail.substring(lastTable);
+			scanned = firstTable;
+		}
+		List<TomlValidator.Problem> problems = new TomlValidator().validate(checked);
+		if (!problems.isEmpty()) {
+			String reason = wholeFile ? "the file would be invalid with a new element: "
+					: "invalid data at the end of the file: ";
+			throw new TomlException("Cannot append to " + file + ": " + reason + problems.get(0));
+		}
+		try {
+			checkDefinitions(tail.substring(scanned));
+		} catch (TomlException ex) {
+			throw new TomlException("Cannot append to " + file + ": " + ex.getMessage(), ex);
+		}
+	}
+
+	/**
+	 * Finds the next or the previous line that begins with '['.
+	 *
+	 * @param from the index where the search begins
+	 * @param step 1 to search forward, -1 to search backward
+	 * @return the beginning of the line, or -1 if there is none
+	 */
+	private static int tableLine(String str, int from, int step) {
+		for (int i = from; i >= 0 && i < str.length(); i += step) {
+			if (str.charAt(i) == '[' && isLineStart(str, i)) {
+				int line = i;
+				while (line > 0 && str.charAt(line - 1) != '\n') {
+					line--;
+				}
+				return line;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Checks that some TOML data doesn't define the path of the array as a simple table, nor as a value or a key
+	 * inside a value. Only the last element of each array of tables is taken into account, since the previous
+	 * elements don't affect the new one.
+	 */
+	private void checkDefinitions(String data) {
+		List<String> path = Arrays.asList(arrayPath);
+		Set<List<String>> values = new HashSet<>(), tables = new HashSet<>();
+		TomlReader reader = new TomlReader(data, false, TomlMetrics.NONE, null);
+		List<String> table = Collections.emptyList();
+		while (true) {
+			String key;
+			while ((key = reader.nextEntryKey()) != null) {
+				reader.skipEntryValue();
+				List<String> keyPath = new ArrayList<>(table);
+				keyPath.add(key);
+				values.add(keyPath);
+			}
+			reader.checkUnfinishedTable();
+			if (!reader.hasNext())
+				break;
+			table = reader.nextTableHeader();
+			if (reader.headerIsArray) {// a new element: forgets the content of the previous one
+				List<String> element = table;
+				values.removeIf(p -> isInside(p, element));
+				tables.removeIf(p -> isInside(p, element));
+			} else {
+				tables.add(table);
+			}
+		}
+		if (tables.contains(path))
+			throw new TomlException(path + " is a table, not an array of tables");
+		if (values.contains(path))
+			throw new TomlException(path + " is a value, not an array of tables");
+		for (int i = 1; i < path.size(); i++) {
+			if (values.contains(path.subList(0, i)))
+				throw new TomlException(path + " is inside the value " + path.subList(0, i));
+		}
+	}
+
+	/**
+	 * Checks if a path is strictly inside another one.
+	 */
+	private static boolean isInside(List<String> path, List<String> parent) {
+		return path.size() > parent.size() && path.subList(0, parent.size()).equals(parent);
+	}
+
+	private static boolean isLineStart(String str, int index) {
+		for (int i = index - 1; i >= 0; i--) {
+			char c = str.charAt(i);
+			if (c == '\n')
+				return true;
+			if (c != ' ' && c != '\t')
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Appends an element to the array of tables.
+	 *
+	 * @param element the element
+	 * @throws IOException if an error occurs
+	 */
+	public void append(Map<String, Object> element) throws IOException {
+		append(Collections.singletonList(element));
+	}
+
+	/**
+	 * Appends several elements to the array of tables, in one commit.
+	 *
+	 * @param elements the elements
+	 * @throws IOException if an error occurs
+	 */
+	public void append(Collection<? extends Map<String, Object>> elements) throws IOException {
+		FastStringWriter buffer = new FastStringWriter();
+		TomlWriter writer = new TomlWriter(buffer, indentSize, indentWithSpaces, lineSeparator, TomlMetrics.NONE);
+		for (Map<String, Object> element : elements) {
+			writer.writeArrayTableElement(arrayPath, element);
+		}
+		commit(buffer);
+	}
+
+	/**
+	 * Adds a buffer to the next batch, and waits until it's written. The first waiting thread writes the batch.
+	 */
+	private void commit(FastStringWriter buffer) throws IOException {
+		lock.lock();
+		try {
+			if (closed)
+				throw new IOException("The appender is closed");
+			pending.add(buffer);
+			long batch = enqueued + 1;// the batch that contains this buffer
+			while (committed < batch) {
+				if (failure != null)
+					throw new IOException("A previous append failed", failure);
+				if (writing) {
+					committedCondition.awaitUninterruptibly();
+					continue;
+				}
+				// Writes the batch
+				writing = true;
+				List<FastStringWriter> buffers = pending;
+				pending = new ArrayList<>();
+				enqueued++;
+				lock.unlock();
+				try {
+					write(buffers);
+				} catch (IOException | RuntimeException ex) {
+					failure = (ex instanceof IOException) ? (IOException) ex : new IOException(ex);
+					throw ex;
+				} finally {
+					lock.lock();
+					writing = false;
+					if (failure == null)
+						committed++;
+					committedCondition.signalAll();
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void write(List<FastStringWriter> buffers) throws IOException {
+		Writer writer = Channels.newWriter(channel, StandardCharsets.UTF_8.newEncoder(), -1);
+		if (needsNewLine) {
+			writer.write(lineSeparator);
+			needsNewLine = false;
+		}
+		for (FastStringWriter buffer : buffers) {
+			buffer.writeTo(writer);
+			buffer.release();
+		}
+		writer.flush();
+		if (durability != Durability.NONE)
+			channel.force(durability == Durability.FORCE_ALL);
+	}
+
+	/**
+	 * Closes the file. The appends that are in progress are finished first.
+	 *
+	 * @throws IOException if an error occurs
+	 */
+	@Override
+	public void close() throws IOException {
+		lock.lock();
+		try {
+			closed = true;
+			while (writing || committed < enqueued + (pending.isEmpty() ? 0 : 1)) {
+				if (failure != null)
+					break;
+				committedCondition.awaitUninterruptibly();
+			}
+		} finally {
+			lock.unlock();
+		}
+		channel.close();
+	}
+
+}
@@ -0,0 +1,163 @@
+package com.electronwill.toml;
+
+/**
+ * A bounded table that canonicalizes the keys, the short strings and the numbers read by a {@link TomlReader}, so
+ * that the values that are repeated in a document (or in several documents) share the same objects in memory.
+ * <p>
+ * The table is direct-mapped: each string or number goes to one slot, chosen by its hash, and replaces the
+ * previous content of the slot if it is different. Therefore the table never grows, and a lookup is a single
+ * comparison. The strings are looked up directly from the parsed characters, so no String is created when the
+ * value is already in the table.
+ * </p>
+ * <p>
+ * A TomlDeduplicator can be used for one parse, or shared by several parses, even at the same time by several
+ * threads: a slot only contains immutable objects, so the worst that a race can do is to lose an entry.
+ * </p>
+ */
+public final class TomlDeduplicator {
+
+	/**
+	 * The default number of slots of each table.
+	 */
+	public static final int DEFAULT_CAPACITY = 4096;
+
+	/**
+	 * The default maximum length of the canonicalized strings.
+	 */
+	public static final int DEFAULT_MAX_LENGTH = 32;
+
+	private final String[] strings;
+	private final Object[] numbers;
+	private final int mask, maxLength;
+
+	/**
+	 * Creates a new TomlDeduplicator with {@value #DEFAULT_CAPACITY} slots and that canonicalizes the strings up to
+	 * {@value #DEFAULT_MAX_LENGTH} characters.
+	 */
+	public TomlDeduplicator() {
+		this(DEFAULT_CAPACITY, DEFAULT_MAX_LENGTH);
+	}
+
+	/**
+	 * Creates a new TomlDeduplicator.
+	 *
+	 * @param capacity the number of slots for the strings, and for the numbers. It's rounded up to a power of two.
+	 * @param maxLength the maximum length of the strings to canonicalize. Longer strings are rarely repeated.
+	 */
+	public TomlDeduplicator(int capacity, int maxLength) {
+		if (capacity < 1 || capacity > (1 << 30))
+			throw new IllegalArgumentException("Invalid capacity " + capacity);
+		int size = Integer.highestOneBit(capacity);
+		if (size < capacity)
+			size <<= 1;
+		this.strings = new String[size];
+		this.numbers = new Object[size];
+		this.mask = size - 1;
+		this.maxLength = maxLength;
+	}
+
+	/**
+	 * Returns a String equal to the specified range of characters, from the table if possible.
+	 *
+	 * @param chars the characters
+	 * @param start the index of the first character, inclusive
+	 * @param end the index of the last character, exclusive
+	 * @return a String that contains the characters
+	 */
+	public String string(CharSequence chars, int start, int end) {
+		int length = end - start;
+		if (length > maxLength)
+			return chars.subSequence(start, end).toString();
+		int hash = 0;
+		for (int i = start; i < end; i++) {
+			hash = 31 * hash + chars.charAt(i);// same hash as String.hashCode()
+		}
+		int index = spread(hash) & mask;
+		String str = strings[index];
+		if (str != null && str.length() == length && str.hashCode() == hash && regionEquals(str, chars, start)) {
+			return str;
+		}
+		str = chars.subSequence(start, end).toString();
+		strings[index] = str;
+		return str;
+	}
+
+	/**
+	 * Returns an Integer equal to the specified int, from the table if possible.
+	 *
+	 * @param value the int
+	 * @return an Integer with the same value
+	 */
+	public Integer integer(int value) {
+		if (value >= -128 && value <= 127)
+			return value;// cached by Integer.valueOf
+		int index = spread(value) & mask;
+		Object cached = numbers[index];
+		if (cached instanceof Integer && (Integer) cached == value)
+			return (Integer) cached;
+		Integer boxed = value;
+		numbers[index] = boxed;
+		return boxed;
+	}
+
+	/**
+	 * Returns a Long equal to the specified long, from the table if possible.
+	 *
+	 * @param value the long
+	 * @return a Long with the same value
+	 */
+	public Long longInteger(long value) {
+		if (value >= -128 && value <= 127)
+			return value;// cached by Long.valueOf
+		int index = spread(Long.hashCode(value)) & mask;
+		Object cached = numbers[index];
+		if (cached instanceof Long && (Long) cached == value)
+			return (Long) cached;
+		Long boxed = value;
+		numbers[index] = boxed;
+		return boxed;
+	}
+
+	/**
+	 * Returns a Double equal to the specified double, from the table if possible.
+	 *
+	 * @param value the double
+	 * @return a Double with the same value
+	 */
+	public Double decimal(double value) {
+		long bits = Double.doubleToLongBits(value);
+		int index = spread(Long.hashCode(bits)) & mask;
+		Object cached = numbers[index];
+		if (cached instanceof Double && Double.doubleToLongBits((Double) cached) == bits)
+			return (Double) cached;
+		Double boxed = value;
+		numbers[index] = boxed;
+		return boxed;
+	}
+
+	/**
+	 * Removes all the entries.
+	 */
+	public void clear() {
+		for (int i = 0; i < strings.length; i++) {
+			strings[i] = null;
+			numbers[i] = null;
+		}
+	}
+
+	private static boolean regionEquals(String str, CharSequence chars, int start) {
+		for (int i = 0; i < str.length(); i++) {
+			if (str.charAt(i) != chars.charAt(start + i))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Spreads the high bits of a hash to the low ones, like HashMap does, because the index only uses the low bits.
+	 */
+	private static int spread(int hash) {
+		return hash ^ (hash >>> 16);
+	}
+
+}
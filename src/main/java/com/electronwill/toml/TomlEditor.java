@@ -0,0 +1,663 @@
+package com.electronwill.toml;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Edits a TOML document without rewriting it: the comments, the order of the entries, the spaces and the way the
+ * values are written are kept, except for the values that are modified.
+ * <p>
+ * The TOML data is read once, to find where each table and each entry is. The modifications are then kept as
+ * "patches" that replace some parts of the original data. When the document is saved, only the parts of the file
+ * that have changed are written: if their size in bytes doesn't change, they are written in place, else the file
+ * is rewritten from the first change only. Example:
+ *
+ * <pre>
+ * TomlEditor editor = TomlEditor.open(file);
+ * editor.set(8080, "server", "port");// replaces the value, keeps the comment after it
+ * editor.remove("server", "debug");
+ * editor.set("admin", "users", "root", "role");// adds the table [users.root] if it doesn't exist
+ * editor.save();
+ * </pre>
+ * </p>
+ * <h1>Limitations</h1>
+ * <p>
+ * The entries are addressed by the path of their table and their key. The elements of an array of tables, and the
+ * values inside an inline table, can't be addressed: setting such a value throws a TomlException. The values are
+ * checked only enough to find where they end.
+ * </p>
+ * <p>
+ * A TomlEditor isn't thread-safe.
+ * </p>
+ */
+public final class TomlEditor {
+
+	private static final int CHECKPOINT_SHIFT = 10;// a checkpoint each 1024 characters
+
+	private final File file;// may be null
+	private final String source;// the original data
+	private final String lineSeparator;
+	private final boolean exactBytes;// true if the byte offsets computed from the source match the file
+	private final long[] checkpoints;// the offset in bytes of each 1024th character of the source
+
+	private final List<Section> sections = new ArrayList<>();// in the order of the source
+	private final Map<List<String>, Section> tables = new HashMap<>();// the [tables], by path
+	private final Set<List<String>> arrays = new HashSet<>();// the paths of the [[tables]]
+	private final Set<List<String>> prefixes = new HashSet<>();// the paths of the sections, and all their prefixes
+	private final TreeMap<Integer, Section> modified = new TreeMap<>();// the modified sections, by index
+	private final Map<List<String>, NewTable> newTables = new LinkedHashMap<>();
+
+	private List<Patch> saved = Collections.emptyList();// the patches of the file
+	private long savedLength;// the length of the file
+
+	/**
+	 * Creates a new TomlEditor for some TOML data in memory. Use {@link #getText()} to get the modified data.
+	 *
+	 * @param data the TOML data
+	 * @throws TomlException if the data is invalid
+	 */
+	public TomlEditor(String data) {
+		this(null, data, -1);
+	}
+
+	private TomlEditor(File file, String data, long fileLength) {
+		this.file = file;
+		this.source = data;
+		int firstNewLine = data.indexOf('\n');
+		this.lineSeparator = (firstNewLine > 0 && data.charAt(firstNewLine - 1) == '\r') ? "\r\n" : "\n";
+		this.checkpoints = new long[(data.length() >> CHECKPOINT_SHIFT) + 2];
+		long bytes = 0;
+		for (int i = 0; i < data.length(); i++) {
+			if ((i & ((1 << CHECKPOINT_SHIFT) - 1)) == 0)
+				checkpoints[i >> CHECKPOINT_SHIFT] = bytes;
+			bytes += utf8Length(data.charAt(i));
+		}
+		if ((data.length() & ((1 << CHECKPOINT_SHIFT) - 1)) == 0)
+			checkpoints[data.length() >> CHECKPOINT_SHIFT] = bytes;
+		this.exactBytes = fileLength == bytes;
+		this.savedLength = fileLength;
+		scan();
+	}
+
+	/**
+	 * Opens a TOML file to edit it.
+	 *
+	 * @param file the file
+	 * @return a TomlEditor of the file
+	 * @throws IOException if an error occurs
+	 * @throws TomlException if the data is invalid
+	 */
+	public static TomlEditor open(File file) throws IOException {
+		byte[] bytes = Files.readAllBytes(file.toPath());
+		return new TomlEditor(file, new String(bytes, StandardCharsets.UTF_8), bytes.length);
+	}
+
+	/**
+	 * A [table] or a [[table]], and its entries. The first section is the root table, before the first header.
+	 */
+	private static final class Section {
+		final int index;// in the list of sections
+		final List<String> path;
+		final boolean isArray;
+		final int start;// the position of the header
+		int end;// the position of the next header
+		int insertPosition;// where the new entries are inserted
+		String indent;// the indentation of the new entries
+		final Map<String, Entry> entries = new LinkedHashMap<>();
+		final Map<String, Object> added = new LinkedHashMap<>();// the new entries
+		boolean removed;
+
+		Section(int index, List<String> path, boolean isArray, int start) {
+			this.index = index;
+			this.path = path;
+			this.isArray = isArray;
+			this.start = start;
+		}
+	}
+
+	/**
+	 * An entry of a section.
+	 */
+	private static final class Entry {
+		final int lineStart, valueStart, valueEnd, lineEnd;
+		String newValue;// the new value, written in TOML, or null
+		boolean removed;
+
+		Entry(int lineStart, int valueStart, int valueEnd, int lineEnd) {
+			this.lineStart = lineStart;
+			this.valueStart = valueStart;
+			this.valueEnd = valueEnd;
+			this.lineEnd = lineEnd;
+		}
+	}
+
+	/**
+	 * A table that doesn't exist in the source.
+	 */
+	private static final class NewTable {
+		final Map<String, Object> values;
+		final int position;// where it's inserted: before its sub-tables, or at the end
+
+		NewTable(Map<String, Object> values, int position) {
+			this.values = values;
+			this.position = position;
+		}
+	}
+
+	/**
+	 * Replaces the characters between start and end of the source by some text.
+	 */
+	private static final class Patch {
+		final int start, end;
+		final String text;
+		final byte[] bytes;
+
+		Patch(int start, int end, String text) {
+			this.start = start;
+			this.end = end;
+			this.text = text;
+			this.bytes = text.getBytes(StandardCharsets.UTF_8);
+		}
+
+		boolean sameAs(Patch p) {
+			return start == p.start && end == p.end && text.equals(p.text);
+		}
+	}
+
+	/**
+	 * Finds the sections and the entries of the source. The values are skipped, not parsed.
+	 */
+	private void scan() {
+		TomlReader toml = new TomlReader(source, false, TomlMetrics.NONE, null);
+		Section section = new Section(0, Collections.emptyList(), false, 0);
+		scanEntries(toml, section, 0);
+		toml.checkUnfinishedTable();
+		while (toml.hasNext()) {
+			int start = toml.position() - 1;// the '[' of the header
+			section.end = start;
+			addSection(section);
+			List<String> path = Collections.unmodifiableList(toml.nextTableHeader());
+			section = new Section(sections.size(), path, toml.headerIsArray, start);
+			scanEntries(toml, section, lineEnd(toml.position()));
+		}
+		section.end = source.length();
+		addSection(section);
+	}
+
+	private void addSection(Section section) {
+		sections.add(section);
+		for (int i = 0; i <= section.path.size(); i++) {
+			prefixes.add(section.path.subList(0, i));
+		}
+		if (section.isArray)
+			arrays.add(section.path);
+		else
+			tables.put(section.path, section);// the last one, like TomlReader
+	}
+
+	private void scanEntries(TomlReader toml, Section section, int headerEnd) {
+		Entry last = null;
+		String name;
+		while ((name = toml.nextEntryKey()) != null) {
+			toml.skipEntryValue();
+			int lineStart = source.lastIndexOf('\n', toml.valueStart - 1) + 1;
+			Entry entry = new Entry(lineStart, toml.valueStart, toml.valueEnd, lineEnd(toml.position()));
+			section.entries.put(name, entry);
+			last = entry;
+		}
+		int indentStart = (last != null) ? last.lineStart : source.lastIndexOf('\n', section.start - 1) + 1;
+		int indentEnd = indentStart;
+		while (indentEnd < source.length() && (source.charAt(indentEnd) == ' ' || source.charAt(indentEnd) == '\t')) {
+			indentEnd++;
+		}
+		section.indent = source.substring(indentStart, indentEnd);
+		section.insertPosition = (last != null) ? last.lineEnd : headerEnd;
+	}
+
+	/**
+	 * Returns the position after the end of the line that contains the given position.
+	 */
+	private int lineEnd(int position) {
+		if (position > 0 && source.charAt(position - 1) == '\n')
+			return position;
+		int newLine = source.indexOf('\n', position);
+		return (newLine == -1) ? source.length() : newLine + 1;
+	}
+
+	/**
+	 * Sets a value. If the table of the value doesn't exist, it's added at the end of the document. If the value is
+	 * a Map, it replaces the table at this path, and is written at the end of the document.
+	 *
+	 * @param value the new value
+	 * @param path the path of the value, for instance {@code ("server", "port")} for the key "port" of [server]
+	 * @throws TomlException if the path goes through an array of tables, or through a value that isn't a
+	 *         [table]
+	 */
+	@SuppressWarnings("unchecked")
+	public void set(Object value, String... path) {
+		if (path.length == 0)
+			throw new IllegalArgumentException("Invalid empty path");
+		List<String> tablePath = Arrays.asList(path).subList(0, path.length - 1);
+		String key = path[path.length - 1];
+		checkPath(path);
+		if (value instanceof Map) {
+			remove(path);
+			addNewTable(Arrays.asList(path), new LinkedHashMap<>((Map<String, Object>) value));
+			return;
+		}
+		String text = format(value);// fails before any change if the value isn't supported
+		removeTables(Arrays.asList(path));// replaces a table by a value
+
+		Section section = tables.get(tablePath);
+		if (section != null && !section.removed) {
+			Entry entry = section.entries.get(key);
+			if (entry != null && !entry.removed) {
+				entry.newValue = text;
+			} else {
+				section.added.put(key, value);
+			}
+			modified.put(section.index, section);
+			return;
+		}
+		// A new table, or a table inside a new table
+		for (int i = tablePath.size(); i > 0; i--) {
+			NewTable newTable = newTables.get(tablePath.subList(0, i));
+			if (newTable != null) {
+				Map<String, Object> table = newTable.values;
+				for (String part : tablePath.subList(i, tablePath.size())) {
+					Object child = table.get(part);
+					if (!(child instanceof Map)) {
+						child = new LinkedHashMap<>();
+						table.put(part, child);
+					}
+					table = (Map<String, Object>) child;
+				}
+				table.put(key, value);
+				return;
+			}
+		}
+		Map<String, Object> table = new LinkedHashMap<>();
+		table.put(key, value);
+		addNewTable(tablePath, table);
+	}
+
+	/**
+	 * Adds a table that doesn't exist in the source. If the source contains some sub-tables of this table, the
+	 * table is inserted before them, because a [table] that comes after its sub-tables replaces them for
+	 * TomlReader. Otherwise it's inserted at the end.
+	 */
+	private void addNewTable(List<String> path, Map<String, Object> values) {
+		int position = source.length();
+		if (prefixes.contains(path)) {
+			for (Section section : sections) {
+				if (!section.removed && section.path.size() > path.size() && startsWith(section.path, path)) {
+					position = section.start;
+					break;
+				}
+			}
+		}
+		newTables.put(Collections.unmodifiableList(new ArrayList<>(path)), new NewTable(values, position));
+	}
+
+	/**
+	 * Adds an empty table at the end of the document, if it doesn't exist.
+	 *
+	 * @param path the path of the table
+	 * @throws TomlException if the path goes through an array of tables, or through a value that isn't a
+	 *         [table]
+	 */
+	public void addTable(String... path) {
+		if (path.length == 0)
+			throw new IllegalArgumentException("Invalid empty path");
+		checkPath(path);
+		List<String> tablePath = Arrays.asList(path);
+		Section section = tables.get(tablePath);
+		if ((section != null && !section.removed) || newTables.containsKey(tablePath))
+			return;
+		set(new LinkedHashMap<>(), path);
+	}
+
+	/**
+	 * Removes a value or a table, with its sub-tables.
+	 *
+	 * @param path the path of the value or of the table
+	 * @return true if something has been removed
+	 * @throws TomlException if the path goes through an array of tables
+	 */
+	@SuppressWarnings("unchecked")
+	public boolean remove(String... path) {
+		if (path.length == 0)
+			throw new IllegalArgumentException("Invalid empty path");
+		List<String> fullPath = Arrays.asList(path);
+		List<String> tablePath = fullPath.subList(0, path.length - 1);
+		String key = path[path.length - 1];
+		for (int i = 0; i < tablePath.size(); i++) {
+			if (arrays.contains(tablePath.subList(0, i + 1)))
+				throw new TomlException("Cannot edit " + fullPath + ": " + tablePath.subList(0, i + 1)
+						+ " is an array of tables");
+		}
+		boolean removed = removeTables(fullPath);
+		Section section = tables.get(tablePath);
+		if (section != null && !section.removed) {
+			Entry entry = section.entries.get(key);
+			if (entry != null && !entry.removed) {
+				entry.removed = true;
+				removed = true;
+			}
+			removed |= section.added.remove(key) != null;
+			if (removed)
+				modified.put(section.index, section);
+		}
+		for (int i = tablePath.size(); i > 0; i--) {// the values of the new tables
+			NewTable newTable = newTables.get(tablePath.subList(0, i));
+			if (newTable != null) {
+				Map<String, Object> table = newTable.values;
+				for (String part : tablePath.subList(i, tablePath.size())) {
+					Object child = table.get(part);
+					if (!(child instanceof Map))
+						return removed;
+					table = (Map<String, Object>) child;
+				}
+				removed |= table.remove(key) != null;
+				break;
+			}
+		}
+		return removed;
+	}
+
+	/**
+	 * Removes the tables and arrays of tables at the given path, and their sub-tables.
+	 */
+	private boolean removeTables(List<String> path) {
+		boolean removed = false;
+		if (prefixes.contains(path)) {
+			for (Section section : sections) {
+				if (!section.removed && startsWith(section.path, path)) {
+					section.removed = true;
+					modified.put(section.index, section);
+					removed = true;
+				}
+			}
+		}
+		if (removed)
+			arrays.removeIf(array -> startsWith(array, path));
+		removed |= newTables.keySet().removeIf(newTable -> startsWith(newTable, path));
+		return removed;
+	}
+
+	private static boolean startsWith(List<String> list, List<String> prefix) {
+		return list.size() >= prefix.size() && list.subList(0, prefix.size()).equals(prefix);
+	}
+
+	/**
+	 * Checks that a path doesn't go through an array of tables, nor through a value of an existing table.
+	 */
+	private void checkPath(String[] path) {
+		List<String> fullPath = Arrays.asList(path);
+		for (int i = 1; i < path.length; i++) {
+			List<String> prefix = fullPath.subList(0, i);
+			if (arrays.contains(prefix))
+				throw new TomlException("Cannot edit " + fullPath + ": " + prefix + " is an array of tables");
+			Section parent = tables.get(fullPath.subList(0, i - 1));
+			if (parent != null && !parent.removed) {
+				Entry entry = parent.entries.get(path[i - 1]);
+				if ((entry != null && !entry.removed) || parent.added.containsKey(path[i - 1]))
+					throw new TomlException("Cannot edit " + fullPath + ": " + prefix + " isn't a [table]");
+			}
+		}
+		if (arrays.contains(fullPath))
+			throw new TomlException("Cannot edit " + fullPath + ": it's an array of tables");
+	}
+
+	private String format(Object value) {
+		FastStringWriter out = new FastStringWriter();
+		try {
+			new TomlWriter(out, 1, false, lineSeparator, TomlMetrics.NONE).writeValue(value);
+			return out.toString();
+		} catch (IOException ex) {
+			throw new TomlException("Unsupported value " + value, ex);
+		} finally {
+			out.release();
+		}
+	}
+
+	private String formatEntry(String indent, String key, Object value) {
+		FastStringWriter out = new FastStringWriter();
+		try {
+			out.write(indent);
+			new TomlWriter(out, 1, false, lineSeparator, TomlMetrics.NONE).writeKey(key);
+			out.write(" = ");
+			out.write(format(value));
+			out.write(lineSeparator);
+			return out.toString();
+		} catch (IOException ex) {
+			throw new TomlException("Unsupported value " + value, ex);
+		} finally {
+			out.release();
+		}
+	}
+
+	/**
+	 * Computes the patches of the source, in order.
+	 */
+	private List<Patch> patches() {
+		List<Patch> replacements = new ArrayList<>();
+		TreeMap<Integer, StringBuilder> insertions = new TreeMap<>();
+		for (Section section : modified.values()) {
+			if (section.removed) {
+				replacements.add(new Patch(section.start, section.end, ""));
+				continue;
+			}
+			for (Entry entry : section.entries.values()) {
+				if (entry.removed)
+					replacements.add(new Patch(entry.lineStart, entry.lineEnd, ""));
+				else if (entry.newValue != null)
+					replacements.add(new Patch(entry.valueStart, entry.valueEnd, entry.newValue));
+			}
+			if (!section.added.isEmpty()) {
+				StringBuilder sb = insertion(insertions, section.insertPosition);
+				for (Map.Entry<String, Object> entry : section.added.entrySet()) {
+					sb.append(formatEntry(section.indent, entry.getKey(), entry.getValue()));
+				}
+			}
+		}
+		for (Map.Entry<List<String>, NewTable> table : newTables.entrySet()) {
+			NewTable newTable = table.getValue();
+			List<String> path = table.getKey();
+			FastStringWriter out = new FastStringWriter();
+			try {
+				TomlWriter writer = new TomlWriter(out, 1, false, lineSeparator, TomlMetrics.NONE);
+				writer.writeTable(path.toArray(new String[path.size()]), newTable.values);
+				int length = out.length();
+				while (length > 0 && (out.charAt(length - 1) == '\n' || out.charAt(length - 1) == '\r')) {
+					length--;
+				}
+				StringBuilder sb = insertion(insertions, newTable.position);
+				if (newTable.position == source.length())// after a blank line
+					sb.append(lineSeparator).append(out, 0, length).append(lineSeparator);
+				else// before a blank line
+					sb.append(out, 0, length).append(lineSeparator).append(lineSeparator);
+			} catch (IOException ex) {
+				throw new TomlException("Unsupported value in the new table " + path, ex);
+			} finally {
+				out.release();
+			}
+		}
+
+		// Merges the replacements and the insertions. An insertion comes before a replacement at the same position.
+		List<Patch> patches = new ArrayList<>(replacements.size() + insertions.size());
+		int r = 0;
+		for (Map.Entry<Integer, StringBuilder> insertion : insertions.entrySet()) {
+			int position = insertion.getKey();
+			while (r < replacements.size() && replacements.get(r).start < position) {
+				patches.add(replacements.get(r++));
+			}
+			patches.add(new Patch(position, position, insertion.getValue().toString()));
+		}
+		while (r < replacements.size()) {
+			patches.add(replacements.get(r++));
+		}
+		return patches;
+	}
+
+	private StringBuilder insertion(Map<Integer, StringBuilder> insertions, int position) {
+		StringBuilder sb = insertions.get(position);
+		if (sb == null) {
+			sb = new StringBuilder();
+			if (position == source.length() && position > 0 && source.charAt(position - 1) != '\n')
+				sb.append(lineSeparator);
+			insertions.put(position, sb);
+		}
+		return sb;
+	}
+
+	/**
+	 * Returns the modified TOML data.
+	 *
+	 * @return the TOML data, with all the modifications
+	 */
+	public String getText() {
+		StringBuilder sb = new StringBuilder(source.length() + 64);
+		int position = 0;
+		for (Patch patch : patches()) {
+			sb.append(source, position, patch.start).append(patch.text);
+			position = patch.end;
+		}
+		return sb.append(source, position, source.length()).toString();
+	}
+
+	/**
+	 * Saves the modifications to the file. Only the parts of the file that have changed since the last save are
+	 * written.
+	 *
+	 * @throws IOException if an error occurs, or if the file has been modified by someone else
+	 * @throws IllegalStateException if the editor doesn't edit a file
+	 */
+	public void save() throws IOException {
+		if (file == null)
+			throw new IllegalStateException("No file to save to");
+		List<Patch> patches = patches();
+		int first = 0;// the first patch that has changed
+		while (first < patches.size() && first < saved.size() && patches.get(first).sameAs(saved.get(first))) {
+			first++;
+		}
+		if (first == patches.size() && first == saved.size())
+			return;// nothing to save
+
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+			if (channel.size() != savedLength)
+				throw new IOException("The file " + file + " has been modified");
+			if (!exactBytes) {// the offsets can't be computed, rewrites the whole file
+				writeFrom(channel, 0, 0, patches, 0);
+			} else if (!writeInPlace(channel, patches, first)) {
+				long delta = 0;// the difference between the positions in the file and in the source
+				for (int i = 0; i < first; i++) {
+					delta += patchDelta(patches.get(i));
+				}
+				int start = Math.min(first < patches.size() ? patches.get(first).start : source.length(),
+						first < saved.size() ? saved.get(first).start : source.length());
+				writeFrom(channel, start, byteOffset(start) + delta, patches, first);
+			}
+			savedLength = channel.size();
+		}
+		saved = patches;
+	}
+
+	/**
+	 * Writes the patches that have changed, if they have the same size in bytes as the previous ones.
+	 *
+	 * @return false if the file must be rewritten from the first change
+	 */
+	private boolean writeInPlace(FileChannel channel, List<Patch> patches, int first) throws IOException {
+		if (patches.size() != saved.size())
+			return false;
+		for (int i = first; i < patches.size(); i++) {
+			Patch patch = patches.get(i), old = saved.get(i);
+			if (patch.start != old.start || patch.end != old.end || patch.bytes.length != old.bytes.length)
+				return false;
+		}
+		long delta = 0;
+		for (int i = 0; i < patches.size(); i++) {
+			Patch patch = patches.get(i);
+			if (i >= first && !patch.sameAs(saved.get(i))) {
+				ByteBuffer buffer = ByteBuffer.wrap(patch.bytes);
+				long position = byteOffset(patch.start) + delta;
+				while (buffer.hasRemaining()) {
+					position += channel.write(buffer, position);
+				}
+			}
+			delta += patchDelta(patch);
+		}
+		return true;
+	}
+
+	/**
+	 * Writes the data from a position of the source, and truncates the file after it.
+	 */
+	private void writeFrom(FileChannel channel, int start, long fileOffset, List<Patch> patches, int first)
+			throws IOException {
+		channel.position(fileOffset);
+		Writer writer = Channels.newWriter(channel, StandardCharsets.UTF_8.newEncoder(), -1);
+		int position = start;
+		for (int i = first; i < patches.size(); i++) {
+			Patch patch = patches.get(i);
+			if (patch.end < start || (patch.end == start && patch.start < start))
+				continue;// before the start
+			writer.write(source, position, patch.start - position);
+			writer.write(patch.text);
+			position = patch.end;
+		}
+		writer.write(source, position, source.length() - position);
+		writer.flush();
+		channel.truncate(channel.position());
+	}
+
+	/**
+	 * Returns the difference between the size in bytes of a patch, and the size of the data it replaces.
+	 */
+	private long patchDelta(Patch patch) {
+		return patch.bytes.length - (byteOffset(patch.end) - byteOffset(patch.start));
+	}
+
+	/**
+	 * Returns the offset in bytes, in the UTF-8 source, of a position of the source.
+	 */
+	private long byteOffset(int position) {
+		int checkpoint = position >> CHECKPOINT_SHIFT;
+		return checkpoints[checkpoint] + byteOffsetFromPrevious(checkpoint << CHECKPOINT_SHIFT, position, source);
+	}
+
+	private static long byteOffsetFromPrevious(int from, int to, String str) {
+		long bytes = 0;
+		for (int i = from; i < to; i++) {
+			bytes += utf8Length(str.charAt(i));
+		}
+		return bytes;
+	}
+
+	private static int utf8Length(char c) {
+		if (c < 0x80)
+			return 1;
+		if (c < 0x800 || Character.isSurrogate(c))// a surrogate pair is 4 bytes
+			return 2;
+		return 3;
+	}
+
+}
@@ -0,0 +1,301 @@
+package com.electronwill.toml;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The hashes of the tables and of the values of a TOML document, computed by a {@link TomlReader} while it reads
+ * the data. The hash of a value is the hash of its text in the TOML data, and the hash of a table is computed from
+ * the hashes of its entries. Therefore two tables with the same hash have the same content, and {@link #diff} finds
+ * the differences between two versions of a document by looking only at the tables that have changed.
+ * <p>
+ * Since the hashes come from the text, a value written differently, for instance {@code 1000} and {@code 1_000},
+ * or an array with a different comment inside, is seen as changed. The order of the entries of a table, the spaces
+ * and the comments between the entries don't change the hash. Example:
+ *
+ * <pre>
+ * TomlReader reader = new TomlReader(newData, false);
+ * reader.setHashing(true);
+ * Map&lt;String, Object&gt; config = reader.read();
+ * TomlHashes hashes = reader.getHashes();
+ * for (List&lt;String&gt; path : TomlHashes.diff(oldHashes, hashes)) {
+ * 	// reloads the component configured by path
+ * }
+ * </pre>
+ * </p>
+ * <p>
+ * A TomlHashes is immutable, and therefore thread-safe, once the data is read.
+ * </p>
+ */
+public final class TomlHashes {
+
+	private static final long TABLE_SEED = 0x1F83D9ABFB41BD6BL, ARRAY_SEED = 0x5BE0CD19137E2179L;
+	private static final long FNV_OFFSET = 0xCBF29CE484222325L, FNV_PRIME = 0x100000001B3L;
+	private static final long BLOCK_PRIME = 0x9E3779B97F4A7C15L;
+
+	private long hash;
+
+	// For a table: the values, as parallel arrays, and the tables and arrays of tables
+	private String[] valueKeys;
+	private long[] valueHashes;
+	private int valueCount;
+	private Map<String, TomlHashes> tables;
+	private volatile Map<String, TomlHashes> entries;// all the entries, created when needed
+
+	private final List<TomlHashes> elements;// for an array of tables, else null
+
+	private TomlHashes(long hash, boolean table, List<TomlHashes> elements) {
+		this.hash = hash;
+		if (table) {
+			valueKeys = new String[4];
+			valueHashes = new long[4];
+			tables = new LinkedHashMap<>(4);
+		}
+		this.elements = elements;
+	}
+
+	/**
+	 * Creates the hashes of a table. Its hash is computed by {@link #finish()}.
+	 */
+	static TomlHashes table() {
+		return new TomlHashes(0, true, null);
+	}
+
+	/**
+	 * Creates the hashes of an array of tables. Its hash is computed by {@link #finish()}.
+	 */
+	static TomlHashes arrayOfTables() {
+		return new TomlHashes(0, false, new ArrayList<>(2));
+	}
+
+	/**
+	 * Adds a value to this table. Its hash is computed from its text in the TOML data, without the spaces and the
+	 * comment after it.
+	 */
+	void putValue(String key, String data, int start, int end) {
+		while (end > start) {
+			char c = data.charAt(end - 1);
+			if (c != ' ' && c != '\t' && c != '\r' && c != '\n' && c != '#')
+				break;
+			end--;
+		}
+		if (valueCount == valueKeys.length) {
+			valueKeys = Arrays.copyOf(valueKeys, valueCount * 2);
+			valueHashes = Arrays.copyOf(valueHashes, valueCount * 2);
+		}
+		valueKeys[valueCount] = key;
+		valueHashes[valueCount++] = mix(hashChars(data, start, end));
+	}
+
+	/**
+	 * Adds a table or an array of tables to this table, or replaces it.
+	 */
+	void put(String key, TomlHashes value) {
+		tables.put(key, value);
+	}
+
+	/**
+	 * Returns a table or an array of tables of this table.
+	 */
+	TomlHashes getTable(String key) {
+		return tables.get(key);
+	}
+
+	/**
+	 * Adds an element to this array of tables.
+	 */
+	void add(TomlHashes element) {
+		elements.add(element);
+	}
+
+	/**
+	 * Hashes some characters, 8 by 8 in two independent lanes.
+	 */
+	private static long hashChars(String str, int start, int end) {
+		long h1 = FNV_OFFSET ^ (end - start), h2 = BLOCK_PRIME;
+		int i = start;
+		for (; i + 8 <= end; i += 8) {
+			long k1 = str.charAt(i) | (long) str.charAt(i + 1) << 16 | (long) str.charAt(i + 2) << 32
+					| (long) str.charAt(i + 3) << 48;
+			long k2 = str.charAt(i + 4) | (long) str.charAt(i + 5) << 16 | (long) str.charAt(i + 6) << 32
+					| (long) str.charAt(i + 7) << 48;
+			h1 = Long.rotateLeft(h1 ^ k1 * BLOCK_PRIME, 31) * FNV_PRIME;
+			h2 = Long.rotateLeft(h2 ^ k2 * BLOCK_PRIME, 31) * FNV_PRIME;
+		}
+		for (; i < end; i++) {
+			h1 = (h1 ^ str.charAt(i)) * FNV_PRIME;
+		}
+		return h1 ^ Long.rotateLeft(h2, 17) * BLOCK_PRIME;
+	}
+
+	private static long entryHash(String key, long valueHash) {
+		return mix(hashChars(key, 0, key.length()) * 31 + valueHash);
+	}
+
+	/**
+	 * Computes the hashes of this table or array, and of the tables and arrays it contains.
+	 */
+	void finish() {
+		if (tables != null) {
+			long h = TABLE_SEED;// the order of the entries doesn't matter
+			for (int i = 0; i < valueCount; i++) {
+				h += entryHash(valueKeys[i], valueHashes[i]);
+			}
+			for (Map.Entry<String, TomlHashes> entry : tables.entrySet()) {
+				TomlHashes value = entry.getValue();
+				value.finish();
+				h += entryHash(entry.getKey(), value.hash);
+			}
+			hash = mix(h);
+		} else if (elements != null) {
+			long h = ARRAY_SEED;
+			for (TomlHashes element : elements) {
+				element.finish();
+				h = mix(h * 31 + element.hash);// the order of the elements matters
+			}
+			hash = h;
+		}
+	}
+
+	/**
+	 * Returns all the entries of this table.
+	 */
+	private Map<String, TomlHashes> entries() {
+		Map<String, TomlHashes> map = entries;
+		if (map == null) {
+			map = new LinkedHashMap<>((valueCount + tables.size()) * 4 / 3 + 1);
+			for (int i = 0; i < valueCount; i++) {
+				map.put(valueKeys[i], new TomlHashes(valueHashes[i], false, null));
+			}
+			map.putAll(tables);
+			entries = map = Collections.unmodifiableMap(map);
+		}
+		return map;
+	}
+
+	/**
+	 * Mixes the bits of a hash, like the finalizer of MurmurHash3.
+	 */
+	private static long mix(long h) {
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		h *= 0xC4CEB9FE1A85EC53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	/**
+	 * Returns the 64-bits hash of this table, array or value.
+	 */
+	public long hash() {
+		return hash;
+	}
+
+	/**
+	 * Checks if these are the hashes of a table.
+	 */
+	public boolean isTable() {
+		return tables != null;
+	}
+
+	/**
+	 * Checks if these are the hashes of an array of tables.
+	 */
+	public boolean isArrayOfTables() {
+		return elements != null;
+	}
+
+	/**
+	 * Returns the keys of this table, in the order of the data.
+	 *
+	 * @return the keys, or an empty set if this isn't a table
+	 */
+	public Set<String> keys() {
+		return (tables == null) ? Collections.emptySet() : entries().keySet();
+	}
+
+	/**
+	 * Returns the hashes of an entry of this table.
+	 *
+	 * @param key the key of the entry
+	 * @return its hashes, or null if this table doesn't contain it or if this isn't a table
+	 */
+	public TomlHashes get(String key) {
+		return (tables == null) ? null : entries().get(key);
+	}
+
+	/**
+	 * Returns the hashes of an element of this array of tables.
+	 *
+	 * @param index the index of the element
+	 * @return its hashes
+	 * @throws IndexOutOfBoundsException if the index is invalid or if this isn't an array of tables
+	 */
+	public TomlHashes get(int index) {
+		if (elements == null)
+			throw new IndexOutOfBoundsException("Not an array of tables");
+		return elements.get(index);
+	}
+
+	/**
+	 * Returns the number of entries of this table, or of elements of this array of tables, or 0 for a value.
+	 */
+	public int size() {
+		return (tables != null) ? entries().size() : (elements != null) ? elements.size() : 0;
+	}
+
+	/**
+	 * Finds the differences between two versions of a document. Only the tables that have changed are compared
+	 * entry by entry, so the time depends on the number of changes, not on the size of the document. The paths
+	 * are the deepest ones: if a value of a table has changed, the path of the value is returned, not the path of
+	 * the table. The arrays, including the arrays of tables, are compared as a whole.
+	 *
+	 * @param before the hashes of the old version
+	 * @param after the hashes of the new version
+	 * @return the paths of the entries that have been added, removed or changed
+	 */
+	public static List<List<String>> diff(TomlHashes before, TomlHashes after) {
+		List<List<String>> changes = new ArrayList<>();
+		diff(before, after, new ArrayList<>(), changes);
+		return changes;
+	}
+
+	private static void diff(TomlHashes before, TomlHashes after, List<String> path, List<List<String>> changes) {
+		if (before.hash == after.hash)
+			return;
+		if (before.tables == null || after.tables == null) {// a value, an array, or a different kind
+			changes.add(Collections.unmodifiableList(new ArrayList<>(path)));
+			return;
+		}
+		Map<String, TomlHashes> beforeEntries = before.entries(), afterEntries = after.entries();
+		for (Map.Entry<String, TomlHashes> entry : afterEntries.entrySet()) {
+			String key = entry.getKey();
+			TomlHashes old = beforeEntries.get(key);
+			path.add(key);
+			if (old == null)// added
+				changes.add(Collections.unmodifiableList(new ArrayList<>(path)));
+			else
+				diff(old, entry.getValue(), path, changes);
+			path.remove(path.size() - 1);
+		}
+		for (String key : beforeEntries.keySet()) {
+			if (!afterEntries.containsKey(key)) {// removed
+				path.add(key);
+				changes.add(Collections.unmodifiableList(new ArrayList<>(path)));
+				path.remove(path.size() - 1);
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%016x", hash);
+	}
+
+}
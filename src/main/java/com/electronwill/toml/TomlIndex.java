@@ -0,0 +1,421 @@
+package com.electronwill.toml;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * An index of the tables of a big TOML file, to read one table without parsing the whole file. The index contains
+ * the position, in bytes, the length and the CRC32 of each section of the file, that is, of each [table] or
+ * [[table]] with its content. It's saved in a "sidecar" file next to the TOML file: {@code data.toml.index} for
+ * {@code data.toml}.
+ * <p>
+ * {@link #read(String...)} reads only the sections that are needed: the table, its sub-tables and its parent
+ * tables. The index is checked automatically: it's built again if the size or the modification date of the TOML
+ * file has changed, or if a section that is read doesn't have the right CRC32. Example:
+ *
+ * <pre>
+ * TomlIndex index = TomlIndex.open(new File("tenants.toml"));// builds the index the first time
+ * Map&lt;String, Object&gt; acme = index.readTable("tenants", "acme");// [tenants.acme] and its sub-tables
+ * </pre>
+ * </p>
+ * <p>
+ * A TomlIndex is thread-safe. The values aren't validated when the index is built, so the errors are only
+ * detected when the sections are read. The line numbers of the errors are counted from the beginning of the
+ * sections that are read.
+ * </p>
+ */
+public final class TomlIndex {
+
+	private static final int MAGIC = 0x54494458;// "TIDX"
+	private static final int VERSION = 1;
+
+	private final File file;
+	private volatile Sections sections;
+
+	private TomlIndex(File file, Sections sections) {
+		this.file = file;
+		this.sections = sections;
+	}
+
+	/**
+	 * Opens the index of a TOML file. The index file is loaded if it's up to date, otherwise the index is built and
+	 * saved.
+	 *
+	 * @param file the TOML file
+	 * @return the index
+	 * @throws IOException if an error occurs
+	 * @throws TomlException if a table header is invalid
+	 */
+	public static TomlIndex open(File file) throws IOException {
+		Sections sections = load(file);
+		if (sections == null)
+			sections = buildAndSave(file);
+		return new TomlIndex(file, sections);
+	}
+
+	/**
+	 * Builds the index of a TOML file, and saves it, even if the index file is up to date.
+	 *
+	 * @param file the TOML file
+	 * @return the index
+	 * @throws IOException if an error occurs
+	 * @throws TomlException if a table header is invalid
+	 */
+	public static TomlIndex build(File file) throws IOException {
+		return new TomlIndex(file, buildAndSave(file));
+	}
+
+	/**
+	 * Returns the index file of a TOML file.
+	 *
+	 * @param file the TOML file
+	 * @return the index file, which may not exist
+	 */
+	public static File indexFile(File file) {
+		return new File(file.getPath() + ".index");
+	}
+
+	/**
+	 * Returns the indexed TOML file.
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Returns the number of [tables] and [[tables]] in the file.
+	 */
+	public int size() {
+		return sections.count - 1;// without the root section
+	}
+
+	/**
+	 * Reads a value of the file, by parsing only the sections that may contain it.
+	 *
+	 * @param path the path of the value, for instance {@code ("tenants", "acme")} for [tenants.acme]
+	 * @return the value: a {@code Map} for a table, a {@code List} for an array of tables, etc. Or null if it
+	 *         doesn't exist.
+	 * @throws IOException if an error occurs
+	 * @throws TomlException if a parse error occurs, or if the path goes through an array of tables
+	 */
+	public Object read(String... path) throws IOException {
+		Sections current = sections;
+		if (!isUpToDate(file, current.size, current.lastModified)) {
+			current = rebuild(current);
+		}
+		String data = readSections(current, path);
+		if (data == null) {// a section has changed
+			data = readSections(rebuild(current), path);
+			if (data == null)
+				throw new IOException("The file " + file + " is being modified");
+		}
+		Map<String, Object> map;
+		try {
+			map = new TomlReader(data, false, TomlMetrics.NONE, null).read();
+		} catch (TomlException ex) {
+			throw new TomlException("Invalid section of " + file + ": " + ex.getMessage(), ex);
+		}
+		Object value = map;
+		for (String part : path) {
+			if (!(value instanceof Map))
+				return null;
+			value = ((Map) value).get(part);
+		}
+		return value;
+	}
+
+	/**
+	 * Reads a table of the file, by parsing only its sections, the sections of its sub-tables and the sections of
+	 * its parent tables.
+	 *
+	 * @param path the path of the table, for instance {@code ("tenants", "acme")} for [tenants.acme]
+	 * @return the table, or null if it doesn't exist
+	 * @throws IOException if an error occurs
+	 * @throws TomlException if a parse error occurs, or if the value isn't a table
+	 */
+	@SuppressWarnings("unchecked")
+	public Map<String, Object> readTable(String... path) throws IOException {
+		Object value = read(path);
+		if (value != null && !(value instanceof Map))
+			throw new TomlException("Invalid table " + Arrays.toString(path) + ": it's a " + value.getClass().getSimpleName());
+		return (Map<String, Object>) value;
+	}
+
+	private synchronized Sections rebuild(Sections expected) throws IOException {
+		if (sections != expected)
+			return sections;// already rebuilt by another thread
+		return sections = buildAndSave(file);
+	}
+
+	/**
+	 * Reads the sections needed to read a path, and joins them.
+	 *
+	 * @return the data of the sections, or null if a section has the wrong CRC32
+	 */
+	private String readSections(Sections s, String[] path) throws IOException {
+		// Finds the sections of the parent tables, of the table and of its sub-tables
+		List<Integer> selected = new ArrayList<>();
+		Node node = s.root;
+		for (int i = 0; node != null && i <= path.length; i++) {
+			if (i > 0 && i < path.length && node.isArray)
+				throw new TomlException("Cannot read " + Arrays.toString(path) + ": " + Arrays.toString(
+						Arrays.copyOf(path, i)) + " is an array of tables");
+			if (i == path.length) {
+				node.collect(selected);
+			} else {
+				selected.addAll(node.sections);
+				node = (node.children == null) ? null : node.children.get(path[i]);
+			}
+		}
+		selected.sort(null);// in the order of the file
+
+		StringBuilder sb = new StringBuilder();
+		CRC32 crc = new CRC32();
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			ByteBuffer buffer = null;
+			for (int index : selected) {
+				int length = s.lengths[index];
+				if (buffer == null || buffer.capacity() < length)
+					buffer = ByteBuffer.allocate(Math.max(length, 8192));
+				buffer.clear().limit(length);
+				long offset = s.offsets[index];
+				while (buffer.hasRemaining()) {
+					if (channel.read(buffer, offset + buffer.position()) == -1)
+						return null;
+				}
+				crc.reset();
+				crc.update(buffer.array(), 0, length);
+				if ((int) crc.getValue() != s.crcs[index])
+					return null;
+				sb.append(new String(buffer.array(), 0, length, StandardCharsets.UTF_8)).append('\n');
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * The sections of a file. The first section is the root table, before the first header.
+	 */
+	private static final class Sections {
+		final long size, lastModified;// of the TOML file
+		final int count;
+		final String[][] paths;
+		final boolean[] arrays;
+		final long[] offsets;
+		final int[] lengths;
+		final int[] crcs;
+		final Node root = new Node();
+
+		Sections(long size, long lastModified, int count) {
+			this.size = size;
+			this.lastModified = lastModified;
+			this.count = count;
+			this.paths = new String[count][];
+			this.arrays = new boolean[count];
+			this.offsets = new long[count];
+			this.lengths = new int[count];
+			this.crcs = new int[count];
+		}
+
+		/**
+		 * Creates the tree of the paths, to find the sections quickly.
+		 */
+		void createTree() {
+			for (int i = 0; i < count; i++) {
+				Node node = root;
+				for (String part : paths[i]) {
+					if (node.children == null)
+						node.children = new HashMap<>(4);
+					node = node.children.computeIfAbsent(part, k -> new Node());
+				}
+				node.sections.add(i);
+				node.isArray |= arrays[i];
+			}
+		}
+	}
+
+	/**
+	 * A node of the tree of the paths.
+	 */
+	private static final class Node {
+		final List<Integer> sections = new ArrayList<>(1);
+		Map<String, Node> children;
+		boolean isArray;
+
+		/**
+		 * Adds the sections of this node and of all its sub-nodes.
+		 */
+		void collect(List<Integer> list) {
+			list.addAll(sections);
+			if (children != null) {
+				for (Node child : children.values()) {
+					child.collect(list);
+				}
+			}
+		}
+	}
+
+	private static boolean isUpToDate(File file, long size, long lastModified) throws IOException {
+		return file.length() == size && Files.getLastModifiedTime(file.toPath()).toMillis() == lastModified;
+	}
+
+	/**
+	 * Loads the index file.
+	 *
+	 * @return the sections, or null if the index file doesn't exist, is invalid, or isn't up to date
+	 */
+	private static Sections load(File file) throws IOException {
+		File indexFile = indexFile(file);
+		if (!indexFile.isFile())
+			return null;
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION)
+				return null;
+			long size = in.readLong(), lastModified = in.readLong();
+			if (!isUpToDate(file, size, lastModified))
+				return null;
+			Sections s = new Sections(size, lastModified, in.readInt());
+			String[] previous = new String[0];
+			for (int i = 0; i < s.count; i++) {
+				// Each path is stored as the number of parts shared with the previous path, and the other parts
+				int shared = in.readUnsignedShort(), length = shared + in.readUnsignedShort();
+				if (shared > previous.length)
+					return null;
+				String[] path = Arrays.copyOf(previous, length);
+				for (int j = shared; j < length; j++) {
+					path[j] = in.readUTF();
+				}
+				s.paths[i] = previous = path;
+				s.arrays[i] = in.readBoolean();
+				s.offsets[i] = in.readLong();
+				s.lengths[i] = in.readInt();
+				s.crcs[i] = in.readInt();
+			}
+			s.createTree();
+			return s;
+		} catch (EOFException ex) {
+			return null;// incomplete index
+		}
+	}
+
+	private static Sections buildAndSave(File file) throws IOException {
+		Sections s = build(file, file.length(), Files.getLastModifiedTime(file.toPath()).toMillis());
+		File indexFile = indexFile(file);
+		File tmp = new File(indexFile.getPath() + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(s.size);
+			out.writeLong(s.lastModified);
+			out.writeInt(s.count);
+			String[] previous = new String[0];
+			for (int i = 0; i < s.count; i++) {
+				String[] path = s.paths[i];
+				int shared = 0;
+				while (shared < path.length && shared < previous.length && path[shared].equals(previous[shared])) {
+					shared++;
+				}
+				out.writeShort(shared);
+				out.writeShort(path.length - shared);
+				for (int j = shared; j < path.length; j++) {
+					out.writeUTF(path[j]);
+				}
+				previous = path;
+				out.writeBoolean(s.arrays[i]);
+				out.writeLong(s.offsets[i]);
+				out.writeInt(s.lengths[i]);
+				out.writeInt(s.crcs[i]);
+			}
+		}
+		try {
+			Files.move(tmp.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException ex) {
+			Files.move(tmp.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		return s;
+	}
+
+	/**
+	 * Finds the sections of a file. The values are skipped, not parsed.
+	 */
+	private static Sections build(File file, long size, long lastModified) throws IOException {
+		byte[] bytes = Files.readAllBytes(file.toPath());
+		String data = new String(bytes, StandardCharsets.UTF_8);
+		TomlReader toml = new TomlReader(data, false, TomlMetrics.NONE, null);
+		List<String[]> paths = new ArrayList<>();
+		List<Boolean> arrays = new ArrayList<>();
+		List<Integer> starts = new ArrayList<>();// positions in the String
+		paths.add(new String[0]);
+		arrays.add(false);
+		starts.add(0);
+		skipTableContent(toml);
+		toml.checkUnfinishedTable();
+		while (toml.hasNext()) {
+			starts.add(toml.position() - 1);// the '[' of the header
+			List<String> keyParts = toml.nextTableHeader();
+			paths.add(keyParts.toArray(new String[keyParts.size()]));
+			arrays.add(toml.headerIsArray);
+			skipTableContent(toml);
+		}
+
+		// Converts the positions to byte offsets, and computes the CRC32s
+		Sections s = new Sections(size, lastModified, paths.size());
+		CRC32 crc = new CRC32();
+		int charPos = 0;
+		long bytePos = 0;
+		for (int i = 0; i < s.count; i++) {
+			int start = starts.get(i);
+			while (charPos < start) {
+				bytePos += utf8Length(data.charAt(charPos++));
+			}
+			s.offsets[i] = bytePos;
+		}
+		for (int i = 0; i < s.count; i++) {
+			long end = (i + 1 < s.count) ? s.offsets[i + 1] : bytes.length;
+			s.paths[i] = paths.get(i);
+			s.arrays[i] = arrays.get(i);
+			s.lengths[i] = (int) (end - s.offsets[i]);
+			crc.reset();
+			crc.update(bytes, (int) s.offsets[i], s.lengths[i]);
+			s.crcs[i] = (int) crc.getValue();
+		}
+		s.createTree();
+		return s;
+	}
+
+	private static void skipTableContent(TomlReader toml) {
+		while (toml.nextEntryKey() != null) {
+			toml.skipEntryValue();
+		}
+	}
+
+	private static int utf8Length(char c) {
+		if (c < 0x80)
+			return 1;
+		if (c < 0x800 || Character.isSurrogate(c))// a surrogate pair is 4 bytes
+			return 2;
+		return 3;
+	}
+
+}
@@ -0,0 +1,185 @@
+package com.electronwill.toml;
+
+/**
+ * Receives events about the read and write operations, to measure them. All the methods do nothing by default, so
+ * an implementation only has to override the methods it needs.
+ * <p>
+ * The source of an operation is a file path, or "string", "stream" or "writer" depending on how the data is
+ * read or written. The durations are in nanoseconds.
+ * </p>
+ * <p>
+ * The metrics are set globally with {@link Toml#setMetrics(TomlMetrics)}, or for one reader or writer with the
+ * constructors of {@link TomlReader} and {@link TomlWriter}. The methods may be called by several threads at the
+ * same time. See {@link TomlMetricsAggregator} for a ready-to-use implementation.
+ * </p>
+ * <p>
+ * When the JDK Flight Recorder is available, the operations that use the global metrics also emit the JFR events
+ * com.electronwill.toml.Parse, com.electronwill.toml.ParseError and com.electronwill.toml.Write, while a recording
+ * has them enabled.
+ * </p>
+ */
+public interface TomlMetrics {
+
+	/**
+	 * Metrics that do nothing. When used, the operations aren't measured at all.
+	 */
+	TomlMetrics NONE = new TomlMetrics() {};
+
+	/**
+	 * Called when the parsing of some data begins.
+	 *
+	 * @param source the source of the data
+	 * @param strictAsciiBareKeys true if only strict bare keys are allowed
+	 */
+	default void readStarted(String source, boolean strictAsciiBareKeys) {}
+
+	/**
+	 * Called when some data has been successfully parsed.
+	 *
+	 * @param source the source of the data
+	 * @param bytes the number of bytes read, or -1 if unknown
+	 * @param chars the number of characters parsed
+	 * @param tables the number of tables: [tables], [[arrays of tables]] and {inline tables}
+	 * @param keys the number of keys
+	 * @param values the number of values, including the elements of the arrays
+	 * @param inputNanos the time spent reading the input and decoding it to characters, or 0 if the data is
+	 * already a String
+	 * @param parseNanos the time spent parsing the characters and building the tree of values
+	 */
+	default void readFinished(String source, long bytes, long chars, int tables, int keys, int values, long inputNanos,
+			long parseNanos) {}
+
+	/**
+	 * Called when the parsing of some data fails.
+	 *
+	 * @param source the source of the data
+	 * @param line the line where the error occured
+	 * @param error the error
+	 * @param nanos the time spent before the error
+	 */
+	default void readFailed(String source, int line, TomlException error, long nanos) {}
+
+	/**
+	 * Called when the writing of some data begins.
+	 *
+	 * @param source where the data is written
+	 */
+	default void writeStarted(String source) {}
+
+	/**
+	 * Called when some data has been successfully written.
+	 *
+	 * @param source where the data is written
+	 * @param chars the number of characters written
+	 * @param tables the number of [tables] and [[arrays of tables]] elements
+	 * @param keys the number of keys
+	 * @param values the number of values, including the elements of the arrays
+	 * @param nanos the time spent writing
+	 */
+	default void writeFinished(String source, long chars, int tables, int keys, int values, long nanos) {}
+
+	/**
+	 * Called when the writing of some data fails.
+	 *
+	 * @param source where the data is written
+	 * @param error the error, an IOException or a TomlException
+	 * @param nanos the time spent before the error
+	 */
+	default void writeFailed(String source, Exception error, long nanos) {}
+
+	/**
+	 * Called when a file watched by a {@link TomlWatcher} has been reloaded, and its new data published.
+	 *
+	 * @param source the path of the file
+	 * @param latencyNanos the time between the first change of the file and the publication of the new data
+	 */
+	default void reloadFinished(String source, long latencyNanos) {}
+
+	/**
+	 * Called when a file watched by a {@link TomlWatcher} has changed, but isn't reloaded because its size,
+	 * modification date and content are the same.
+	 *
+	 * @param source the path of the file
+	 */
+	default void reloadSkipped(String source) {}
+
+	/**
+	 * Called when the reloading of a file watched by a {@link TomlWatcher} fails. The previous data is kept.
+	 *
+	 * @param source the path of the file
+	 * @param error the error, an IOException or a TomlException
+	 * @param latencyNanos the time between the first change of the file and the error
+	 */
+	default void reloadFailed(String source, Exception error, long latencyNanos) {}
+
+	/**
+	 * Returns metrics that notify both of the specified metrics, in order.
+	 *
+	 * @param first the first metrics
+	 * @param second the second metrics
+	 * @return metrics that notify first and then second
+	 */
+	static TomlMetrics combine(TomlMetrics first, TomlMetrics second) {
+		if (first == NONE)
+			return second;
+		if (second == NONE)
+			return first;
+		return new TomlMetrics() {
+			@Override
+			public void readStarted(String source, boolean strictAsciiBareKeys) {
+				first.readStarted(source, strictAsciiBareKeys);
+				second.readStarted(source, strictAsciiBareKeys);
+			}
+
+			@Override
+			public void readFinished(String source, long bytes, long chars, int tables, int keys, int values,
+					long inputNanos, long parseNanos) {
+				first.readFinished(source, bytes, chars, tables, keys, values, inputNanos, parseNanos);
+				second.readFinished(source, bytes, chars, tables, keys, values, inputNanos, parseNanos);
+			}
+
+			@Override
+			public void readFailed(String source, int line, TomlException error, long nanos) {
+				first.readFailed(source, line, error, nanos);
+				second.readFailed(source, line, error, nanos);
+			}
+
+			@Override
+			public void writeStarted(String source) {
+				first.writeStarted(source);
+				second.writeStarted(source);
+			}
+
+			@Override
+			public void writeFinished(String source, long chars, int tables, int keys, int values, long nanos) {
+				first.writeFinished(source, chars, tables, keys, values, nanos);
+				second.writeFinished(source, chars, tables, keys, values, nanos);
+			}
+
+			@Override
+			public void writeFailed(String source, Exception error, long nanos) {
+				first.writeFailed(source, error, nanos);
+				second.writeFailed(source, error, nanos);
+			}
+
+			@Override
+			public void reloadFinished(String source, long latencyNanos) {
+				first.reloadFinished(source, latencyNanos);
+				second.reloadFinished(source, latencyNanos);
+			}
+
+			@Override
+			public void reloadSkipped(String source) {
+				first.reloadSkipped(source);
+				second.reloadSkipped(source);
+			}
+
+			@Override
+			public void reloadFailed(String source, Exception error, long latencyNanos) {
+				first.reloadFailed(source, error, latencyNanos);
+				second.reloadFailed(source, error, latencyNanos);
+			}
+		};
+	}
+
+}
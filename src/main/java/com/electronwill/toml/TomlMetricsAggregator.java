@@ -0,0 +1,329 @@
+package com.electronwill.toml;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link TomlMetrics} that sums the events, with {@link LongAdder}s. It gives the number of operations, their
+ * throughput, and a histogram of their latencies. It may be used by several threads at the same time.
+ * <p>
+ * The histograms have {@value #BUCKETS} buckets: the bucket i counts the operations that took between 2^i and
+ * 2^(i+1) nanoseconds (the bucket 0 also counts the operations under 1 ns).
+ * </p>
+ */
+public final class TomlMetricsAggregator implements TomlMetrics {
+
+	/**
+	 * The number of buckets in each histogram.
+	 */
+	public static final int BUCKETS = 48;
+
+	private final Counters reads = new Counters(), writes = new Counters(), reloads = new Counters();
+	private final LongAdder readBytes = new LongAdder(), inputNanos = new LongAdder(), reloadsSkipped = new LongAdder();
+
+	@Override
+	public void readFinished(String source, long bytes, long chars, int tables, int keys, int values, long inputNanos,
+			long parseNanos) {
+		if (bytes > 0)
+			readBytes.add(bytes);
+		this.inputNanos.add(inputNanos);
+		reads.add(chars, tables, keys, values, inputNanos + parseNanos);
+	}
+
+	@Override
+	public void readFailed(String source, int line, TomlException error, long nanos) {
+		reads.failures.increment();
+	}
+
+	@Override
+	public void writeFinished(String source, long chars, int tables, int keys, int values, long nanos) {
+		writes.add(chars, tables, keys, values, nanos);
+	}
+
+	@Override
+	public void writeFailed(String source, Exception error, long nanos) {
+		writes.failures.increment();
+	}
+
+	@Override
+	public void reloadFinished(String source, long latencyNanos) {
+		reloads.add(0, 0, 0, 0, latencyNanos);
+	}
+
+	@Override
+	public void reloadSkipped(String source) {
+		reloadsSkipped.increment();
+	}
+
+	@Override
+	public void reloadFailed(String source, Exception error, long latencyNanos) {
+		reloads.failures.increment();
+	}
+
+	/**
+	 * @return the number of successful reads
+	 */
+	public long getReadCount() {
+		return reads.count.sum();
+	}
+
+	/**
+	 * @return the number of failed reads
+	 */
+	public long getReadFailures() {
+		return reads.failures.sum();
+	}
+
+	/**
+	 * @return the number of characters read, by the successful reads
+	 */
+	public long getReadChars() {
+		return reads.chars.sum();
+	}
+
+	/**
+	 * @return the number of bytes read, by the successful reads that know it
+	 */
+	public long getReadBytes() {
+		return readBytes.sum();
+	}
+
+	/**
+	 * @return the number of tables, keys and values read, in this order
+	 */
+	public long[] getReadElements() {
+		return new long[] { reads.tables.sum(), reads.keys.sum(), reads.values.sum() };
+	}
+
+	/**
+	 * @return the time spent in the successful reads, in nanoseconds
+	 */
+	public long getReadNanos() {
+		return reads.nanos.sum();
+	}
+
+	/**
+	 * @return the part of {@link #getReadNanos()} spent reading the input, in nanoseconds
+	 */
+	public long getReadInputNanos() {
+		return inputNanos.sum();
+	}
+
+	/**
+	 * @return the number of characters read per second
+	 */
+	public double getReadThroughput() {
+		return reads.throughput();
+	}
+
+	/**
+	 * @return a copy of the histogram of the latencies of the reads
+	 */
+	public long[] getReadLatencyHistogram() {
+		return reads.histogram();
+	}
+
+	/**
+	 * Estimates a percentile of the latencies of the reads, from the histogram. The result is the upper bound of
+	 * the bucket that contains the percentile.
+	 *
+	 * @param percentile the percentile, between 0 and 100
+	 * @return the latency, in nanoseconds
+	 */
+	public long getReadLatencyPercentile(double percentile) {
+		return reads.percentile(percentile);
+	}
+
+	/**
+	 * @return the number of successful writes
+	 */
+	public long getWriteCount() {
+		return writes.count.sum();
+	}
+
+	/**
+	 * @return the number of failed writes
+	 */
+	public long getWriteFailures() {
+		return writes.failures.sum();
+	}
+
+	/**
+	 * @return the number of characters written, by the successful writes
+	 */
+	public long getWriteChars() {
+		return writes.chars.sum();
+	}
+
+	/**
+	 * @return the number of tables, keys and values written, in this order
+	 */
+	public long[] getWriteElements() {
+		return new long[] { writes.tables.sum(), writes.keys.sum(), writes.values.sum() };
+	}
+
+	/**
+	 * @return the time spent in the successful writes, in nanoseconds
+	 */
+	public long getWriteNanos() {
+		return writes.nanos.sum();
+	}
+
+	/**
+	 * @return the number of characters written per second
+	 */
+	public double getWriteThroughput() {
+		return writes.throughput();
+	}
+
+	/**
+	 * @return a copy of the histogram of the latencies of the writes
+	 */
+	public long[] getWriteLatencyHistogram() {
+		return writes.histogram();
+	}
+
+	/**
+	 * Estimates a percentile of the latencies of the writes, from the histogram. The result is the upper bound of
+	 * the bucket that contains the percentile.
+	 *
+	 * @param percentile the percentile, between 0 and 100
+	 * @return the latency, in nanoseconds
+	 */
+	public long getWriteLatencyPercentile(double percentile) {
+		return writes.percentile(percentile);
+	}
+
+	/**
+	 * @return the number of successful reloads of watched files
+	 */
+	public long getReloadCount() {
+		return reloads.count.sum();
+	}
+
+	/**
+	 * @return the number of failed reloads of watched files
+	 */
+	public long getReloadFailures() {
+		return reloads.failures.sum();
+	}
+
+	/**
+	 * @return the number of changes of watched files that didn't need a reload
+	 */
+	public long getReloadsSkipped() {
+		return reloadsSkipped.sum();
+	}
+
+	/**
+	 * @return a copy of the histogram of the latencies of the reloads
+	 */
+	public long[] getReloadLatencyHistogram() {
+		return reloads.histogram();
+	}
+
+	/**
+	 * Estimates a percentile of the latencies of the reloads, from the histogram. The result is the upper bound of
+	 * the bucket that contains the percentile.
+	 *
+	 * @param percentile the percentile, between 0 and 100
+	 * @return the latency, in nanoseconds
+	 */
+	public long getReloadLatencyPercentile(double percentile) {
+		return reloads.percentile(percentile);
+	}
+
+	/**
+	 * Resets all the counters to zero.
+	 */
+	public void reset() {
+		reads.reset();
+		writes.reset();
+		reloads.reset();
+		readBytes.reset();
+		inputNanos.reset();
+		reloadsSkipped.reset();
+	}
+
+	@Override
+	public String toString() {
+		return "TomlMetricsAggregator[reads: " + getReadCount() + " (" + getReadFailures() + " failed), "
+				+ (long) getReadThroughput() + " chars/s, p50=" + getReadLatencyPercentile(50) + "ns, p99="
+				+ getReadLatencyPercentile(99) + "ns; writes: " + getWriteCount() + " (" + getWriteFailures()
+				+ " failed), " + (long) getWriteThroughput() + " chars/s, p50=" + getWriteLatencyPercentile(50)
+				+ "ns, p99=" + getWriteLatencyPercentile(99) + "ns; reloads: " + getReloadCount() + " ("
+				+ getReloadFailures() + " failed, " + getReloadsSkipped() + " skipped), p50="
+				+ getReloadLatencyPercentile(50) + "ns, p99=" + getReloadLatencyPercentile(99) + "ns]";
+	}
+
+	/**
+	 * The counters of one kind of operation.
+	 */
+	private static final class Counters {
+
+		final LongAdder count = new LongAdder(), failures = new LongAdder(), chars = new LongAdder(),
+				tables = new LongAdder(), keys = new LongAdder(), values = new LongAdder(), nanos = new LongAdder();
+		final LongAdder[] latencies = new LongAdder[BUCKETS];
+
+		Counters() {
+			for (int i = 0; i < BUCKETS; i++) {
+				latencies[i] = new LongAdder();
+			}
+		}
+
+		void add(long chars, int tables, int keys, int values, long nanos) {
+			count.increment();
+			this.chars.add(chars);
+			this.tables.add(tables);
+			this.keys.add(keys);
+			this.values.add(values);
+			this.nanos.add(nanos);
+			int bucket = (nanos <= 1) ? 0 : 63 - Long.numberOfLeadingZeros(nanos);
+			latencies[Math.min(bucket, BUCKETS - 1)].increment();
+		}
+
+		double throughput() {
+			long totalNanos = nanos.sum();
+			return (totalNanos == 0) ? 0 : chars.sum() * 1e9 / totalNanos;
+		}
+
+		long[] histogram() {
+			long[] histogram = new long[BUCKETS];
+			for (int i = 0; i < BUCKETS; i++) {
+				histogram[i] = latencies[i].sum();
+			}
+			return histogram;
+		}
+
+		long percentile(double percentile) {
+			long[] histogram = histogram();
+			long total = 0;
+			for (long n : histogram) {
+				total += n;
+			}
+			if (total == 0)
+				return 0;
+			long rank = (long) Math.ceil(percentile / 100 * total);
+			long seen = 0;
+			for (int i = 0; i < BUCKETS; i++) {
+				seen += histogram[i];
+				if (seen >= rank && histogram[i] != 0)
+					return 1L << (i + 1);
+			}
+			return 1L << BUCKETS;
+		}
+
+		void reset() {
+			count.reset();
+			failures.reset();
+			chars.reset();
+			tables.reset();
+			keys.reset();
+			values.reset();
+			nanos.reset();
+			for (LongAdder latency : latencies) {
+				latency.reset();
+			}
+		}
+	}
+
+}
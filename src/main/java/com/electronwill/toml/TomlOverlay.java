@@ -0,0 +1,210 @@
+package com.electronwill.toml;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A read-only view of several TOML documents stacked on top of each other, for instance defaults, region, cluster
+ * and host configurations. The value of a key comes from the highest layer that contains it, except for the tables:
+ * when several layers contain a table with the same key, the result is an overlay of these tables. A value that
+ * isn't a table hides the lower layers completely. The arrays aren't merged.
+ * <p>
+ * Nothing is copied: the lookups go through the layers, from the highest to the lowest. The overlays of the
+ * sub-tables are created the first time they are needed, and each key found is remembered, so that the next
+ * lookups of the same key don't go through the layers again. The missing keys aren't remembered, so looking up
+ * arbitrary keys doesn't fill the memory. Because of this cache, the layers must not be modified after the
+ * creation of the overlay. The tables are always returned as read-only overlays, even if they are in only one
+ * layer, but the arrays are shared with the layers. Use {@link #materialize()} to get a plain Map.
+ * </p>
+ * <p>
+ * A TomlOverlay is thread-safe, provided that its layers aren't modified. Example:
+ *
+ * <pre>
+ * Map&lt;String, Object&gt; config = new TomlOverlay(Toml.read(defaults), Toml.read(region), Toml.read(host));
+ * Object port = ((Map) config.get("server")).get("port");// from the host, or else the region, or else the defaults
+ * </pre>
+ * </p>
+ */
+public final class TomlOverlay extends AbstractMap<String, Object> {
+
+	private final List<Map<String, Object>> layers;// the highest layer first
+	private final ConcurrentHashMap<String, Object> resolved = new ConcurrentHashMap<>();
+	private volatile Set<String> keys;
+	private Set<Entry<String, Object>> entrySet;
+
+	/**
+	 * Creates a new TomlOverlay.
+	 *
+	 * @param layers the layers, from the lowest priority (for instance the defaults) to the highest.
+	 */
+	@SafeVarargs
+	public TomlOverlay(Map<String, Object>... layers) {
+		this.layers = new ArrayList<>(layers.length);
+		for (int i = layers.length - 1; i >= 0; i--) {
+			addLayer(layers[i], i);
+		}
+	}
+
+	/**
+	 * Creates a new TomlOverlay.
+	 *
+	 * @param layers the layers, from the lowest priority (for instance the defaults) to the highest.
+	 */
+	public TomlOverlay(List<? extends Map<String, Object>> layers) {
+		this.layers = new ArrayList<>(layers.size());
+		for (int i = layers.size() - 1; i >= 0; i--) {
+			addLayer(layers.get(i), i);
+		}
+	}
+
+	private void addLayer(Map<String, Object> layer, int index) {
+		if (layer == null)
+			throw new NullPointerException("Null layer at index " + index);
+		layers.add(layer);
+	}
+
+	/**
+	 * Returns the layers of this overlay.
+	 *
+	 * @return the layers, from the lowest priority to the highest.
+	 */
+	public List<Map<String, Object>> getLayers() {
+		List<Map<String, Object>> list = new ArrayList<>(layers);
+		Collections.reverse(list);
+		return Collections.unmodifiableList(list);
+	}
+
+	/**
+	 * Returns the value of a key. If the value is a table, the result is a TomlOverlay of the tables of all the
+	 * layers that contain this key.
+	 */
+	@Override
+	public Object get(Object key) {
+		Object value = resolved.get(key);
+		if (value == null) {
+			if (!(key instanceof String))
+				return null;
+			value = resolve((String) key);
+			if (value == null)
+				return null;
+			Object previous = resolved.putIfAbsent((String) key, value);
+			if (previous != null)
+				value = previous;// the same object for all the threads
+		}
+		return value;
+	}
+
+	@SuppressWarnings("unchecked")
+	private Object resolve(String key) {
+		List<Map<String, Object>> tables = null;
+		for (Map<String, Object> layer : layers) {
+			Object value = layer.get(key);
+			if (value == null)
+				continue;
+			if (!(value instanceof Map)) {// hides the lower layers
+				if (tables == null)
+					return value;
+				break;
+			}
+			if (tables == null)
+				tables = new ArrayList<>(layers.size());
+			tables.add((Map<String, Object>) value);
+		}
+		if (tables == null)
+			return null;
+		Collections.reverse(tables);// from the lowest priority to the highest
+		return new TomlOverlay(tables);
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return get(key) != null;
+	}
+
+	@Override
+	public int size() {
+		return keys().size();
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return keys().isEmpty();
+	}
+
+	@Override
+	public Set<String> keySet() {
+		return keys();
+	}
+
+	/**
+	 * Returns the keys of all the layers. The set is computed once.
+	 */
+	private Set<String> keys() {
+		Set<String> set = keys;
+		if (set == null) {
+			set = new LinkedHashSet<>();
+			for (Map<String, Object> layer : layers) {
+				set.addAll(layer.keySet());
+			}
+			keys = set = Collections.unmodifiableSet(set);
+		}
+		return set;
+	}
+
+	@Override
+	public Set<Entry<String, Object>> entrySet() {
+		if (entrySet == null) {
+			entrySet = new AbstractSet<Entry<String, Object>>() {
+				@Override
+				public Iterator<Entry<String, Object>> iterator() {
+					Iterator<String> it = keys().iterator();
+					return new Iterator<Entry<String, Object>>() {
+						@Override
+						public boolean hasNext() {
+							return it.hasNext();
+						}
+
+						@Override
+						public Entry<String, Object> next() {
+							String key = it.next();
+							return new SimpleImmutableEntry<>(key, get(key));
+						}
+					};
+				}
+
+				@Override
+				public int size() {
+					return keys().size();
+				}
+			};
+		}
+		return entrySet;
+	}
+
+	/**
+	 * Copies the content of this overlay to a new Map. The tables that are merged are copied recursively, the other
+	 * values are shared with the layers.
+	 *
+	 * @return a new Map with the effective configuration
+	 */
+	public Map<String, Object> materialize() {
+		Map<String, Object> map = new HashMap<>(keys().size() * 4 / 3 + 1);
+		for (String key : keys()) {
+			Object value = get(key);
+			if (value instanceof TomlOverlay)
+				value = ((TomlOverlay) value).materialize();
+			map.put(key, value);
+		}
+		return map;
+	}
+
+}
@@ -4,10 +4,19 @@ import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 /**
  * Class for reading TOML v0.4.0.
@@ -30,33 +39,247 @@ import java.util.Map;
  * bare keys may contain any character except those below the space character ' ' in the unicode table, '.', '[', ']'
  * and '='. The behaviour of TomlReader regarding bare keys is set in its constructor.
  * </p>
+ * <h1>Schema</h1>
+ * <p>
+ * A TomlReader may check the data against a {@link TomlSchema} while it reads it. See the documentation of
+ * TomlSchema.
+ * </p>
+ * <h1>Hashes</h1>
+ * <p>
+ * A TomlReader may compute the hashes of the tables and values while it reads the data, to find what has changed
+ * between two versions of the data. See {@link #setHashing(boolean)} and the documentation of {@link TomlHashes}.
+ * </p>
+ * <h1>Limits</h1>
+ * <p>
+ * A TomlReader may limit the size of the data it reads, to read untrusted data safely. See the documentation of
+ * {@link TomlReaderOptions}.
+ * </p>
  *
  * @author TheElectronWill
  * 		
  */
 public final class TomlReader {
 	
+	/**
+	 * The value of the keys when validating: the values aren't kept, but the keys are, to find the duplicates.
+	 */
+	private static final Object VALUE = Boolean.TRUE;
+	
 	private final String data;
 	private final boolean strictAsciiBareKeys;
+	private final TomlMetrics metrics;
+	private final TomlDeduplicator deduplicator;// may be null
+	private final TomlSchema schema;// may be null
+	private Set<Map<String, Object>> implicitTables;// the tables created implicitly by the headers, and not defined yet
+	private Set<List<Map<String, Object>>> tableArrays;// the arrays of tables of the headers
+	private Object lastTableArray;// the last array of tables found in tableArrays
+	private List<Object> inlineTables;// the inline tables that are the values of the entries of the tables
+	private Set<String> inlineTableKeys;// their keys
+	private Set<Object> hashedInlineTables;// the first ones of inlineTables, hashed when a header needs them
+	private int recordInlineTables;// the number of inlineTables that aren't inside the current record
+	private List<Object> recordObjects;// the elements of implicitTables and tableArrays that are inside the current record
+	private String[] recordPath;// the array of tables whose elements are given to the recordHandler
+	private Predicate<? super Map<String, Object>> recordHandler;// may be null
+	private List<Map<String, Object>> records;// the array that contains the current record
+	private boolean hashing;
+	private TomlHashes hashes, tableHashes;// the hashes of the data and of the current table, if hashing
+	private final long maxInputBytes;
+	private final int maxDepth, maxStringLength, maxArrayLength, maxKeysPerTable, maxValues;
+	private Container[] stack = new Container[8];// the arrays and inline tables being read
+	private int tableDepth = 0;// the number of parts of the header of the current table
+	private final CharScanner scanner;
 	private int pos = 0;// current position
 	private int line = 1;// current line
+	private int tables = 0, keys = 0, values = 0;// counters for the metrics
+	boolean headerIsArray;// true if the last header read by nextTableHeader() is a [[table]]
+	int valueStart, valueEnd;// the position of the last value skipped by skipEntryValue()
+	private boolean validating;// true to check the data without building the values
+	private List<TomlValidator.Problem> problems;// the problems found, when validating
+	private String source = "string";
+	private long bytes = -1, inputNanos = 0;
 	
 	/**
-	 * Creates a new TomlReader.
+	 * Creates a new TomlReader. The metrics set with {@link Toml#setMetrics(TomlMetrics)} are used.
 	 *
 	 * @param data the TOML data to read
 	 * @param strictAsciiBareKeys <code>true</false> to allow only strict bare keys, <code>false</code> to allow lenient
 	 *        ones.
 	 */
 	public TomlReader(String data, boolean strictAsciiBareKeys) {
+		this(data, strictAsciiBareKeys, Toml.defaultMetrics());
+	}
+	
+	/**
+	 * Creates a new TomlReader that reports its operations to the specified metrics.
+	 *
+	 * @param data the TOML data to read
+	 * @param strictAsciiBareKeys <code>true</false> to allow only strict bare keys, <code>false</code> to allow lenient
+	 *        ones.
+	 * @param metrics the metrics, or {@link TomlMetrics#NONE}
+	 */
+	public TomlReader(String data, boolean strictAsciiBareKeys, TomlMetrics metrics) {
+		this(data, strictAsciiBareKeys, metrics, null);
+	}
+	
+	/**
+	 * Creates a new TomlReader that canonicalizes the keys, the short strings and the numbers with the specified
+	 * deduplicator. The metrics set with {@link Toml#setMetrics(TomlMetrics)} are used.
+	 *
+	 * @param data the TOML data to read
+	 * @param strictAsciiBareKeys <code>true</false> to allow only strict bare keys, <code>false</code> to allow lenient
+	 *        ones.
+	 * @param deduplicator the deduplicator, which may be shared with other readers
+	 */
+	public TomlReader(String data, boolean strictAsciiBareKeys, TomlDeduplicator deduplicator) {
+		this(data, strictAsciiBareKeys, Toml.defaultMetrics(), deduplicator);
+	}
+	
+	/**
+	 * Creates a new TomlReader that reports its operations to the specified metrics, and canonicalizes the keys,
+	 * the short strings and the numbers with the specified deduplicator.
+	 *
+	 * @param data the TOML data to read
+	 * @param strictAsciiBareKeys <code>true</false> to allow only strict bare keys, <code>false</code> to allow lenient
+	 *        ones.
+	 * @param metrics the metrics, or {@link TomlMetrics#NONE}
+	 * @param deduplicator the deduplicator, or null to create a new object for each key and value
+	 */
+	public TomlReader(String data, boolean strictAsciiBareKeys, TomlMetrics metrics, TomlDeduplicator deduplicator) {
+		this(data, strictAsciiBareKeys, metrics, deduplicator, null);
+	}
+	
+	/**
+	 * Creates a new TomlReader that checks the data against the specified schema while reading it. The metrics set
+	 * with {@link Toml#setMetrics(TomlMetrics)} are used.
+	 *
+	 * @param data the TOML data to read
+	 * @param strictAsciiBareKeys <code>true</false> to allow only strict bare keys, <code>false</code> to allow lenient
+	 *        ones.
+	 * @param schema the schema
+	 */
+	public TomlReader(String data, boolean strictAsciiBareKeys, TomlSchema schema) {
+		this(data, strictAsciiBareKeys, Toml.defaultMetrics(), null, schema);
+	}
+	
+	/**
+	 * Creates a new TomlReader that reports its operations to the specified metrics, canonicalizes the keys, the
+	 * short strings and the numbers with the specified deduplicator, and checks the data against the specified
+	 * schema.
+	 *
+	 * @param data the TOML data to read
+	 * @param strictAsciiBareKeys <code>true</false> to allow only strict bare keys, <code>false</code> to allow lenient
+	 *        ones.
+	 * @param metrics the metrics, or {@link TomlMetrics#NONE}
+	 * @param deduplicator the deduplicator, or null to create a new object for each key and value
+	 * @param schema the schema, or null to accept any valid data
+	 */
+	public TomlReader(String data, boolean strictAsciiBareKeys, TomlMetrics metrics, TomlDeduplicator deduplicator,
+			TomlSchema schema) {
+		this(data, strictAsciiBareKeys, metrics, deduplicator, schema, TomlReaderOptions.DEFAULT);
+	}
+	
+	/**
+	 * Creates a new TomlReader that enforces the limits of the specified options. The metrics set with
+	 * {@link Toml#setMetrics(TomlMetrics)} are used.
+	 *
+	 * @param data the TOML data to read
+	 * @param strictAsciiBareKeys <code>true</false> to allow only strict bare keys, <code>false</code> to allow lenient
+	 *        ones.
+	 * @param options the limits
+	 */
+	public TomlReader(String data, boolean strictAsciiBareKeys, TomlReaderOptions options) {
+		this(data, strictAsciiBareKeys, Toml.defaultMetrics(), null, null, options);
+	}
+	
+	/**
+	 * Creates a new TomlReader that reports its operations to the specified metrics, canonicalizes the keys, the
+	 * short strings and the numbers with the specified deduplicator, checks the data against the specified schema,
+	 * and enforces the limits of the specified options.
+	 *
+	 * @param data the TOML data to read
+	 * @param strictAsciiBareKeys <code>true</false> to allow only strict bare keys, <code>false</code> to allow lenient
+	 *        ones.
+	 * @param metrics the metrics, or {@link TomlMetrics#NONE}
+	 * @param deduplicator the deduplicator, or null to create a new object for each key and value
+	 * @param schema the schema, or null to accept any valid data
+	 * @param options the limits
+	 */
+	public TomlReader(String data, boolean strictAsciiBareKeys, TomlMetrics metrics, TomlDeduplicator deduplicator,
+			TomlSchema schema, TomlReaderOptions options) {
 		this.data = data;
 		this.strictAsciiBareKeys = strictAsciiBareKeys;
+		this.metrics = metrics;
+		this.deduplicator = deduplicator;
+		this.schema = schema;
+		this.scanner = CharScanners.create(data);
+		this.maxInputBytes = options.getMaxInputBytes();
+		this.maxDepth = options.getMaxDepth();
+		this.maxStringLength = options.getMaxStringLength();
+		this.maxArrayLength = options.getMaxArrayLength();
+		this.maxKeysPerTable = options.getMaxKeysPerTable();
+		this.maxValues = options.getMaxValues();
+	}
+	
+	/**
+	 * Sets the informations about the origin of the data, given to the metrics.
+	 *
+	 * @param source the source of the data
+	 * @param bytes the number of bytes read, or -1 if unknown
+	 * @param inputNanos the time spent reading the data
+	 */
+	void setSource(String source, long bytes, long inputNanos) {
+		this.source = source;
+		this.bytes = bytes;
+		this.inputNanos = inputNanos;
+	}
+	
+	/**
+	 * Enables or disables the computation of the hashes of the tables and values by {@link #read()}.
+	 *
+	 * @param hashing true to compute the hashes
+	 */
+	public void setHashing(boolean hashing) {
+		this.hashing = hashing;
 	}
 	
-	private boolean hasNext() {
+	/**
+	 * Returns the hashes of the data read by the last call to {@link #read()}.
+	 *
+	 * @return the hashes, or null if the hashing isn't enabled or if the data hasn't been read
+	 */
+	public TomlHashes getHashes() {
+		return hashes;
+	}
+	
+	boolean hasNext() {
 		return pos < data.length();
 	}
 	
+	/**
+	 * Returns the current position in the data.
+	 */
+	int position() {
+		return pos;
+	}
+	
+	/**
+	 * Returns the current line.
+	 */
+	int line() {
+		return line;
+	}
+	
+	/**
+	 * Moves to the specified position, which must be at the beginning of an entry or of a table.
+	 *
+	 * @param position the new position
+	 * @param line the line of this position
+	 */
+	void seek(int position, int line) {
+		this.pos = position;
+		this.line = line;
+	}
+	
 	private char next() {
 		return data.charAt(pos++);
 	}
@@ -65,7 +288,9 @@ public final class TomlReader {
 		char c = ' ';
 		while (hasNext() && (c == ' ' || c == '\t' || c == '\r' || c == '\n' || (c == '#' && skipComments))) {
 			c = next();
-			if (skipComments && c == '#') {
+			if (c == ' ' || c == '\t') {
+				pos = scanner.skipSpaces(pos);
+			} else if (skipComments && c == '#') {
 				int nextLinebreak = data.indexOf('\n', pos);
 				if (nextLinebreak == -1) {
 					pos = data.length();
@@ -92,7 +317,92 @@ public final class TomlReader {
 		return c;
 	}
 	
-	private Object nextValue(char firstChar) {
+	private Object nextValue(char firstChar, TomlSchema.Field field) {
+		return nextValue(firstChar, field, false);
+	}
+	
+	/**
+	 * Skips a value without decoding it. The value is checked just enough to find where it ends.
+	 *
+	 * @return null
+	 */
+	private Object skipValue(char firstChar) {
+		return nextValue(firstChar, null, true);
+	}
+	
+	/**
+	 * Reads or skips a value. The arrays and the inline tables are read with an explicit stack of containers instead
+	 * of recursive calls, therefore the depth of the data is limited by {@link TomlReaderOptions#setMaxDepth(int)}, not
+	 * by the stack of the thread.
+	 *
+	 * @param field the schema of the value, or null
+	 * @param skip true to skip the value without decoding it
+	 * @return the value, or null if it's skipped
+	 */
+	private Object nextValue(char firstChar, TomlSchema.Field field, boolean skip) {
+		TomlSchema.Field rootField = skip ? null : field;
+		int depth = 0;
+		int c = firstChar;
+		while (true) {
+			Object value = null;
+			Container container;
+			if (c == '[' || c == '{') {// begins a container
+				if (!skip && field != null && !field.accepts((char) c))// fails before decoding the value
+					throw field.invalidType(line);
+				if (tableDepth + depth >= maxDepth)
+					throw new TomlException("Invalid value at line " + line + ": nested deeper than the maximum depth of " + maxDepth);
+				container = push(depth++);
+				if (!skip)
+					countValue();
+				if (c == '[') {
+					container.initArray(skip, (field == null) ? null : field.element);
+				} else {
+					if (!skip)
+						tables++;
+					container.initTable(skip, skip ? TomlSchema.Node.SKIP_ALL : (field == null) ? null : field.table, line);
+				}
+				c = nextInContainer(container, true);
+			} else {// a simple value, which may complete some containers
+				if (skip) {
+					skipSimpleValue((char) c);
+				} else {
+					if (field != null && !field.accepts((char) c))
+						throw field.invalidType(line);
+					countValue();
+					value = nextSimpleValue((char) c);
+					if (field != null)
+						field.check(value, line);
+				}
+				if (depth == 0)
+					return value;
+				container = stack[depth - 1];
+				container.add(value, line);
+				c = nextInContainer(container, false);
+			}
+			while (c == -1) {// the container ends
+				value = container.end();
+				depth--;
+				if (depth == 0) {
+					if (rootField != null)
+						rootField.check(value, line);
+					return value;
+				}
+				container = stack[depth - 1];
+				if (!container.skipped)
+					container.checkValue(value, line);
+				container.add(value, line);
+				c = nextInContainer(container, false);
+			}
+			// The next value is in the container
+			field = container.isArray ? container.elements : container.field;
+			skip = container.isArray ? container.skipped : container.skipValue;
+		}
+	}
+	
+	/**
+	 * Reads a value that isn't an array nor an inline table.
+	 */
+	private Object nextSimpleValue(char firstChar) {
 		switch (firstChar) {
 			case '+':
 			case '-':
@@ -127,10 +437,6 @@ public final class TomlReader {
 					}
 				}
 				return nextLiteralString();
-			case '[':
-				return nextArray();
-			case '{':
-				return nextInlineTable();
 			case 't':// Must be "true"
 				if (pos + 3 > data.length() || next() != 'r' || next() != 'u' || next() != 'e') {
 					throw new TomlException("Invalid value at line " + line);
@@ -146,158 +452,630 @@ public final class TomlReader {
 		}
 	}
 	
-	public Map<String, Object> read() {
-		Map<String, Object> map = nextTableContent();
-		
-		if (!hasNext() && pos > 0 && data.charAt(pos - 1) == '[')
-			throw new TomlException("Invalid table declaration at line " + line + ": it never ends");
-			
-		while (hasNext()) {
-			char c = nextUseful(true);
-			boolean twoBrackets;
-			if (c == '[') {
-				twoBrackets = true;
-				c = nextUseful(false);
-			} else {
-				twoBrackets = false;
-			}
-			pos--;
-			
-			// --- Reads the key --
-			List<String> keyParts = new ArrayList<>(4);
-			boolean insideSquareBrackets = true;
-			while (insideSquareBrackets) {
-				if (!hasNext())
-					throw new TomlException("Invalid table declaration at line " + line + ": it never ends");
-					
-				String name = null;
-				char nameFirstChar = nextUseful(false);
-				switch (nameFirstChar) {
-					case '"': {
-						if (pos + 1 < data.length()) {
-							char c2 = data.charAt(pos);
-							char c3 = data.charAt(pos + 1);
-							if (c2 == '"' && c3 == '"') {
-								pos += 2;
-								name = nextBasicMultilineString();
-							}
-						}
-						if (name == null) {
-							name = nextBasicString();
-						}
-						break;
+	/**
+	 * Returns the container at the specified depth of the stack, which is reused by all the values.
+	 */
+	private Container push(int depth) {
+		if (depth == stack.length)
+			stack = Arrays.copyOf(stack, depth * 2);
+		Container container = stack[depth];
+		if (container == null)
+			stack[depth] = container = new Container();
+		return container;
+	}
+	
+	private void countValue() {
+		if (++values > maxValues)
+			throw new TomlException("Invalid data at line " + line + ": more than the maximum of " + maxValues + " values");
+	}
+	
+	private TomlException tooManyElements() {
+		return new TomlException("Invalid array at line " + line + ": more than the maximum of " + maxArrayLength + " elements");
+	}
+	
+	private TomlException tooManyKeys() {
+		return new TomlException("Invalid table at line " + line + ": more than the maximum of " + maxKeysPerTable + " keys");
+	}
+	
+	private TomlException duplicateKey(String name) {
+		return new TomlException("Duplicate key \"" + name + "\" at line " + line);
+	}
+	
+	private TomlException tooLongString() {
+		return new TomlException("Invalid String at line " + line + ": longer than the maximum length of " + maxStringLength);
+	}
+	
+	/**
+	 * Reads what follows a value of an array or of an inline table, until the beginning of the next value.
+	 *
+	 * @param first true if no value has been read in the container
+	 * @return the first char of the next value, or -1 if the container ends
+	 */
+	private int nextInContainer(Container container, boolean first) {
+		return container.isArray ? nextArrayElement(first) : nextInlineTableEntry(container, first);
+	}
+	
+	private int nextArrayElement(boolean first) {
+		if (!first) {
+			char afterEntry = nextUseful(true);
+			if (afterEntry == ']')
+				return -1;
+			if (afterEntry != ',')
+				throw new TomlException("Invalid array at line " + line + ": expected a comma after each value");
+		}
+		char c = nextUseful(true);
+		return (c == ']') ? -1 : c;
+	}
+	
+	/**
+	 * Reads what follows a value of an inline table, and the key of the next value.
+	 */
+	private int nextInlineTableEntry(Container container, boolean first) {
+		if (!first) {
+			char after = nextUsefulOrLinebreak();
+			if (after == '}' || !hasNext())
+				return -1;
+			if (after != ',')
+				throw new TomlException("Invalid inline table at line " + line + ": missing comma");
+		}
+		char nameFirstChar = nextUsefulOrLinebreak();
+		String name = null;
+		switch (nameFirstChar) {
+			case '}':
+				return -1;
+			case '"': {
+				if (pos + 1 < data.length()) {
+					char c2 = data.charAt(pos);
+					char c3 = data.charAt(pos + 1);
+					if (c2 == '"' && c3 == '"') {
+						pos += 2;
+						name = nextBasicMultilineString();
 					}
-					case '\'': {
-						if (pos + 1 < data.length()) {
-							char c2 = data.charAt(pos);
-							char c3 = data.charAt(pos + 1);
-							if (c2 == '\'' && c3 == '\'') {
-								pos += 2;
-								name = nextLiteralMultilineString();
-							}
-						}
-						if (name == null) {
-							name = nextLiteralString();
-						}
-						break;
+				}
+				if (name == null)
+					name = nextBasicString();
+				break;
+			}
+			case '\'': {
+				if (pos + 1 < data.length()) {
+					char c2 = data.charAt(pos);
+					char c3 = data.charAt(pos + 1);
+					if (c2 == '\'' && c3 == '\'') {
+						pos += 2;
+						name = nextLiteralMultilineString();
 					}
-					default:
-						pos--;// to include the first (already read) non-space character
-						name = nextBareKey(']', '.').trim();
-						if (data.charAt(pos) == ']') {
-							if (!name.isEmpty())
-								keyParts.add(name);
-							insideSquareBrackets = false;
-						} else if (name.isEmpty()) {
-							throw new TomlException("Invalid empty key at line " + line);
-						}
-						
-						pos++;// to go after the character we stopped at in nextBareKey()
-						break;
 				}
-				if (insideSquareBrackets)
-					keyParts.add(name.trim());
+				if (name == null)
+					name = nextLiteralString();
+				break;
 			}
+			default:
+				pos--;// to include the first (already read) non-space character
+				name = nextBareKey(' ', '\t', '=');
+				if (name.isEmpty())
+					throw new TomlException("Invalid empty key at line " + line);
+				break;
+		}
+		if (container.map != null && container.map.containsKey(name))
+			throw duplicateKey(name);
+		
+		keys++;
+		char separator = nextUsefulOrLinebreak();// tries to find the '=' sign
+		if (separator != '=')
+			throw new TomlException("Invalid character '" + toString(separator) + "' at line " + line + ": expected '='");
 			
-			// -- Checks --
-			if (keyParts.isEmpty())
-				throw new TomlException("Invalid empty key at line " + line);
-				
-			if (twoBrackets && next() != ']') {// 2 brackets at the start but only one at the end!
-				throw new TomlException("Missing character ']' at line " + line);
+		char valueFirstChar = nextUsefulOrLinebreak();
+		TomlSchema.Node schema = container.schema;
+		TomlSchema.Field field = (schema == null) ? null : schema.get(name);
+		container.key = name;
+		container.field = field;
+		container.skipValue = field == null && schema != null && schema.skipUnknown(name, line);
+		return valueFirstChar;
+	}
+	
+	/**
+	 * An array or an inline table that is being read by {@link #nextValue(char, TomlSchema.Field, boolean)}.
+	 */
+	private final class Container {
+		boolean isArray;
+		boolean skipped;// true if the container is skipped
+		ArrayList<Object> list;// the elements of an array, if not skipped. Only the first one is kept when validating.
+		int size;// the number of elements of an array
+		Map<String, Object> map;// the entries of an inline table, if not skipped
+		TomlSchema.Field elements;// the schema of the elements of an array, or null
+		TomlSchema.Node schema;// the schema of an inline table, or null
+		int startLine;
+		// The current entry of an inline table
+		String key;
+		TomlSchema.Field field;
+		boolean skipValue;
+		
+		void initArray(boolean skipped, TomlSchema.Field elements) {
+			this.isArray = true;
+			this.skipped = skipped;
+			this.list = skipped ? null : new ArrayList<>();
+			this.size = 0;
+			this.elements = elements;
+		}
+		
+		void initTable(boolean skipped, TomlSchema.Node schema, int startLine) {
+			this.isArray = false;
+			this.skipped = skipped;
+			this.map = skipped ? null : new HashMap<>();
+			this.schema = schema;
+			this.startLine = startLine;
+		}
+		
+		/**
+		 * Checks a completed array or inline table against the schema of the current value of this container.
+		 */
+		void checkValue(Object value, int line) {
+			TomlSchema.Field valueField = isArray ? elements : skipValue ? null : field;
+			if (valueField != null)
+				valueField.check(value, line);
+		}
+		
+		/**
+		 * Adds a value to this container.
+		 */
+		void add(Object value, int line) {
+			if (isArray) {
+				if (skipped)
+					return;
+				if (size > 0 && !(list.get(0).getClass().isAssignableFrom(value.getClass())))
+					throw new TomlException("Invalid array at line " + line + ": all the values must have the same type");
+				if (size == maxArrayLength)
+					throw tooManyElements();
+				if (size++ == 0 || !validating)// the first element gives the type of the others
+					list.add(value);
+			} else if (!skipValue) {
+				map.put(key, validating ? VALUE : value);
+				if (map.size() > maxKeysPerTable)
+					throw tooManyKeys();
 			}
+		}
+		
+		/**
+		 * Ends this container.
+		 *
+		 * @return its value, or null if it's skipped
+		 */
+		Object end() {
+			Object value;
+			if (skipped) {
+				value = null;
+			} else if (isArray) {
+				list.trimToSize();
+				value = validating ? Collections.emptyList() : list;// keeps a type for the homogeneity of the arrays
+			} else {
+				if (schema != null)
+					schema.checkRequired(schema.required, map, startLine);
+				value = validating ? Collections.emptyMap() : map;
+			}
+			list = null;// doesn't retain the data
+			map = null;
+			key = null;
+			return value;
+		}
+	}
+	
+	/**
+	 * Reads the TOML data.
+	 *
+	 * @return a {@code Map<String, Object>} containing the parsed data
+	 * @throws TomlException if a parse error occurs
+	 */
+	public Map<String, Object> read() {
+		if (metrics == TomlMetrics.NONE)
+			return readData();
 			
-			// -- Reads the value (table content) --
-			Map<String, Object> value = nextTableContent();
-			
-			// -- Saves the value --
-			Map<String, Object> valueMap = map;// the map that contains the value
-			for (int i = 0; i < keyParts.size() - 1; i++) {
-				String part = keyParts.get(i);
-				Object child = valueMap.get(part);
-				Map<String, Object> childMap;
-				if (child == null) {// implicit table
-					childMap = new HashMap<>(4);
-					valueMap.put(part, childMap);
-				} else if (child instanceof Map) {// table
-					childMap = (Map) child;
-				} else {// array
-					List<Map> list = (List) child;
-					childMap = list.get(list.size() - 1);
+		metrics.readStarted(source, strictAsciiBareKeys);
+		long start = System.nanoTime();
+		Map<String, Object> map;
+		try {
+			map = readData();
+		} catch (TomlException ex) {
+			metrics.readFailed(source, line, ex, inputNanos + System.nanoTime() - start);
+			throw ex;
+		} catch (RuntimeException | Error ex) {
+			// Any other failure is reported too, so that the metrics never keep an operation pending
+			TomlException failure = new TomlException("Unexpected error at line " + line + ": " + ex, ex);
+			metrics.readFailed(source, line, failure, inputNanos + System.nanoTime() - start);
+			throw ex;
+		}
+		metrics.readFinished(source, bytes, data.length(), tables, keys, values, inputNanos, System.nanoTime() - start);
+		return map;
+	}
+	
+	/**
+	 * Checks the TOML data without building the values. The data is read like by {@link #read()}, with the same
+	 * checks, but only the keys of the tables are kept, to find the duplicates. After an error, the reading continues
+	 * at the next line, so that all the errors are found.
+	 *
+	 * @param problems the list that receives the problems, in order
+	 */
+	void validate(List<TomlValidator.Problem> problems) {
+		validating = true;
+		this.problems = problems;
+		try {
+			readData();
+		} catch (TomlException ex) {// an error that ends the data
+			addProblem(ex);
+		} finally {
+			validating = false;
+			this.problems = null;
+		}
+	}
+	
+	/**
+	 * Handles an error. When validating, reports it and goes to the beginning of the next line, else rethrows it.
+	 */
+	private void recover(TomlException ex) {
+		if (!validating)
+			throw ex;
+		addProblem(ex);
+		int nextLinebreak = data.indexOf('\n', pos);
+		if (nextLinebreak == -1) {
+			pos = data.length();
+		} else {
+			pos = nextLinebreak + 1;
+			line++;
+		}
+	}
+	
+	/**
+	 * Adds a problem at the last character read.
+	 */
+	private void addProblem(TomlException ex) {
+		int index = Math.min(pos, data.length());
+		if (index > 0 && data.charAt(index - 1) != '\n')
+			index--;
+		int column = index - data.lastIndexOf('\n', index - 1);
+		problems.add(new TomlValidator.Problem(line, column, ex.getMessage()));
+	}
+	
+	/**
+	 * Reads the TOML data, and gives the elements of an array of tables to a handler, one by one, instead of keeping
+	 * them in the resulting Map. An element is given to the handler as soon as it's complete, that is, when the
+	 * data reaches a table that isn't inside this element. Therefore, the memory used by the parsed elements doesn't
+	 * depend on their number. The text of the data is still entirely in memory, since the reader reads a String.
+	 * <p>
+	 * The reading waits for the handler, which may stop it by returning false.
+	 * </p>
+	 *
+	 * @param handler the handler of the elements. It returns true to continue, false to stop the reading.
+	 * @param arrayPath the path of the array of tables, for instance {@code ("events")} for [[events]]
+	 * @return the other data. The array of tables is empty. If the handler has stopped the reading, it contains
+	 *         only the data that comes before the last element.
+	 * @throws TomlException if a parse error occurs
+	 */
+	public Map<String, Object> readRecords(Predicate<? super Map<String, Object>> handler, String... arrayPath) {
+		if (arrayPath.length == 0)
+			throw new IllegalArgumentException("Invalid empty path");
+		recordPath = arrayPath.clone();
+		recordHandler = handler;
+		try {
+			return read();
+		} finally {
+			recordPath = null;
+			recordHandler = null;
+			records = null;
+		}
+	}
+	
+	/**
+	 * Reads the TOML data, and gives the elements of an array of tables to a consumer that runs in parallel, in the
+	 * specified pool. At most {@code maxPending} elements are given to the pool at the same time: the reading waits
+	 * when the pool is too slow. If the consumer throws an exception, the reading stops and the exception is
+	 * rethrown once the other pending elements have been consumed.
+	 *
+	 * @param consumer the consumer of the elements
+	 * @param pool the pool that runs the consumer
+	 * @param maxPending the maximum number of elements given to the pool and not consumed yet
+	 * @param arrayPath the path of the array of tables, for instance {@code ("events")} for [[events]]
+	 * @return the other data. The array of tables is empty.
+	 * @throws TomlException if a parse error occurs
+	 */
+	public Map<String, Object> readRecordsParallel(Consumer<? super Map<String, Object>> consumer, ForkJoinPool pool,
+			int maxPending, String... arrayPath) {
+		if (maxPending < 1)
+			throw new IllegalArgumentException("Invalid maxPending " + maxPending);
+		Semaphore pending = new Semaphore(maxPending);
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		Map<String, Object> map;
+		try {
+			map = readRecords(record -> {
+				pending.acquireUninterruptibly();
+				if (failure.get() != null) {
+					pending.release();
+					return false;
 				}
-				valueMap = childMap;
-			}
-			if (twoBrackets) {// element of a table array
-				String name = keyParts.get(keyParts.size() - 1);
-				Collection<Map> tableArray = (Collection) valueMap.get(name);
-				if (tableArray == null) {
-					tableArray = new ArrayList<>(2);
-					valueMap.put(name, tableArray);
+				try {
+					pool.execute(() -> {
+						try {
+							consumer.accept(record);
+						} catch (Throwable t) {
+							failure.compareAndSet(null, t);
+						} finally {
+							pending.release();
+						}
+					});
+				} catch (RuntimeException | Error ex) {// rejected: the task will never release its permit
+					pending.release();
+					throw ex;
 				}
-				tableArray.add(value);
-			} else {// just a table
-				valueMap.put(keyParts.get(keyParts.size() - 1), value);
+				return true;
+			}, arrayPath);
+		} finally {
+			pending.acquireUninterruptibly(maxPending);// waits for the pending elements
+		}
+		Throwable t = failure.get();
+		if (t instanceof RuntimeException)
+			throw (RuntimeException) t;
+		if (t instanceof Error)
+			throw (Error) t;
+		if (t != null)
+			throw new TomlException("Error in the consumer of the records", t);
+		return map;
+	}
+	
+	/**
+	 * Gives the current record, if any, to the record handler.
+	 *
+	 * @return false if the handler has stopped the reading
+	 */
+	private boolean handleRecord() {
+		if (records == null || records.isEmpty())
+			return true;
+		for (Object element : recordObjects) {
+			implicitTables.remove(element);
+			tableArrays.remove(element);
+		}
+		recordObjects.clear();
+		for (int i = recordInlineTables, hashed = hashedInlineTables.size(); i < hashed; i++) {
+			hashedInlineTables.remove(inlineTables.get(i));
+		}
+		inlineTables.subList(recordInlineTables, inlineTables.size()).clear();
+		if (inlineTables.isEmpty())
+			inlineTableKeys.clear();
+		lastTableArray = null;
+		return recordHandler.test(records.remove(0));
+	}
+	
+	/**
+	 * Checks if a table is the array of the records (when {@code inside} is false), or is inside a record.
+	 */
+	private boolean isRecordTable(List<String> keyParts, boolean inside) {
+		if (inside ? keyParts.size() <= recordPath.length : keyParts.size() != recordPath.length)
+			return false;
+		for (int i = 0; i < recordPath.length; i++) {
+			if (!recordPath[i].equals(keyParts.get(i)))
+				return false;
+		}
+		return true;
+	}
+	
+	private Map<String, Object> readData() {
+		TomlSchema.Node root = (schema == null) ? null : schema.root();
+		implicitTables = Collections.newSetFromMap(new IdentityHashMap<>());
+		tableArrays = Collections.newSetFromMap(new IdentityHashMap<>());
+		lastTableArray = null;
+		inlineTables = new ArrayList<>();
+		inlineTableKeys = new HashSet<>();
+		hashedInlineTables = Collections.newSetFromMap(new IdentityHashMap<>());
+		recordObjects = (recordHandler == null) ? null : new ArrayList<>();
+		hashes = tableHashes = hashing ? TomlHashes.table() : null;
+		long size = (bytes >= 0) ? bytes : data.length();
+		if (size > maxInputBytes)
+			throw new TomlException("Invalid data: larger than the maximum of " + maxInputBytes + " bytes");
+		tableDepth = 0;
+		Map<String, Object> map = nextTableContent(root, new HashMap<>());
+		checkUnfinishedTable();
+		
+		while (hasNext()) {
+			TomlSchema.Node tableSchema;
+			Map<String, Object> table;// the map that receives the content of the table
+			try {
+				List<String> keyParts = nextTableHeader();
+				boolean twoBrackets = headerIsArray;
+				if (keyParts.size() > maxDepth)
+					throw new TomlException("Invalid table at line " + line + ": nested deeper than the maximum depth of " + maxDepth);
+				tableDepth = keyParts.size();
+				if (recordHandler != null && !isRecordTable(keyParts, true) && !handleRecord())
+					return map;// stopped by the handler
+				tables++;
+				tableSchema = (root == null) ? null : tableSchema(root, keyParts, twoBrackets);
+				if (tableSchema == TomlSchema.Node.SKIP_ALL) {// unknown table
+					tableHashes = null;
+					table = new HashMap<>();
+				} else {
+					table = declareTable(map, keyParts, twoBrackets);
+				}
+			} catch (TomlException ex) {
+				recover(ex);
+				tableSchema = null;
+				tableHashes = null;
+				table = new HashMap<>();// an invalid table: its keys can't conflict with the others
 			}
-			
+			nextTableContent(tableSchema, table);
+			checkUnfinishedTable();
 		}
+		if (recordHandler != null)
+			handleRecord();
+		if (root != null)
+			checkTables(root, map);
+		if (hashes != null)
+			hashes.finish();
 		return map;
 	}
 	
-	private List nextArray() {
-		ArrayList<Object> list = new ArrayList<>();
-		while (true) {
-			char c = nextUseful(true);
-			if (c == ']') {
-				pos++;
-				break;
+	/**
+	 * Finds or creates the map of a [table] or of a [[table]], which may extend an implicit table but never a value
+	 * nor a table defined by an other header. Sets the hashes of the current table.
+	 *
+	 * @return the map that receives the content of the table
+	 */
+	@SuppressWarnings("unchecked")
+	private Map<String, Object> declareTable(Map<String, Object> root, List<String> keyParts, boolean twoBrackets) {
+		Map<String, Object> valueMap = root;// the map that contains the table
+		TomlHashes valueMapHashes = hashes;// its hashes
+		for (int i = 0; i < keyParts.size() - 1; i++) {
+			String part = keyParts.get(i);
+			if (valueMapHashes != null)
+				valueMapHashes = childHashes(valueMapHashes, part);
+			Object child = valueMap.get(part);
+			if (child == null) {// implicit table
+				Map<String, Object> childMap = new HashMap<>(4);
+				putTable(valueMap, part, childMap);
+				remember(implicitTables, childMap);
+				valueMap = childMap;
+			} else if (child instanceof Map && !isInlineTable(part, child)) {// table
+				valueMap = (Map<String, Object>) child;
+			} else if (isTableArray(child)) {// array of tables
+				List<Map<String, Object>> list = (List<Map<String, Object>>) child;
+				if (list.isEmpty())// only with readRecords
+					throw new TomlException("Invalid table at line " + line + ": its array element has already been handled");
+				valueMap = list.get(list.size() - 1);
+			} else {
+				throw new TomlException("Invalid table declaration at line " + line + ": the key \"" + part + "\" is a value, not a table");
 			}
-			Object value = nextValue(c);
-			if (!list.isEmpty() && !(list.get(0).getClass().isAssignableFrom(value.getClass())))
-				throw new TomlException("Invalid array at line " + line + ": all the values must have the same type");
-			list.add(value);
-			
-			char afterEntry = nextUseful(true);
-			if (afterEntry == ']') {
-				pos++;
-				break;
+		}
+		String name = keyParts.get(keyParts.size() - 1);
+		Object existing = valueMap.get(name);
+		Map<String, Object> table;
+		if (twoBrackets) {// element of a table array
+			List<Map<String, Object>> tableArray;
+			if (existing == null) {
+				tableArray = new ArrayList<>(2);
+				putTable(valueMap, name, tableArray);
+				remember(tableArrays, tableArray);
+			} else if (isTableArray(existing)) {
+				tableArray = (List<Map<String, Object>>) existing;
+			} else {
+				throw new TomlException("Invalid array of tables at line " + line + ": the key \"" + name + "\" is already defined");
 			}
-			if (afterEntry != ',') {
-				throw new TomlException("Invalid array at line " + line + ": expected a comma after each value");
+			if (tableArray.size() == maxArrayLength)
+				throw tooManyElements();
+			table = new HashMap<>();
+			tableArray.add(table);
+			if (valueMapHashes != null) {
+				TomlHashes arrayHashes = valueMapHashes.getTable(name);
+				if (arrayHashes == null || !arrayHashes.isArrayOfTables()) {
+					arrayHashes = TomlHashes.arrayOfTables();
+					valueMapHashes.put(name, arrayHashes);
+				}
+				arrayHashes.add(tableHashes = TomlHashes.table());
+			}
+			if (recordHandler != null && isRecordTable(keyParts, false)) {
+				records = tableArray;
+				recordInlineTables = inlineTables.size();
 			}
+		} else if (existing == null) {// just a table
+			table = new HashMap<>();
+			putTable(valueMap, name, table);
+			if (valueMapHashes != null)
+				valueMapHashes.put(name, tableHashes = TomlHashes.table());
+		} else if (implicitTables.remove(existing)) {// an implicit table, which is now defined
+			table = (Map<String, Object>) existing;
+			if (valueMapHashes != null)
+				tableHashes = valueMapHashes.getTable(name);
+		} else {
+			throw new TomlException("Invalid table redefinition at line " + line + ": the key \"" + name + "\" is already defined");
 		}
-		pos--;
-		list.trimToSize();
-		return list;
+		return table;
 	}
 	
-	private Map<String, Object> nextInlineTable() {
-		Map<String, Object> map = new HashMap<>();
-		while (true) {
-			char nameFirstChar = nextUsefulOrLinebreak();
+	/**
+	 * Checks if the value of a key is an inline table. Most keys have never been used by an inline table, so the
+	 * inline tables are hashed only when a header goes through a key that has.
+	 */
+	private boolean isInlineTable(String key, Object value) {
+		if (!inlineTableKeys.contains(key))
+			return false;
+		for (int i = hashedInlineTables.size(); i < inlineTables.size(); i++) {
+			hashedInlineTables.add(inlineTables.get(i));
+		}
+		return hashedInlineTables.contains(value);
+	}
+	
+	/**
+	 * Checks if an object is an array of tables of the headers. The last one found is checked first, without hashing.
+	 */
+	private boolean isTableArray(Object obj) {
+		if (obj != lastTableArray) {
+			if (tableArrays.isEmpty() || !tableArrays.contains(obj))
+				return false;
+			lastTableArray = obj;
+		}
+		return true;
+	}
+	
+	private void putTable(Map<String, Object> map, String name, Object table) {
+		map.put(name, table);
+		if (map.size() > maxKeysPerTable)
+			throw tooManyKeys();
+	}
+	
+	/**
+	 * Adds an element to a set that describes the structure of the data. The elements added inside a record are
+	 * forgotten when the record is handled.
+	 */
+	private <T> void remember(Set<T> set, T element) {
+		set.add(element);
+		if (records != null && !records.isEmpty())
+			recordObjects.add(element);
+	}
+	
+	/**
+	 * Returns the hashes of a table that contains a [table], like the map returned by readData: the table itself,
+	 * or the last element of an array of tables. Creates the hashes of an implicit table.
+	 */
+	private static TomlHashes childHashes(TomlHashes parent, String name) {
+		TomlHashes child = parent.getTable(name);
+		if (child == null) {
+			child = TomlHashes.table();
+			parent.put(name, child);
+		} else if (child.isArrayOfTables()) {
+			child = child.get(child.size() - 1);
+		}
+		return child;
+	}
+	
+	/**
+	 * Checks that the data doesn't end with the '[' of a table.
+	 */
+	void checkUnfinishedTable() {
+		if (!hasNext() && pos > 0 && data.charAt(pos - 1) == '[')
+			throw new TomlException("Invalid table declaration at line " + line + ": it never ends");
+	}
+	
+	/**
+	 * Reads the name of a [table] or of a [[table]], after its first '['. Sets {@link #headerIsArray}.
+	 *
+	 * @return the parts of the name
+	 */
+	List<String> nextTableHeader() {
+		char c = nextUseful(true);
+		boolean twoBrackets;
+		if (c == '[') {
+			twoBrackets = true;
+			c = nextUseful(false);
+		} else {
+			twoBrackets = false;
+		}
+		headerIsArray = twoBrackets;
+		pos--;
+		
+		// --- Reads the key --
+		List<String> keyParts = new ArrayList<>(4);
+		boolean insideSquareBrackets = true;
+		while (insideSquareBrackets) {
+			if (!hasNext())
+				throw new TomlException("Invalid table declaration at line " + line + ": it never ends");
+				
 			String name = null;
+			char nameFirstChar = nextUseful(false);
 			switch (nameFirstChar) {
-				case '}':
-					return map;
 				case '"': {
 					if (pos + 1 < data.length()) {
 						char c2 = data.charAt(pos);
@@ -307,8 +1085,9 @@ public final class TomlReader {
 							name = nextBasicMultilineString();
 						}
 					}
-					if (name == null)
+					if (name == null) {
 						name = nextBasicString();
+					}
 					break;
 				}
 				case '\'': {
@@ -320,100 +1099,305 @@ public final class TomlReader {
 							name = nextLiteralMultilineString();
 						}
 					}
-					if (name == null)
+					if (name == null) {
 						name = nextLiteralString();
+					}
 					break;
 				}
 				default:
 					pos--;// to include the first (already read) non-space character
-					name = nextBareKey(' ', '\t', '=');
-					if (name.isEmpty())
+					name = nextBareKey(']', '.').trim();
+					if (data.charAt(pos) == ']') {
+						if (!name.isEmpty())
+							keyParts.add(name);
+						insideSquareBrackets = false;
+					} else if (name.isEmpty()) {
 						throw new TomlException("Invalid empty key at line " + line);
+					}
+					
+					pos++;// to go after the character we stopped at in nextBareKey()
 					break;
 			}
+			if (insideSquareBrackets)
+				keyParts.add(name.trim());
+		}
+		
+		// -- Checks --
+		if (keyParts.isEmpty())
+			throw new TomlException("Invalid empty key at line " + line);
 			
-			char separator = nextUsefulOrLinebreak();// tries to find the '=' sign
-			if (separator != '=')
-				throw new TomlException("Invalid character '" + toString(separator) + "' at line " + line + ": expected '='");
-				
-			char valueFirstChar = nextUsefulOrLinebreak();
-			Object value = nextValue(valueFirstChar);
-			map.put(name, value);
-			
-			char after = nextUsefulOrLinebreak();
-			if (after == '}' || !hasNext()) {
-				return map;
-			} else if (after != ',') {
-				throw new TomlException("Invalid inline table at line " + line + ": missing comma");
+		if (twoBrackets && next() != ']') {// 2 brackets at the start but only one at the end!
+			throw new TomlException("Missing character ']' at line " + line);
+		}
+		return keyParts;
+	}
+
+	/**
+	 * Finds the schema of a [table] or of a [[table]].
+	 *
+	 * @return the schema, {@link TomlSchema.Node#SKIP_ALL} to skip the table, or null if it isn't checked
+	 */
+	private TomlSchema.Node tableSchema(TomlSchema.Node root, List<String> keyParts, boolean arrayOfTables) {
+		TomlSchema.Node node = root;
+		for (int i = 0; i < keyParts.size(); i++) {
+			TomlSchema.Field field = node.get(keyParts.get(i));
+			if (field == null) {
+				String path = String.join(".", keyParts.subList(0, i + 1));
+				if (node.unknownKeys == TomlSchema.UnknownKeys.REJECT)
+					throw new TomlException("Unknown table \"" + path + "\" at line " + line);
+				return (node.unknownKeys == TomlSchema.UnknownKeys.SKIP) ? TomlSchema.Node.SKIP_ALL : null;
 			}
+			if (field.table == null || (i == keyParts.size() - 1 && arrayOfTables != (field.type == TomlSchema.Type.TABLE_ARRAY)))
+				throw field.invalidTable(line);
+			node = field.table;
 		}
+		return node;
 	}
 	
-	private Map<String, Object> nextTableContent() {
-		Map<String, Object> map = new HashMap<>();
-		while (true) {
-			char nameFirstChar = nextUseful(true);
-			if (!hasNext() || nameFirstChar == '[') {
-				return map;
+	/**
+	 * Checks the required tables, and the required values of the tables that have been created implicitly.
+	 */
+	@SuppressWarnings("unchecked")
+	private void checkTables(TomlSchema.Node node, Map<String, Object> map) {
+		for (TomlSchema.Field field : node.tables) {
+			Object child = map.get(field.name);
+			if (child == null) {
+				if (field.required)
+					throw new TomlException("Missing required table " + field.label);
+			} else if (child instanceof Map) {
+				checkTable(field.table, (Map<String, Object>) child);
+			} else if (child instanceof List) {
+				for (Object element : (List<?>) child) {
+					checkTable(field.table, (Map<String, Object>) element);
+				}
 			}
-			String name = null;
-			switch (nameFirstChar) {
-				case '"': {
-					if (pos + 1 < data.length()) {
-						char c2 = data.charAt(pos);
-						char c3 = data.charAt(pos + 1);
-						if (c2 == '"' && c3 == '"') {
-							pos += 2;
-							name = nextBasicMultilineString();
-						}
-					}
-					if (name == null) {
-						name = nextBasicString();
-					}
-					break;
+		}
+	}
+	
+	private void checkTable(TomlSchema.Node node, Map<String, Object> map) {
+		if (implicitTables.contains(map)) {
+			for (TomlSchema.Field field : node.requiredValues) {
+				if (!map.containsKey(field.name))
+					throw new TomlException("Missing required key " + field.label);
+			}
+		}
+		checkTables(node, map);
+	}
+	
+	/**
+	 * Reads the entries of a table, until the next table.
+	 *
+	 * @param map the map that receives the entries
+	 * @return the map
+	 */
+	private Map<String, Object> nextTableContent(TomlSchema.Node schema, Map<String, Object> map) {
+		int startLine = line;
+		boolean complete = false;
+		while (!complete) {
+			try {
+				nextEntries(schema, map);
+				complete = true;
+			} catch (TomlException ex) {
+				recover(ex);// the next entries are read after the error
+			}
+		}
+		if (schema != null)
+			schema.checkRequired(schema.requiredValues, map, startLine);
+		return map;
+	}
+	
+	private void nextEntries(TomlSchema.Node schema, Map<String, Object> map) {
+		String name;
+		while ((name = nextEntryKey()) != null) {
+			if (map.containsKey(name))
+				throw duplicateKey(name);
+			char valueFirstChar = nextEntryValueStart();
+			int valueStart = pos - 1;
+			TomlSchema.Field field = (schema == null) ? null : schema.get(name);
+			boolean skip = field == null && schema != null && schema.skipUnknown(name, line);
+			Object value = skip ? skipValue(valueFirstChar) : nextValue(valueFirstChar, field);
+			if (tableHashes != null && !skip)
+				tableHashes.putValue(name, data, valueStart, pos);
+			nextEntryEnd();
+			if (!skip) {
+				if (valueFirstChar == '{' && !validating) {// an inline table, which a [table] can't extend
+					inlineTables.add(value);
+					inlineTableKeys.add(name);
 				}
-				case '\'': {
-					if (pos + 1 < data.length()) {
-						char c2 = data.charAt(pos);
-						char c3 = data.charAt(pos + 1);
-						if (c2 == '\'' && c3 == '\'') {
-							pos += 2;
-							name = nextLiteralMultilineString();
-						}
-					}
-					if (name == null) {
-						name = nextLiteralString();
+				map.put(name, validating ? VALUE : value);
+				if (map.size() > maxKeysPerTable)
+					throw tooManyKeys();
+			}
+		}
+	}
+	
+	/**
+	 * Reads the key of the next entry of the current table, and the '=' after it.
+	 *
+	 * @return the key, or null if the table ends: at the end of the data, or after the '[' of the next table
+	 */
+	String nextEntryKey() {
+		char nameFirstChar = nextUseful(true);
+		if (!hasNext() || nameFirstChar == '[')
+			return null;
+		String name = null;
+		switch (nameFirstChar) {
+			case '"': {
+				if (pos + 1 < data.length()) {
+					char c2 = data.charAt(pos);
+					char c3 = data.charAt(pos + 1);
+					if (c2 == '"' && c3 == '"') {
+						pos += 2;
+						name = nextBasicMultilineString();
 					}
-					break;
 				}
-				default:
-					pos--;// to include the first (already read) non-space character
-					name = nextBareKey(' ', '\t', '=');
-					if (name.isEmpty())
-						throw new TomlException("Invalid empty key at line " + line);
-					break;
+				if (name == null) {
+					name = nextBasicString();
+				}
+				break;
 			}
-			char separator = nextUsefulOrLinebreak();// tries to find the '=' sign
-			if (separator != '=')// an other character
-				throw new TomlException("Invalid character '" + toString(separator) + "' at line " + line + ": expected '='");
-				
-			char valueFirstChar = nextUsefulOrLinebreak();
-			if (valueFirstChar == '\n') {
-				throw new TomlException("Invalid newline before the value at line " + line);
+			case '\'': {
+				if (pos + 1 < data.length()) {
+					char c2 = data.charAt(pos);
+					char c3 = data.charAt(pos + 1);
+					if (c2 == '\'' && c3 == '\'') {
+						pos += 2;
+						name = nextLiteralMultilineString();
+					}
+				}
+				if (name == null) {
+					name = nextLiteralString();
+				}
+				break;
 			}
-			Object value = nextValue(valueFirstChar);
-			
-			char afterEntry = nextUsefulOrLinebreak();
-			if (afterEntry == '#') {
-				pos--;// to make the next nextUseful() call read the # character
-			} else if (afterEntry != '\n') {
-				throw new TomlException("Invalid character '" + toString(afterEntry) + "' after the value at line " + line);
+			default:
+				pos--;// to include the first (already read) non-space character
+				name = nextBareKey(' ', '\t', '=');
+				if (name.isEmpty())
+					throw new TomlException("Invalid empty key at line " + line);
+				break;
+		}
+		keys++;
+		char separator = nextUsefulOrLinebreak();// tries to find the '=' sign
+		if (separator != '=')// an other character
+			throw new TomlException("Invalid character '" + toString(separator) + "' at line " + line + ": expected '='");
+		return name;
+	}
+	
+	/**
+	 * Reads the value of the current entry, after its key.
+	 */
+	Object nextEntryValue() {
+		Object value = nextValue(nextEntryValueStart(), null);
+		nextEntryEnd();
+		return value;
+	}
+	
+	/**
+	 * Skips the value of the current entry, after its key. Sets {@link #valueStart} and {@link #valueEnd}.
+	 */
+	void skipEntryValue() {
+		char valueFirstChar = nextEntryValueStart();
+		valueStart = pos - 1;
+		skipValue(valueFirstChar);
+		valueEnd = pos;
+		nextEntryEnd();
+	}
+	
+	private char nextEntryValueStart() {
+		char valueFirstChar = nextUsefulOrLinebreak();
+		if (valueFirstChar == '\n') {
+			throw new TomlException("Invalid newline before the value at line " + line);
+		}
+		return valueFirstChar;
+	}
+	
+	private void nextEntryEnd() {
+		char afterEntry = nextUsefulOrLinebreak();
+		if (afterEntry == '#') {
+			pos--;// to make the next nextUseful() call read the # character
+		} else if (afterEntry != '\n') {
+			throw new TomlException("Invalid character '" + toString(afterEntry) + "' after the value at line " + line);
+		}
+	}
+	
+	/**
+	 * Skips a value that isn't an array nor an inline table, without decoding it. The value is checked just enough
+	 * to find where it ends.
+	 */
+	private void skipSimpleValue(char firstChar) {
+		switch (firstChar) {
+			case '"':
+				if (pos + 1 < data.length() && data.charAt(pos) == '"' && data.charAt(pos + 1) == '"') {
+					pos += 2;
+					skipBasicMultilineString();
+				} else {
+					skipBasicString();
+				}
+				return;
+			case '\'':
+				if (pos + 1 < data.length() && data.charAt(pos) == '\'' && data.charAt(pos + 1) == '\'') {
+					int end = data.indexOf("'''", pos + 2);
+					if (end == -1)
+						throw new TomlException("Invalid multiline literal String at line " + line + ": it never ends");
+					for (int i = pos; i < end; i++) {
+						if (data.charAt(i) == '\n')
+							line++;
+					}
+					pos = end + 3;
+				} else {
+					int end = data.indexOf('\'', pos);
+					if (end == -1)
+						throw new TomlException("Invalid literal String at line " + line + ": it never ends");
+					pos = end + 1;
+				}
+				return;
+			case 't':
+			case 'f':
+				nextSimpleValue(firstChar);
+				return;
+			default:
+				if (firstChar != '+' && firstChar != '-' && (firstChar < '0' || firstChar > '9'))
+					throw new TomlException("Invalid character '" + toString(firstChar) + "' at line " + line);
+				while (hasNext()) {
+					char c = data.charAt(pos);
+					if (c == ',' || c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == ']' || c == '}')
+						break;
+					pos++;
+				}
+				return;
+		}
+	}
+	
+	private void skipBasicString() {
+		while (hasNext()) {
+			pos = scanner.basicStringEnd(pos);
+			if (!hasNext())
+				break;
+			char c = next();
+			if (c == '\n' || c == '\r')
+				throw new TomlException("Invalid basic String at line " + line + ": newlines not allowed");
+			if (c == '"')
+				return;
+			pos++;// skips the escaped character
+		}
+		throw new TomlException("Invalid basic String at line " + line + ": it nerver ends");
+	}
+	
+	private void skipBasicMultilineString() {
+		while (hasNext()) {
+			char c = next();
+			if (c == '\\') {
+				if (hasNext() && next() == '\n')
+					line++;
+			} else if (c == '"' && pos + 1 < data.length() && data.charAt(pos) == '"' && data.charAt(pos + 1) == '"') {
+				pos += 2;
+				return;
+			} else if (c == '\n') {
+				line++;
 			}
-			if (map.containsKey(name))
-				throw new TomlException("Duplicate key \"" + name + "\"");
-				
-			map.put(name, value);
 		}
+		throw new TomlException("Invalid multiline basic String at line " + line + ": it never ends");
 	}
 	
 	private Object nextNumberOrDate(char first) {
@@ -437,7 +1421,7 @@ public final class TomlReader {
 					maybeInteger = false;
 					break;
 				case '-':
-					if (c == '-' && pos != 0 && data.charAt(pos - 1) != 'e' && data.charAt(pos - 1) != 'E')
+					if (pos > 1 && data.charAt(pos - 2) != 'e' && data.charAt(pos - 2) != 'E')// pos - 1 is the '-'
 						maybeInteger = maybeDouble = false;
 					break;
 				case ',':
@@ -458,13 +1442,18 @@ public final class TomlReader {
 		String valueStr = sb.toString();
 		try {
 			if (maybeInteger) {
-				if (valueStr.length() < 10)
-					return Integer.parseInt(valueStr);
-				return Long.parseLong(valueStr);
+				if (valueStr.length() < 10) {
+					int value = Integer.parseInt(valueStr);
+					return (deduplicator == null) ? Integer.valueOf(value) : deduplicator.integer(value);
+				}
+				long value = Long.parseLong(valueStr);
+				return (deduplicator == null) ? Long.valueOf(value) : deduplicator.longInteger(value);
 			}
 			
-			if (maybeDouble)
-				return Double.parseDouble(valueStr);
+			if (maybeDouble) {
+				double value = Double.parseDouble(valueStr);
+				return (deduplicator == null) ? Double.valueOf(value) : deduplicator.decimal(value);
+			}
 				
 			if (maybeDate)
 				return Toml.DATE_FORMATTER.parseBest(valueStr, ZonedDateTime::from, LocalDateTime::from, LocalDate::from);
@@ -477,22 +1466,22 @@ public final class TomlReader {
 	}
 	
 	private String nextBareKey(char... allowedEnds) {
-		String keyName;
-		for (int i = pos; i < data.length(); i++) {
+		// The allowed ends are never allowed inside a bare key, so the key ends at the first forbidden character
+		int i = scanner.bareKeyEnd(pos, strictAsciiBareKeys);
+		if (i - pos > maxStringLength)
+			throw new TomlException("Invalid key at line " + line + ": longer than the maximum length of " + maxStringLength);
+		if (i < data.length()) {
 			char c = data.charAt(i);
 			for (char allowedEnd : allowedEnds) {
 				if (c == allowedEnd) {// checks if this character allowed to end this bare key
-					keyName = data.substring(pos, i);
+					String keyName = substring(data, pos, i);
 					pos = i;
 					return keyName;
 				}
 			}
-			if (strictAsciiBareKeys) {
-				if (!((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_' || c == '-'))
-					throw new TomlException("Forbidden character '" + toString(c) + "' in strict bare-key at line " + line);
-			} else if (c <= ' ' || c == '#' || c == '=' || c == '.' || c == '[' || c == ']') {// lenient bare key
-				throw new TomlException("Forbidden character '" + toString(c) + "' in lenient bare-key at line " + line);
-			} // else continue reading
+			if (strictAsciiBareKeys)
+				throw new TomlException("Forbidden character '" + toString(c) + "' in strict bare-key at line " + line);
+			throw new TomlException("Forbidden character '" + toString(c) + "' in lenient bare-key at line " + line);
 		}
 		throw new TomlException(
 				"Invalid key/value pair at line " + line + " end of data reached before the value attached to the key was found");
@@ -502,11 +1491,14 @@ public final class TomlReader {
 		int index = data.indexOf('\'', pos);
 		if (index == -1)
 			throw new TomlException("Invalid literal String at line " + line + ": it never ends");
+		if (index - pos > maxStringLength)
+			throw tooLongString();
 			
-		String str = data.substring(pos, index);
-		if (str.indexOf('\n') != -1)
-			throw new TomlException("Invalid literal String at line " + line + ": newlines are not allowed here");
-			
+		for (int i = pos; i < index; i++) {
+			if (data.charAt(i) == '\n')
+				throw new TomlException("Invalid literal String at line " + line + ": newlines are not allowed here");
+		}
+		String str = substring(data, pos, index);
 		pos = index + 1;
 		return str;
 	}
@@ -515,16 +1507,17 @@ public final class TomlReader {
 		int index = data.indexOf("'''", pos);
 		if (index == -1)
 			throw new TomlException("Invalid multiline literal String at line " + line + ": it never ends");
-		String str;
+		int start = pos;
 		if (data.charAt(pos) == '\r' && data.charAt(pos + 1) == '\n') {// "\r\n" at the beginning of the string
-			str = data.substring(pos + 2, index);
+			start += 2;
 			line++;
 		} else if (data.charAt(pos) == '\n') {// '\n' at the beginning of the string
-			str = data.substring(pos + 1, index);
+			start++;
 			line++;
-		} else {
-			str = data.substring(pos, index);
 		}
+		if (index - start > maxStringLength)
+			throw tooLongString();
+		String str = data.substring(start, index);
 		for (int i = 0; i < str.length(); i++) {// count lines
 			char c = str.charAt(i);
 			if (c == '\n')
@@ -538,16 +1531,27 @@ public final class TomlReader {
 		StringBuilder sb = new StringBuilder();
 		boolean escape = false;
 		while (hasNext()) {
+			if (!escape) {// copies the ordinary characters at once
+				int end = scanner.basicStringEnd(pos);
+				if (sb.length() + (end - pos) > maxStringLength)
+					throw tooLongString();
+				sb.append(data, pos, end);
+				pos = end;
+				if (!hasNext())
+					break;
+			}
 			char c = next();
-			if (c == '\n' || c == '\r')
+			if (c == '\n' || c == '\r') {
+				pos--;// doesn't read the newline, to keep the line count right
 				throw new TomlException("Invalid basic String at line " + line + ": newlines not allowed");
+			}
 			if (escape) {
 				sb.append(unescape(c));
 				escape = false;
 			} else if (c == '\\') {
 				escape = true;
 			} else if (c == '"') {
-				return sb.toString();
+				return substring(sb, 0, sb.length());
 			} else {
 				sb.append(c);
 			}
@@ -559,6 +1563,8 @@ public final class TomlReader {
 		StringBuilder sb = new StringBuilder();
 		boolean first = true, escape = false;
 		while (hasNext()) {
+			if (sb.length() > maxStringLength)
+				throw tooLongString();
 			char c = next();
 			if (first && (c == '\r' || c == '\n')) {
 				if (c == '\r' && hasNext() && data.charAt(pos) == '\n')// "\r\n"
@@ -586,6 +1592,8 @@ public final class TomlReader {
 				if (pos + 1 >= data.length())
 					break;
 				if (data.charAt(pos) == '"' && data.charAt(pos + 1) == '"') {
+					if (sb.length() > maxStringLength)
+						throw tooLongString();
 					pos += 2;
 					return sb.toString();
 				}
@@ -644,6 +1652,15 @@ public final class TomlReader {
 		}
 	}
 	
+	/**
+	 * Returns a String that contains the specified range of characters, from the deduplicator if there is one.
+	 */
+	private String substring(CharSequence chars, int start, int end) {
+		if (deduplicator == null)
+			return chars.subSequence(start, end).toString();
+		return deduplicator.string(chars, start, end);
+	}
+	
 	/**
 	 * Converts a char to a String. The char is escaped if needed.
 	 */
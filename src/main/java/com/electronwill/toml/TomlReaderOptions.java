@@ -0,0 +1,164 @@
+package com.electronwill.toml;
+
+/**
+ * The limits enforced by a {@link TomlReader}, to read untrusted data with a predictable amount of memory and time.
+ * When a limit is exceeded, the reader stops immediately and throws a TomlException that tells which limit has been
+ * exceeded, and at which line.
+ * <p>
+ * By default, there is no limit except a maximum depth of 1000 nested tables, arrays and inline tables. The options
+ * are copied by the reader when it's created, so modifying them doesn't affect the readers already created. Example:
+ *
+ * <pre>
+ * TomlReaderOptions limits = new TomlReaderOptions().setMaxInputBytes(1024 * 1024).setMaxDepth(32)
+ * 		.setMaxStringLength(64 * 1024).setMaxArrayLength(10_000).setMaxKeysPerTable(1000).setMaxValues(100_000);
+ * Map&lt;String, Object&gt; data = Toml.read(upload, false, limits);
+ * </pre>
+ * </p>
+ */
+public final class TomlReaderOptions {
+
+	/**
+	 * The options used when none are specified.
+	 */
+	static final TomlReaderOptions DEFAULT = new TomlReaderOptions();
+
+	private long maxInputBytes = Long.MAX_VALUE;
+	private int maxDepth = 1000;
+	private int maxStringLength = Integer.MAX_VALUE;
+	private int maxArrayLength = Integer.MAX_VALUE;
+	private int maxKeysPerTable = Integer.MAX_VALUE;
+	private int maxValues = Integer.MAX_VALUE;
+
+	/**
+	 * Sets the maximum size of the input. When the data is read from a File or an InputStream, it's the number of
+	 * bytes, checked before the data is decoded. When the data is a String, it's the number of chars.
+	 *
+	 * @param maxInputBytes the maximum size
+	 * @return this object
+	 */
+	public TomlReaderOptions setMaxInputBytes(long maxInputBytes) {
+		if (maxInputBytes < 0)
+			throw new IllegalArgumentException("Invalid maximum input size " + maxInputBytes);
+		this.maxInputBytes = maxInputBytes;
+		return this;
+	}
+
+	/**
+	 * Sets the maximum depth of the tables, arrays and inline tables: 1 allows arrays and inline tables at the top
+	 * level, but not inside other arrays or tables. The parts of a table declaration count too: [a.b.c] is at depth
+	 * 3, and an inline table in it at depth 4. The default is 1000. Since the nested values are read without recursive
+	 * calls, any depth can be allowed without a StackOverflowError.
+	 *
+	 * @param maxDepth the maximum depth
+	 * @return this object
+	 */
+	public TomlReaderOptions setMaxDepth(int maxDepth) {
+		if (maxDepth < 1)
+			throw new IllegalArgumentException("Invalid maximum depth " + maxDepth);
+		this.maxDepth = maxDepth;
+		return this;
+	}
+
+	/**
+	 * Sets the maximum length of the strings and of the keys, after the escape sequences are decoded.
+	 *
+	 * @param maxStringLength the maximum length, in chars
+	 * @return this object
+	 */
+	public TomlReaderOptions setMaxStringLength(int maxStringLength) {
+		if (maxStringLength < 0)
+			throw new IllegalArgumentException("Invalid maximum string length " + maxStringLength);
+		this.maxStringLength = maxStringLength;
+		return this;
+	}
+
+	/**
+	 * Sets the maximum number of elements of an array, including the arrays of tables.
+	 *
+	 * @param maxArrayLength the maximum number of elements
+	 * @return this object
+	 */
+	public TomlReaderOptions setMaxArrayLength(int maxArrayLength) {
+		if (maxArrayLength < 0)
+			throw new IllegalArgumentException("Invalid maximum array length " + maxArrayLength);
+		this.maxArrayLength = maxArrayLength;
+		return this;
+	}
+
+	/**
+	 * Sets the maximum number of keys of a table, including the inline tables and the keys of the sub-tables.
+	 *
+	 * @param maxKeysPerTable the maximum number of keys
+	 * @return this object
+	 */
+	public TomlReaderOptions setMaxKeysPerTable(int maxKeysPerTable) {
+		if (maxKeysPerTable < 0)
+			throw new IllegalArgumentException("Invalid maximum number of keys " + maxKeysPerTable);
+		this.maxKeysPerTable = maxKeysPerTable;
+		return this;
+	}
+
+	/**
+	 * Sets the maximum number of values of the whole data. The tables defined by a [header] aren't counted, but
+	 * the arrays and the inline tables are. The values skipped because of a {@link TomlSchema} aren't counted.
+	 *
+	 * @param maxValues the maximum number of values
+	 * @return this object
+	 */
+	public TomlReaderOptions setMaxValues(int maxValues) {
+		if (maxValues < 0)
+			throw new IllegalArgumentException("Invalid maximum number of values " + maxValues);
+		this.maxValues = maxValues;
+		return this;
+	}
+
+	/**
+	 * Returns the maximum size of the input.
+	 */
+	public long getMaxInputBytes() {
+		return maxInputBytes;
+	}
+
+	/**
+	 * Returns the maximum depth of the tables, arrays and inline tables.
+	 */
+	public int getMaxDepth() {
+		return maxDepth;
+	}
+
+	/**
+	 * Returns the maximum length of the strings and of the keys.
+	 */
+	public int getMaxStringLength() {
+		return maxStringLength;
+	}
+
+	/**
+	 * Returns the maximum number of elements of an array.
+	 */
+	public int getMaxArrayLength() {
+		return maxArrayLength;
+	}
+
+	/**
+	 * Returns the maximum number of keys of a table.
+	 */
+	public int getMaxKeysPerTable() {
+		return maxKeysPerTable;
+	}
+
+	/**
+	 * Returns the maximum number of values of the whole data.
+	 */
+	public int getMaxValues() {
+		return maxValues;
+	}
+
+	@Override
+	public String toString() {
+		return "TomlReaderOptions[maxInputBytes=" + maxInputBytes + ", maxDepth=" + maxDepth + ", maxStringLength="
+				+ maxStringLength + ", maxArrayLength=" + maxArrayLength + ", maxKeysPerTable=" + maxKeysPerTable
+				+ ", maxValues=" + maxValues + "]";
+	}
+
+}
@@ -0,0 +1,439 @@
+package com.electronwill.toml;
+
+import java.time.temporal.TemporalAccessor;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Describes the expected content of some TOML data: the keys, the types of their values, the required keys, the
+ * ranges of the numbers and the allowed strings. The schema is enforced by the {@link TomlReader} while it parses
+ * the data, so there is no need for a second pass over the resulting Map:
+ * <ul>
+ * <li>A value of the wrong type is rejected at its first character, before it is decoded.</li>
+ * <li>An unknown key is rejected, or its value is skipped without being decoded, or it is kept, according to the
+ * {@link UnknownKeys} policy of the schema. An unknown [table] is treated in the same way.</li>
+ * <li>The required keys are checked at the end of their table, and the required tables at the end of the data.</li>
+ * </ul>
+ * The errors are {@link TomlException}s with the line where they occur. Example:
+ *
+ * <pre>
+ * TomlSchema schema = new TomlSchema(TomlSchema.UnknownKeys.REJECT);
+ * schema.define("title", TomlSchema.Type.STRING, true);
+ * schema.defineRange("server.port", 1, 65535, true);
+ * schema.defineEnum("log.level", false, "debug", "info", "warn", "error");
+ * schema.define("hosts", TomlSchema.Type.TABLE_ARRAY, false);
+ * schema.define("hosts.name", TomlSchema.Type.STRING, true);
+ * Map&lt;String, Object&gt; config = Toml.read(file, false, schema);
+ * </pre>
+ * <p>
+ * The paths are made of keys separated by dots. The tables that contain the defined keys are defined implicitly,
+ * unless they are defined explicitly: an implicit table is required if it contains a required key, like "server"
+ * above, and optional otherwise. To make "server.port" required only when the server table is present, define the
+ * table explicitly with <code>schema.define("server", TomlSchema.Type.TABLE, false)</code>. The keys of the elements of an array of tables are
+ * defined below the path of the array. The definitions are compiled into lookup tables the first time the schema
+ * is used. A TomlSchema may be used by several readers at the same time.
+ * </p>
+ */
+public final class TomlSchema {
+
+	/**
+	 * The types of values.
+	 */
+	public enum Type {
+		/** A String, of any kind: basic, literal or multiline */
+		STRING("a string"),
+		/** An integer, read as an Integer or a Long */
+		INTEGER("an integer"),
+		/** A decimal number, read as a Double */
+		DECIMAL("a decimal number"),
+		/** true or false */
+		BOOLEAN("a boolean"),
+		/** A datetime, read as a ZonedDateTime, a LocalDateTime or a LocalDate */
+		DATETIME("a datetime"),
+		/** An array of values */
+		ARRAY("an array"),
+		/** A [table] or an inline table */
+		TABLE("a table"),
+		/** An array of tables, made of [[tables]] or of inline tables */
+		TABLE_ARRAY("an array of tables");
+
+		private final String description;
+
+		Type(String description) {
+			this.description = description;
+		}
+	}
+
+	/**
+	 * What to do with the keys and the tables that aren't defined in the schema.
+	 */
+	public enum UnknownKeys {
+		/** Throws a TomlException */
+		REJECT,
+		/** Skips the value, or the whole table, without decoding it. It doesn't appear in the resulting Map. */
+		SKIP,
+		/** Reads the value, or the whole table, without checking it. */
+		KEEP
+	}
+
+	private final UnknownKeys unknownKeys;
+	private final Definition root = new Definition("", "", Type.TABLE, false);
+	private Node compiled;
+
+	/**
+	 * Creates a new TomlSchema that rejects the unknown keys.
+	 */
+	public TomlSchema() {
+		this(UnknownKeys.REJECT);
+	}
+
+	/**
+	 * Creates a new TomlSchema.
+	 *
+	 * @param unknownKeys what to do with the keys that aren't defined
+	 */
+	public TomlSchema(UnknownKeys unknownKeys) {
+		this.unknownKeys = unknownKeys;
+	}
+
+	/**
+	 * Returns what is done with the keys that aren't defined.
+	 *
+	 * @return the policy regarding the unknown keys
+	 */
+	public UnknownKeys getUnknownKeys() {
+		return unknownKeys;
+	}
+
+	/**
+	 * Defines a key.
+	 *
+	 * @param path the path of the key, for instance "server.port"
+	 * @param type the type of its value
+	 * @param required true if the key must be present. The implicit tables that contain it become required too.
+	 * @return this schema
+	 * @throws IllegalArgumentException if the key is already defined, or if its parent isn't a table
+	 */
+	public synchronized TomlSchema define(String path, Type type, boolean required) {
+		add(path, type, required);
+		return this;
+	}
+
+	/**
+	 * Defines a key whose value is an integer in the specified range.
+	 *
+	 * @param path the path of the key
+	 * @param min the minimum value, inclusive
+	 * @param max the maximum value, inclusive
+	 * @param required true if the key must be present. The implicit tables that contain it become required too.
+	 * @return this schema
+	 * @throws IllegalArgumentException if the key is already defined, or if its parent isn't a table
+	 */
+	public synchronized TomlSchema defineRange(String path, long min, long max, boolean required) {
+		if (min > max)
+			throw new IllegalArgumentException("Invalid range: " + min + " > " + max);
+		Definition definition = add(path, Type.INTEGER, required);
+		definition.minLong = min;
+		definition.maxLong = max;
+		return this;
+	}
+
+	/**
+	 * Defines a key whose value is a decimal number in the specified range.
+	 *
+	 * @param path the path of the key
+	 * @param min the minimum value, inclusive
+	 * @param max the maximum value, inclusive
+	 * @param required true if the key must be present. The implicit tables that contain it become required too.
+	 * @return this schema
+	 * @throws IllegalArgumentException if the key is already defined, or if its parent isn't a table
+	 */
+	public synchronized TomlSchema defineRange(String path, double min, double max, boolean required) {
+		if (!(min <= max))
+			throw new IllegalArgumentException("Invalid range: " + min + " > " + max);
+		Definition definition = add(path, Type.DECIMAL, required);
+		definition.minDouble = min;
+		definition.maxDouble = max;
+		return this;
+	}
+
+	/**
+	 * Defines a key whose value is one of the specified strings.
+	 *
+	 * @param path the path of the key
+	 * @param required true if the key must be present. The implicit tables that contain it become required too.
+	 * @param allowedValues the allowed values
+	 * @return this schema
+	 * @throws IllegalArgumentException if the key is already defined, or if its parent isn't a table
+	 */
+	public synchronized TomlSchema defineEnum(String path, boolean required, String... allowedValues) {
+		Definition definition = add(path, Type.STRING, required);
+		definition.allowedValues = allowedValues.clone();
+		return this;
+	}
+
+	/**
+	 * Defines a key whose value is an array of values of the specified type.
+	 *
+	 * @param path the path of the key
+	 * @param elementType the type of the elements
+	 * @param required true if the key must be present. The implicit tables that contain it become required too.
+	 * @return this schema
+	 * @throws IllegalArgumentException if the key is already defined, or if its parent isn't a table
+	 */
+	public synchronized TomlSchema defineArray(String path, Type elementType, boolean required) {
+		if (elementType == Type.TABLE_ARRAY)
+			throw new IllegalArgumentException("Invalid element type: use the type TABLE_ARRAY for arrays of tables");
+		Definition definition = add(path, Type.ARRAY, required);
+		definition.elementType = elementType;
+		return this;
+	}
+
+	private Definition add(String path, Type type, boolean required) {
+		String[] parts = path.split("\\.", -1);
+		Definition parent = root;
+		for (int i = 0; i < parts.length - 1; i++) {
+			Definition child = parent.children.get(parts[i]);
+			if (child == null) {
+				child = new Definition(parts[i], parent.child(parts[i]), Type.TABLE, false);
+				child.implicit = true;
+				parent.children.put(parts[i], child);
+			} else if (child.type != Type.TABLE && child.type != Type.TABLE_ARRAY) {
+				throw new IllegalArgumentException("Invalid path \"" + path + "\": \"" + child.path + "\" isn't a table");
+			}
+			if (required && child.implicit)
+				child.required = true;
+			parent = child;
+		}
+		String name = parts[parts.length - 1];
+		Definition definition = parent.children.get(name);
+		if (definition != null) {
+			if (!definition.implicit || (type != Type.TABLE && type != Type.TABLE_ARRAY))
+				throw new IllegalArgumentException("The key \"" + path + "\" is already defined");
+			definition.implicit = false;
+			definition.type = type;
+			definition.required = required;
+		} else {
+			definition = new Definition(name, parent.child(name), type, required);
+			parent.children.put(name, definition);
+		}
+		compiled = null;
+		return definition;
+	}
+
+	/**
+	 * Returns the compiled schema of the root table.
+	 */
+	synchronized Node root() {
+		if (compiled == null)
+			compiled = root.table();
+		return compiled;
+	}
+
+	/**
+	 * A definition, before its compilation.
+	 */
+	private final class Definition {
+		final String name, path;
+		final Map<String, Definition> children = new LinkedHashMap<>();
+		Type type, elementType;
+		boolean required, implicit;
+		long minLong = Long.MIN_VALUE, maxLong = Long.MAX_VALUE;
+		double minDouble = Double.NEGATIVE_INFINITY, maxDouble = Double.POSITIVE_INFINITY;
+		String[] allowedValues;
+
+		Definition(String name, String path, Type type, boolean required) {
+			this.name = name;
+			this.path = path;
+			this.type = type;
+			this.required = required;
+		}
+
+		String child(String name) {
+			return path.isEmpty() ? name : path + '.' + name;
+		}
+
+		/**
+		 * Compiles the definitions of the children, or returns null if this isn't a table.
+		 */
+		Node table() {
+			if (type != Type.TABLE && type != Type.TABLE_ARRAY)
+				return null;
+			Map<String, Field> fields = new HashMap<>();
+			for (Definition child : children.values()) {
+				fields.put(child.name, child.compile());
+			}
+			return new Node(unknownKeys, fields);
+		}
+
+		Field compile() {
+			Node table = table();
+			Field element = null;
+			if (type == Type.TABLE_ARRAY) {
+				element = new Field(name, "each element of \"" + path + "\"", Type.TABLE, false, table, null);
+			} else if (type == Type.ARRAY && elementType != null) {
+				element = new Field(name, "each element of \"" + path + "\"", elementType, false, null, null);
+			}
+			Field field = new Field(name, '"' + path + '"', type, required, table, element);
+			field.minLong = minLong;
+			field.maxLong = maxLong;
+			field.minDouble = minDouble;
+			field.maxDouble = maxDouble;
+			if (allowedValues != null)
+				field.allowedValues = new LinkedHashSet<>(Arrays.asList(allowedValues));
+			return field;
+		}
+	}
+
+	/**
+	 * The compiled schema of a table.
+	 */
+	static final class Node {
+
+		/**
+		 * A node without fields, that skips all the values.
+		 */
+		static final Node SKIP_ALL = new Node(UnknownKeys.SKIP, Collections.emptyMap());
+
+		final UnknownKeys unknownKeys;
+		private final Map<String, Field> fields;
+		final Field[] required;// the required fields
+		final Field[] requiredValues;// the required fields that aren't tables
+		final Field[] tables;// the fields that are tables or arrays of tables
+
+		Node(UnknownKeys unknownKeys, Map<String, Field> fields) {
+			this.unknownKeys = unknownKeys;
+			this.fields = fields;
+			this.required = fields.values().stream().filter(f -> f.required).toArray(Field[]::new);
+			this.requiredValues = fields.values().stream().filter(f -> f.required && f.table == null).toArray(Field[]::new);
+			this.tables = fields.values().stream().filter(f -> f.table != null).toArray(Field[]::new);
+		}
+
+		Field get(String name) {
+			return fields.get(name);
+		}
+
+		/**
+		 * Checks that a table contains the specified required fields.
+		 *
+		 * @param line the line where the table begins
+		 */
+		void checkRequired(Field[] requiredFields, Map<String, Object> map, int line) {
+			for (Field field : requiredFields) {
+				if (!map.containsKey(field.name))
+					throw new TomlException("Missing required key " + field.label + " in the table at line " + line);
+			}
+		}
+
+		/**
+		 * Handles an unknown key: throws an exception if they're rejected.
+		 *
+		 * @return true if the value of the key must be skipped, false if it must be kept
+		 */
+		boolean skipUnknown(String name, int line) {
+			if (unknownKeys == UnknownKeys.REJECT)
+				throw new TomlException("Unknown key \"" + name + "\" at line " + line);
+			return unknownKeys == UnknownKeys.SKIP;
+		}
+	}
+
+	/**
+	 * The compiled definition of a key.
+	 */
+	static final class Field {
+		final String name, label;
+		final Type type;
+		final boolean required;
+		final Node table;// the schema of the table, or of the elements of the array of tables, or null if unchecked
+		final Field element;// the definition of the elements of an array, or null
+		long minLong = Long.MIN_VALUE, maxLong = Long.MAX_VALUE;
+		double minDouble = Double.NEGATIVE_INFINITY, maxDouble = Double.POSITIVE_INFINITY;
+		Set<String> allowedValues;// null if any String is allowed
+
+		Field(String name, String label, Type type, boolean required, Node table, Field element) {
+			this.name = name;
+			this.label = label;
+			this.type = type;
+			this.required = required;
+			this.table = table;
+			this.element = element;
+		}
+
+		/**
+		 * Checks that a value of the expected type may begin with the specified character.
+		 */
+		boolean accepts(char firstChar) {
+			switch (type) {
+				case STRING:
+					return firstChar == '"' || firstChar == '\'';
+				case BOOLEAN:
+					return firstChar == 't' || firstChar == 'f';
+				case INTEGER:
+				case DECIMAL:
+				case DATETIME:
+					return firstChar == '+' || firstChar == '-' || (firstChar >= '0' && firstChar <= '9');
+				case TABLE:
+					return firstChar == '{';
+				default:// ARRAY and TABLE_ARRAY
+					return firstChar == '[';
+			}
+		}
+
+		/**
+		 * Creates the exception thrown when the value hasn't the expected type.
+		 */
+		TomlException invalidType(int line) {
+			return new TomlException("Invalid value at line " + line + ": " + label + " must be " + type.description);
+		}
+
+		/**
+		 * Creates the exception thrown when a [table] or a [[table]] doesn't match this definition.
+		 */
+		TomlException invalidTable(int line) {
+			return new TomlException("Invalid table at line " + line + ": " + label + " must be " + type.description);
+		}
+
+		/**
+		 * Checks a value that has been read.
+		 *
+		 * @param line the line of the value, for the error messages
+		 */
+		void check(Object value, int line) {
+			switch (type) {
+				case INTEGER:
+					if (!(value instanceof Integer) && !(value instanceof Long))
+						throw invalidType(line);
+					long l = ((Number) value).longValue();
+					if (l < minLong || l > maxLong)
+						throw new TomlException("Invalid value at line " + line + ": " + label + " must be between " + minLong
+								+ " and " + maxLong);
+					break;
+				case DECIMAL:
+					if (!(value instanceof Double))
+						throw invalidType(line);
+					double d = (Double) value;
+					if (!(d >= minDouble && d <= maxDouble))
+						throw new TomlException("Invalid value at line " + line + ": " + label + " must be between " + minDouble
+								+ " and " + maxDouble);
+					break;
+				case DATETIME:
+					if (!(value instanceof TemporalAccessor))
+						throw invalidType(line);
+					break;
+				case STRING:
+					if (allowedValues != null && !allowedValues.contains(value))
+						throw new TomlException("Invalid value at line " + line + ": " + label + " must be one of "
+								+ allowedValues);
+					break;
+				default:// the type of the other values is known from their first character
+					break;
+			}
+		}
+	}
+
+}
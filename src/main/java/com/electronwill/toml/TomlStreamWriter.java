@@ -0,0 +1,368 @@
+package com.electronwill.toml;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.TemporalAccessor;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Class for writing TOML v0.4.0 piece by piece, without building a Map first. The data is written immediately,
+ * so the memory used doesn't depend on the size of the document.
+ * <p>
+ * The output uses the same formatting as {@link TomlWriter}: same indentation, same line separator, and the same
+ * quoting rules for the keys. Example:
+ *
+ * <pre>
+ * TomlStreamWriter sw = new TomlStreamWriter(writer);
+ * sw.key("title").value("example");
+ * sw.beginArrayTable("fleet", "hosts");
+ * sw.key("name").value("alpha");
+ * sw.key("ports").beginArray().value(80).value(443).endArray();
+ * sw.close();
+ * </pre>
+ * </p>
+ * <h1>Validation</h1>
+ * <p>
+ * The order of the calls is checked as the data is written: a key must be followed by exactly one value, a table
+ * can't begin while a value is incomplete, the same key can't be written twice in the same table, the elements of
+ * an array must have the same type, and a table can't be defined twice, nor be both a table and an array of tables.
+ * Once a table has begun, the simple values of its parent tables can't be written anymore: every key belongs to the
+ * last table that has begun. An invalid call throws a {@link TomlException}.
+ * </p>
+ * <p>
+ * The names of the tables are remembered, but not the names of the values, except those of the current table:
+ * a value of a table that isn't the current one can't be checked against a new table of the same name. For an
+ * array of tables, only the tables of its last element are remembered, so that writing many elements doesn't
+ * use more memory.
+ * </p>
+ */
+public final class TomlStreamWriter {
+
+	// The types of the values, to check that the elements of an array have the same type, like TomlReader does
+	private static final byte NO_ELEMENT = 0, INTEGER = 1, DECIMAL = 2, BOOLEAN = 3, STRING = 4, DATE = 5,
+			LOCAL_DATETIME = 6, DATETIME = 7, ARRAY = 8;
+
+	private final TomlWriter out;
+	private final Set<String> keys = new HashSet<>();// the keys of the current table
+	private final Header root = new Header();// the tables that have been written
+	private Header currentHeader = root;
+	private String[] tablePath = new String[0];
+	private boolean keyPending = false, empty = true;
+	private int arrayDepth = 0;
+	private byte[] elementTypes = new byte[4];// the type of the elements of each array that has begun
+
+	/**
+	 * Creates a new TomlStreamWriter with the defaults parameters. This is exactly the same as
+	 * {@code TomlStreamWriter(writer, 1, false, System.lineSeparator()}.
+	 *
+	 * @param writer where to write the data
+	 */
+	public TomlStreamWriter(Writer writer) {
+		this(writer, 1, false, System.lineSeparator());
+	}
+
+	/**
+	 * Creates a new TomlStreamWriter with the specified parameters. The system line separator is used.
+	 *
+	 * @param writer where to write the data
+	 * @param indentSize the size of each indent
+	 * @param indentWithSpaces true to indent with spaces, false to indent with tabs
+	 */
+	public TomlStreamWriter(Writer writer, int indentSize, boolean indentWithSpaces) {
+		this(writer, indentSize, indentWithSpaces, System.lineSeparator());
+	}
+
+	/**
+	 * Creates a new TomlStreamWriter with the specified parameters.
+	 *
+	 * @param writer where to write the data
+	 * @param indentSize the size of each indent
+	 * @param indentWithSpaces true to indent with spaces, false to indent with tabs
+	 * @param lineSeparator the String to write to break lines
+	 */
+	public TomlStreamWriter(Writer writer, int indentSize, boolean indentWithSpaces, String lineSeparator) {
+		this.out = new TomlWriter(writer, indentSize, indentWithSpaces, lineSeparator);
+	}
+
+	/**
+	 * Begins a table. The following keys will belong to this table.
+	 *
+	 * @param path the full name of the table, for instance {@code ("a", "b")} for [a.b]
+	 * @return this TomlStreamWriter
+	 * @throws IOException if an error occurs
+	 */
+	public TomlStreamWriter beginTable(String... path) throws IOException {
+		checkHeader(path, false);
+		beginHeader(path, false);
+		return this;
+	}
+
+	/**
+	 * Begins a new element of an array of tables. The following keys will belong to this element.
+	 *
+	 * @param path the full name of the array, for instance {@code ("a", "b")} for [[a.b]]
+	 * @return this TomlStreamWriter
+	 * @throws IOException if an error occurs
+	 */
+	public TomlStreamWriter beginArrayTable(String... path) throws IOException {
+		checkHeader(path, true);
+		beginHeader(path, true);
+		return this;
+	}
+
+	/**
+	 * Writes a key. It must be followed by a value, or by an array.
+	 *
+	 * @param name the key
+	 * @return this TomlStreamWriter
+	 * @throws IOException if an error occurs
+	 */
+	public TomlStreamWriter key(String name) throws IOException {
+		if (keyPending || arrayDepth > 0)
+			throw new TomlException("Cannot write the key \"" + name + "\": the previous value is incomplete");
+		if (currentHeader.children.containsKey(name) || !keys.add(name))
+			throw new TomlException("Duplicate key \"" + name + "\"");
+		out.indent();
+		out.writeKey(name);
+		out.write(" = ");
+		keyPending = true;
+		empty = false;
+		return this;
+	}
+
+	/**
+	 * Writes an integer value.
+	 *
+	 * @param value the value
+	 * @return this TomlStreamWriter
+	 * @throws IOException if an error occurs
+	 */
+	public TomlStreamWriter value(long value) throws IOException {
+		checkValue(INTEGER);
+		out.writeLong(value);
+		return afterValue();
+	}
+
+	/**
+	 * Writes a decimal value.
+	 *
+	 * @param value the value, which must be finite
+	 * @return this TomlStreamWriter
+	 * @throws IOException if an error occurs
+	 * @throws TomlException if the value is NaN or infinite
+	 */
+	public TomlStreamWriter value(double value) throws IOException {
+		if (Double.isNaN(value) || Double.isInfinite(value))
+			throw new TomlException("Unsupported value " + value + ": TOML decimals must be finite");
+		checkValue(DECIMAL);
+		out.writeDouble(value);
+		return afterValue();
+	}
+
+	/**
+	 * Writes a boolean value.
+	 *
+	 * @param value the value
+	 * @return this TomlStreamWriter
+	 * @throws IOException if an error occurs
+	 */
+	public TomlStreamWriter value(boolean value) throws IOException {
+		checkValue(BOOLEAN);
+		out.write(value ? "true" : "false");
+		return afterValue();
+	}
+
+	/**
+	 * Writes a String value.
+	 *
+	 * @param value the value
+	 * @return this TomlStreamWriter
+	 * @throws IOException if an error occurs
+	 */
+	public TomlStreamWriter value(String value) throws IOException {
+		checkValue(STRING);
+		out.writeString(value);
+		return afterValue();
+	}
+
+	/**
+	 * Writes a datetime value. See {@link TomlWriter} for the supported kinds of datetimes.
+	 *
+	 * @param value the value
+	 * @return this TomlStreamWriter
+	 * @throws IOException if an error occurs
+	 */
+	public TomlStreamWriter value(TemporalAccessor value) throws IOException {
+		checkValue((value instanceof LocalDate) ? DATE : (value instanceof LocalDateTime) ? LOCAL_DATETIME : DATETIME);
+		out.writeValue(value);
+		return afterValue();
+	}
+
+	/**
+	 * Begins an array. The following values will be the elements of the array, until {@link #endArray()} is called.
+	 *
+	 * @return this TomlStreamWriter
+	 * @throws IOException if an error occurs
+	 */
+	public TomlStreamWriter beginArray() throws IOException {
+		checkValue(ARRAY);
+		out.write('[');
+		keyPending = false;
+		if (arrayDepth == elementTypes.length)
+			elementTypes = Arrays.copyOf(elementTypes, arrayDepth * 2);
+		elementTypes[arrayDepth++] = NO_ELEMENT;
+		return this;
+	}
+
+	/**
+	 * Ends the current array.
+	 *
+	 * @return this TomlStreamWriter
+	 * @throws IOException if an error occurs
+	 */
+	public TomlStreamWriter endArray() throws IOException {
+		if (arrayDepth == 0)
+			throw new TomlException("Cannot end an array: no array has begun");
+		out.write(']');
+		arrayDepth--;
+		return afterValue();
+	}
+
+	/**
+	 * Flushes the underlying writer.
+	 *
+	 * @throws IOException if an error occurs
+	 */
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	/**
+	 * Closes the underlying writer, flushing it first.
+	 *
+	 * @throws IOException if an error occurs
+	 * @throws TomlException if the last value is incomplete
+	 */
+	public void close() throws IOException {
+		try {
+			if (keyPending || arrayDepth > 0)
+				throw new TomlException("The last value is incomplete");
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Checks that a table can begin, and remembers it.
+	 */
+	private void checkHeader(String[] path, boolean arrayOfTables) {
+		if (path.length == 0)
+			throw new TomlException("Invalid empty table name");
+		if (keyPending || arrayDepth > 0)
+			throw new TomlException("Cannot begin the table " + Arrays.toString(path) + ": the previous value is incomplete");
+		if (isInCurrentTable(path) && keys.contains(path[tablePath.length]))
+			throw new TomlException("Cannot begin the table " + Arrays.toString(path) + ": \"" + path[tablePath.length]
+					+ "\" is already defined as a value");
+
+		Header header = root;
+		boolean exists = true;
+		for (String name : path) {
+			Header child = header.children.get(name);
+			if (child == null) {
+				child = new Header();
+				header.children.put(name, child);
+				exists = false;
+			}
+			header = child;
+		}
+		if (arrayOfTables) {
+			if (exists && header.kind != Header.ARRAY)
+				throw new TomlException("Table " + Arrays.toString(path) + " is already defined and isn't an array");
+			header.kind = Header.ARRAY;
+			header.children.clear();// the tables of the previous element can be defined again
+		} else {
+			if (header.kind == Header.TABLE)
+				throw new TomlException("Table " + Arrays.toString(path) + " is already defined");
+			if (header.kind == Header.ARRAY)
+				throw new TomlException("Table " + Arrays.toString(path) + " is already defined as an array of tables");
+			header.kind = Header.TABLE;
+		}
+		currentHeader = header;
+	}
+
+	/**
+	 * Checks if a table is a sub-table of the current table.
+	 */
+	private boolean isInCurrentTable(String[] path) {
+		if (path.length <= tablePath.length)
+			return false;
+		for (int i = 0; i < tablePath.length; i++) {
+			if (!path[i].equals(tablePath[i]))
+				return false;
+		}
+		return true;
+	}
+
+	private void beginHeader(String[] path, boolean arrayOfTables) throws IOException {
+		// Changes the table path of the TomlWriter, keeping the names in common with the previous path
+		int common = 0;
+		while (common < path.length && common < tablePath.length && path[common].equals(tablePath[common])) {
+			common++;
+		}
+		for (int i = tablePath.length; i > common; i--) {
+			out.popTableName();
+		}
+		for (int i = common; i < path.length; i++) {
+			out.pushTableName(path[i]);
+		}
+		tablePath = path.clone();
+		keys.clear();
+
+		if (!empty) {// an empty line between the tables
+			out.newLine();
+			out.newLine();
+		}
+		out.writeTableHeader(arrayOfTables);
+		empty = false;
+	}
+
+	private void checkValue(byte type) {
+		if (!keyPending && arrayDepth == 0)
+			throw new TomlException("Cannot write a value without a key");
+		if (arrayDepth > 0) {
+			byte elementType = elementTypes[arrayDepth - 1];
+			if (elementType == NO_ELEMENT)
+				elementTypes[arrayDepth - 1] = type;
+			else if (elementType != type)
+				throw new TomlException("Invalid array: all the values must have the same type");
+		}
+	}
+
+	private TomlStreamWriter afterValue() throws IOException {
+		if (arrayDepth > 0) {
+			out.write(", ");
+		} else {
+			keyPending = false;
+			out.newLine();
+		}
+		return this;
+	}
+
+	/**
+	 * A table or an array of tables that has been written, or that contains one. The children of an array of
+	 * tables are those of its last element.
+	 */
+	private static final class Header {
+		static final byte IMPLICIT = 0, TABLE = 1, ARRAY = 2;
+
+		byte kind = IMPLICIT;
+		final Map<String, Header> children = new HashMap<>(4);
+	}
+
+}
@@ -0,0 +1,965 @@
+package com.electronwill.toml;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZonedDateTime;
+import java.time.temporal.TemporalAccessor;
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A read-only TOML document stored as a flat "tape" of bytes, outside of the Java heap. The tables, arrays and
+ * values are encoded one after the other in a direct {@link ByteBuffer}, so a big document only uses a few
+ * objects on the heap. The tape can be saved to a file and memory-mapped later, without parsing the TOML data
+ * again.
+ * <h1>Navigation</h1>
+ * <p>
+ * {@link #root()} returns the root table, as a {@link Value}. A Value is a lightweight pointer to a position of
+ * the tape: its content is decoded only when asked for. The tables can also be seen as lazy {@code Map}s with
+ * {@link Value#asMap()}, and the arrays as lazy {@code List}s with {@link Value#asList()}.
+ * </p>
+ * <h1>Format</h1>
+ * <p>
+ * The tape begins with the magic number "TOML", the version of the format and the position of the root table.
+ * Each value begins with a tag byte:
+ * <ul>
+ * <li>a table is followed by its number of entries n, n positions of the entries, and the entries. Each entry is
+ * the length of the key, the key in UTF-8, and the value. The entries are sorted by key, to find them by binary
+ * search.</li>
+ * <li>an array is followed by its number of elements n, n positions of the elements, and the elements.</li>
+ * <li>a string, or a datetime, is followed by its length and its UTF-8 bytes.</li>
+ * <li>an integer or a decimal is followed by 8 bytes.</li>
+ * <li>a boolean is entirely in its tag.</li>
+ * </ul>
+ * The lengths, counts and positions are ints. Therefore a tape is limited to 2 GB. The positions are absolute, so
+ * the entries and elements may be anywhere in the tape: {@link #read(String)} writes them before their table or
+ * array, as it reads them.
+ * </p>
+ */
+public final class TomlTape {
+
+	/**
+	 * The type of a value of the tape.
+	 */
+	public enum Type {
+		TABLE, ARRAY, STRING, INTEGER, DECIMAL, BOOLEAN, DATETIME
+	}
+
+	private static final int MAGIC = 0x544F4D4C;// "TOML"
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 12;
+
+	private static final byte TAG_TABLE = 1, TAG_ARRAY = 2, TAG_STRING = 3, TAG_INT = 4, TAG_LONG = 5, TAG_DOUBLE = 6,
+			TAG_TRUE = 7, TAG_FALSE = 8, TAG_DATETIME = 9;
+
+	private final ByteBuffer buffer;
+
+	private TomlTape(ByteBuffer buffer) {
+		this.buffer = buffer;
+	}
+
+	/**
+	 * Parses some TOML data and stores it in a tape. The values are encoded as soon as they are parsed, without
+	 * building the tree of values: only the tables defined by [headers] are kept during the call, with the
+	 * positions of their entries in the tape.
+	 * <p>
+	 * The result is the same as {@code of(Toml.read(toml))}, except that the invalid data that TomlReader accepts
+	 * by merging a [table] or a [[table]] into a value defined by a key, like {@code a = {b = 1}} followed by
+	 * {@code [a.c]}, is rejected.
+	 * </p>
+	 *
+	 * @param toml the TOML data
+	 * @return the tape
+	 * @throws TomlException if a parse error occurs
+	 */
+	public static TomlTape read(String toml) {
+		return read(new TomlReader(toml, false));
+	}
+
+	/**
+	 * Parses an UTF-8 encoded TOML file and stores it in a tape, like {@link #read(String)}.
+	 *
+	 * @param file the file to read
+	 * @return the tape
+	 * @throws IOException if a read error occurs
+	 * @throws TomlException if a parse error occurs
+	 */
+	public static TomlTape read(File file) throws IOException {
+		return read(Toml.createReader(file));
+	}
+
+	private static TomlTape read(TomlReader toml) {
+		Encoder encoder = new Encoder();
+		encoder.putInt(MAGIC);
+		encoder.putInt(VERSION);
+		encoder.putInt(0);// the position of the root table, known at the end
+		Table root = new Table();
+		encoder.writeEntries(toml, root);
+		toml.checkUnfinishedTable();
+		while (toml.hasNext()) {
+			List<String> keyParts = toml.nextTableHeader();
+			int line = toml.line();
+			Table table = new Table();
+			encoder.writeEntries(toml, table);// before the checks of the header, like TomlReader does
+			Table parent = root;
+			for (int i = 0; i < keyParts.size() - 1; i++) {
+				String part = keyParts.get(i);
+				Table child = parent.child(part);
+				if (child == null) {// implicit table
+					encoder.checkNotValue(parent, part, line);
+					child = new Table();
+					parent.putChild(part, child);
+				} else if (child.elements != null) {// array of tables: the table is its last element
+					child = child.elements.get(child.elements.size() - 1);
+				}
+				parent = child;
+			}
+			String name = keyParts.get(keyParts.size() - 1);
+			if (toml.headerIsArray) {
+				Table array = parent.child(name);
+				if (array == null) {
+					encoder.checkNotValue(parent, name, line);
+					array = new Table();
+					array.elements = new ArrayList<>(2);
+					parent.putChild(name, array);
+				} else if (array.elements == null) {
+					throw new TomlException("Invalid array of tables at line " + line + ": \"" + name
+							+ "\" is already a table");
+				}
+				array.elements.add(table);
+			} else {
+				parent.putChild(name, table);// replaces the previous table or value, like TomlReader does
+			}
+		}
+		int[] entries = encoder.finishEntries(root);
+		encoder.putInt(8, encoder.size);
+		encoder.writeNode(TAG_TABLE, entries);
+		return new TomlTape(encoder.toBuffer());
+	}
+
+	/**
+	 * Stores the specified data in a tape. The data may contain the same types of values as the data written by
+	 * {@link TomlWriter}.
+	 *
+	 * @param data the data
+	 * @return the tape
+	 * @throws TomlException if the data contains an unsupported value
+	 */
+	public static TomlTape of(Map<String, Object> data) {
+		Encoder encoder = new Encoder();
+		encoder.putInt(MAGIC);
+		encoder.putInt(VERSION);
+		encoder.putInt(HEADER_SIZE);
+		encoder.writeTable(data);
+		return new TomlTape(encoder.toBuffer());
+	}
+
+	/**
+	 * Uses the content of a ByteBuffer as a tape. The buffer must begin with a tape, at its position. It isn't
+	 * copied, so it must not be modified afterwards.
+	 *
+	 * @param buffer the buffer that contains the tape
+	 * @return the tape
+	 * @throws TomlException if the buffer doesn't contain a valid tape
+	 */
+	public static TomlTape wrap(ByteBuffer buffer) {
+		ByteBuffer slice = buffer.slice();
+		if (slice.remaining() < HEADER_SIZE || slice.getInt(0) != MAGIC)
+			throw new TomlException("Invalid tape: wrong magic number");
+		if (slice.getInt(4) != VERSION)
+			throw new TomlException("Unsupported tape version " + slice.getInt(4));
+		int root = slice.getInt(8);
+		if (root < HEADER_SIZE || root >= slice.limit() || slice.get(root) != TAG_TABLE)
+			throw new TomlException("Invalid tape: no root table");
+		return new TomlTape(slice.asReadOnlyBuffer());
+	}
+
+	/**
+	 * Memory-maps a file written by {@link #save(File)}. The content of the file is only loaded when it's
+	 * accessed, by the operating system.
+	 *
+	 * @param file the file
+	 * @return the tape
+	 * @throws IOException if a read error occurs
+	 * @throws TomlException if the file doesn't contain a valid tape
+	 */
+	public static TomlTape map(File file) throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+			return wrap(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+
+	/**
+	 * Saves this tape to a file, to {@link #map(File) map} it later.
+	 *
+	 * @param file the file
+	 * @throws IOException if a write error occurs
+	 */
+	public void save(File file) throws IOException {
+		try (FileOutputStream out = new FileOutputStream(file)) {
+			writeTo(out.getChannel());
+		}
+	}
+
+	/**
+	 * Writes this tape to a channel.
+	 *
+	 * @param channel where to write the tape
+	 * @throws IOException if a write error occurs
+	 */
+	public void writeTo(WritableByteChannel channel) throws IOException {
+		ByteBuffer duplicate = buffer.duplicate();
+		duplicate.rewind();
+		while (duplicate.hasRemaining()) {
+			channel.write(duplicate);
+		}
+	}
+
+	/**
+	 * @return the size of this tape, in bytes
+	 */
+	public int size() {
+		return buffer.limit();
+	}
+
+	/**
+	 * @return a read-only buffer that contains this tape
+	 */
+	public ByteBuffer buffer() {
+		return buffer.duplicate();
+	}
+
+	/**
+	 * @return the root table
+	 */
+	public Value root() {
+		return new Value(buffer.getInt(8));
+	}
+
+	/**
+	 * A pointer to a value of the tape. It's cheap to create, and its methods decode the value on demand.
+	 */
+	public final class Value {
+
+		private final int position;
+
+		private Value(int position) {
+			this.position = position;
+		}
+
+		/**
+		 * @return the type of this value
+		 */
+		public Type type() {
+			switch (buffer.get(position)) {
+				case TAG_TABLE:
+					return Type.TABLE;
+				case TAG_ARRAY:
+					return Type.ARRAY;
+				case TAG_STRING:
+					return Type.STRING;
+				case TAG_INT:
+				case TAG_LONG:
+					return Type.INTEGER;
+				case TAG_DOUBLE:
+					return Type.DECIMAL;
+				case TAG_TRUE:
+				case TAG_FALSE:
+					return Type.BOOLEAN;
+				case TAG_DATETIME:
+					return Type.DATETIME;
+				default:
+					throw new TomlException("Invalid tape: unknown tag at position " + position);
+			}
+		}
+
+		/**
+		 * @return the number of entries of this table, or of elements of this array
+		 */
+		public int size() {
+			checkComposite();
+			return buffer.getInt(position + 1);
+		}
+
+		/**
+		 * Gets the value associated to a key of this table.
+		 *
+		 * @param key the key
+		 * @return the value, or null if there is no such key
+		 */
+		public Value get(String key) {
+			int entry = find(key);
+			return (entry == -1) ? null : new Value(entry + 4 + buffer.getInt(entry));
+		}
+
+		/**
+		 * Gets an element of this array.
+		 *
+		 * @param index the index of the element
+		 * @return the element
+		 */
+		public Value get(int index) {
+			check(TAG_ARRAY);
+			return new Value(child(index));
+		}
+
+		/**
+		 * Gets the key of an entry of this table. The entries are sorted by key.
+		 *
+		 * @param index the index of the entry
+		 * @return the key
+		 */
+		public String keyAt(int index) {
+			check(TAG_TABLE);
+			int entry = child(index);
+			return decode(entry + 4, buffer.getInt(entry));
+		}
+
+		/**
+		 * Gets the value of an entry of this table. The entries are sorted by key.
+		 *
+		 * @param index the index of the entry
+		 * @return the value
+		 */
+		public Value valueAt(int index) {
+			check(TAG_TABLE);
+			int entry = child(index);
+			return new Value(entry + 4 + buffer.getInt(entry));
+		}
+
+		/**
+		 * @return this string, or this datetime in the TOML format
+		 */
+		public String asString() {
+			byte tag = buffer.get(position);
+			if (tag != TAG_STRING && tag != TAG_DATETIME)
+				throw wrongType(Type.STRING);
+			return decode(position + 5, buffer.getInt(position + 1));
+		}
+
+		/**
+		 * @return this integer
+		 */
+		public long asLong() {
+			byte tag = buffer.get(position);
+			if (tag != TAG_INT && tag != TAG_LONG)
+				throw wrongType(Type.INTEGER);
+			return buffer.getLong(position + 1);
+		}
+
+		/**
+		 * @return this decimal, or this integer converted to a double
+		 */
+		public double asDouble() {
+			byte tag = buffer.get(position);
+			if (tag == TAG_DOUBLE)
+				return buffer.getDouble(position + 1);
+			return asLong();
+		}
+
+		/**
+		 * @return this boolean
+		 */
+		public boolean asBoolean() {
+			byte tag = buffer.get(position);
+			if (tag != TAG_TRUE && tag != TAG_FALSE)
+				throw wrongType(Type.BOOLEAN);
+			return tag == TAG_TRUE;
+		}
+
+		/**
+		 * @return this datetime, as a LocalDate, a LocalDateTime or a ZonedDateTime like {@link TomlReader} does
+		 */
+		public TemporalAccessor asDateTime() {
+			check(TAG_DATETIME);
+			return Toml.DATE_FORMATTER.parseBest(asString(), ZonedDateTime::from, LocalDateTime::from, LocalDate::from);
+		}
+
+		/**
+		 * Returns a read-only view of this table. The values are decoded each time they are accessed.
+		 *
+		 * @return a Map backed by the tape
+		 */
+		public Map<String, Object> asMap() {
+			check(TAG_TABLE);
+			return new TapeMap(this);
+		}
+
+		/**
+		 * Returns a read-only view of this array. The elements are decoded each time they are accessed.
+		 *
+		 * @return a List backed by the tape
+		 */
+		public List<Object> asList() {
+			check(TAG_ARRAY);
+			return new TapeList(this);
+		}
+
+		/**
+		 * Returns this value as an object of the types returned by {@link TomlReader}. The tables and arrays are
+		 * returned as lazy views, see {@link #asMap()} and {@link #asList()}.
+		 *
+		 * @return this value as an object
+		 */
+		public Object toObject() {
+			switch (buffer.get(position)) {
+				case TAG_TABLE:
+					return new TapeMap(this);
+				case TAG_ARRAY:
+					return new TapeList(this);
+				case TAG_STRING:
+					return asString();
+				case TAG_INT:
+					return (int) buffer.getLong(position + 1);
+				case TAG_LONG:
+					return buffer.getLong(position + 1);
+				case TAG_DOUBLE:
+					return buffer.getDouble(position + 1);
+				case TAG_TRUE:
+					return true;
+				case TAG_FALSE:
+					return false;
+				case TAG_DATETIME:
+					return asDateTime();
+				default:
+					throw new TomlException("Invalid tape: unknown tag at position " + position);
+			}
+		}
+
+		@Override
+		public String toString() {
+			Type type = type();
+			return (type == Type.TABLE || type == Type.ARRAY) ? type + "(" + size() + ")" : String.valueOf(toObject());
+		}
+
+		/**
+		 * Finds an entry of this table by binary search.
+		 *
+		 * @return the position of the entry, or -1
+		 */
+		private int find(String key) {
+			check(TAG_TABLE);
+			byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+			int low = 0, high = buffer.getInt(position + 1) - 1;
+			while (low <= high) {
+				int middle = (low + high) >>> 1;
+				int entry = child(middle);
+				int comparison = compareKey(entry + 4, buffer.getInt(entry), bytes);
+				if (comparison < 0)
+					low = middle + 1;
+				else if (comparison > 0)
+					high = middle - 1;
+				else
+					return entry;
+			}
+			return -1;
+		}
+
+		private int child(int index) {
+			int count = buffer.getInt(position + 1);
+			if (index < 0 || index >= count)
+				throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + count);
+			return buffer.getInt(position + 5 + 4 * index);
+		}
+
+		private void check(byte tag) {
+			if (buffer.get(position) != tag)
+				throw wrongType(tag == TAG_TABLE ? Type.TABLE : tag == TAG_ARRAY ? Type.ARRAY : Type.DATETIME);
+		}
+
+		private void checkComposite() {
+			byte tag = buffer.get(position);
+			if (tag != TAG_TABLE && tag != TAG_ARRAY)
+				throw wrongType(Type.TABLE);
+		}
+
+		private TomlException wrongType(Type expected) {
+			return new TomlException("Invalid value type: expected " + expected + " but found " + type());
+		}
+	}
+
+	private int compareKey(int offset, int length, byte[] key) {
+		int min = Math.min(length, key.length);
+		for (int i = 0; i < min; i++) {
+			int comparison = (buffer.get(offset + i) & 0xFF) - (key[i] & 0xFF);
+			if (comparison != 0)
+				return comparison;
+		}
+		return length - key.length;
+	}
+
+	private String decode(int offset, int length) {
+		if (buffer.hasArray())
+			return new String(buffer.array(), buffer.arrayOffset() + offset, length, StandardCharsets.UTF_8);
+		byte[] bytes = new byte[length];
+		ByteBuffer duplicate = buffer.duplicate();
+		duplicate.position(offset);
+		duplicate.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * A read-only Map view of a table of the tape.
+	 */
+	private final class TapeMap extends AbstractMap<String, Object> {
+
+		private final Value table;
+
+		TapeMap(Value table) {
+			this.table = table;
+		}
+
+		@Override
+		public int size() {
+			return table.size();
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return (key instanceof String) && table.find((String) key) != -1;
+		}
+
+		@Override
+		public Object get(Object key) {
+			if (!(key instanceof String))
+				return null;
+			Value value = table.get((String) key);
+			return (value == null) ? null : value.toObject();
+		}
+
+		@Override
+		public Set<Entry<String, Object>> entrySet() {
+			return new AbstractSet<Entry<String, Object>>() {
+				@Override
+				public int size() {
+					return table.size();
+				}
+
+				@Override
+				public Iterator<Entry<String, Object>> iterator() {
+					return new Iterator<Entry<String, Object>>() {
+						private int index = 0;
+
+						@Override
+						public boolean hasNext() {
+							return index < table.size();
+						}
+
+						@Override
+						public Entry<String, Object> next() {
+							if (index >= table.size())
+								throw new NoSuchElementException();
+							Entry<String, Object> entry = new SimpleImmutableEntry<>(table.keyAt(index),
+									table.valueAt(index).toObject());
+							index++;
+							return entry;
+						}
+					};
+				}
+			};
+		}
+	}
+
+	/**
+	 * A read-only List view of an array of the tape.
+	 */
+	private final class TapeList extends AbstractList<Object> {
+
+		private final Value array;
+
+		TapeList(Value array) {
+			this.array = array;
+		}
+
+		@Override
+		public int size() {
+			return array.size();
+		}
+
+		@Override
+		public Object get(int index) {
+			return array.get(index).toObject();
+		}
+	}
+
+	/**
+	 * A table defined by [headers], while {@link #read(TomlReader)} encodes the data.
+	 */
+	private static final class Table {
+		int[] entries = new int[4];// the positions of the entries of its content, in the tape
+		int entryCount = 0;
+		Map<String, Table> children;// its [tables] and [[arrays of tables]], or null
+		List<Table> elements;// the elements of the array of tables, or null if this isn't an array
+
+		Table child(String name) {
+			return (children == null) ? null : children.get(name);
+		}
+
+		void putChild(String name, Table child) {
+			if (children == null)
+				children = new LinkedHashMap<>(4);
+			children.put(name, child);
+		}
+
+		void addEntry(int position) {
+			if (entryCount == entries.length)
+				entries = Arrays.copyOf(entries, entryCount * 2);
+			entries[entryCount++] = position;
+		}
+	}
+
+	/**
+	 * Writes the tape to fixed-size chunks on the heap, which are never copied while the tape grows. They are
+	 * copied once to a direct ByteBuffer of the exact size at the end.
+	 */
+	private static final class Encoder {
+
+		private static final int CHUNK_SHIFT = 16;
+		private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;// 64 KB
+		private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+		private static final int MAX_CHUNKS = Integer.MAX_VALUE >>> CHUNK_SHIFT;// less than 2 GB
+
+		private byte[][] chunks = new byte[4][];
+		private int chunkCount = 0;
+		int size = 0;
+
+		/**
+		 * The keys of the table that is being read, to find the duplicates.
+		 */
+		private final Set<String> sectionKeys = new HashSet<>();
+
+		// ---- Encoding of the data read from a TomlReader ----
+
+		/**
+		 * Writes the entries of the current [table] of a reader, until the next header.
+		 */
+		void writeEntries(TomlReader toml, Table table) {
+			sectionKeys.clear();
+			String key;
+			while ((key = toml.nextEntryKey()) != null) {
+				Object value = toml.nextEntryValue();
+				if (!sectionKeys.add(key))
+					throw new TomlException("Duplicate key \"" + key + "\"");
+				table.addEntry(size);
+				writeKey(key.getBytes(StandardCharsets.UTF_8));
+				writeValue(value);
+			}
+		}
+
+		/**
+		 * Checks that a table doesn't contain a value with the given key, before creating an implicit table or an
+		 * array of tables with this key. TomlReader would merge the new table into the value, or fail with a
+		 * ClassCastException.
+		 */
+		void checkNotValue(Table table, String key, int line) {
+			byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+			for (int i = 0; i < table.entryCount; i++) {
+				if (compareKey(table.entries[i], bytes) == 0)
+					throw new TomlException("Invalid table at line " + line + ": \"" + key
+							+ "\" is already defined as a value");
+			}
+		}
+
+		/**
+		 * Writes the sub-tables of a [table], which must be before the table's node in the tape, and returns all
+		 * the entries of the table sorted by key. A [table] replaces an entry of the content that has the same
+		 * key, like TomlReader does.
+		 */
+		int[] finishEntries(Table table) {
+			int[] entries = table.entries;
+			int count = table.entryCount;
+			if (table.children != null) {
+				entries = Arrays.copyOf(entries, count + table.children.size());
+				for (Map.Entry<String, Table> entry : table.children.entrySet()) {
+					byte[] key = entry.getKey().getBytes(StandardCharsets.UTF_8);
+					for (int i = 0; i < table.entryCount; i++) {
+						if (entries[i] != -1 && compareKey(entries[i], key) == 0)
+							entries[i] = -1;
+					}
+					entries[count++] = writeChild(key, entry.getValue());
+				}
+				int kept = 0;
+				for (int i = 0; i < count; i++) {
+					if (entries[i] != -1)
+						entries[kept++] = entries[i];
+				}
+				count = kept;
+			}
+			Integer[] sorted = new Integer[count];
+			for (int i = 0; i < count; i++) {
+				sorted[i] = entries[i];
+			}
+			Arrays.sort(sorted, this::compareKeys);
+			int[] result = new int[count];
+			for (int i = 0; i < count; i++) {
+				result[i] = sorted[i];
+			}
+			return result;
+		}
+
+		/**
+		 * Writes the entry of a [table] or of a [[table]], after its sub-tables.
+		 *
+		 * @return the position of the entry
+		 */
+		private int writeChild(byte[] key, Table child) {
+			int[] positions;
+			byte tag;
+			if (child.elements == null) {
+				positions = finishEntries(child);
+				tag = TAG_TABLE;
+			} else {
+				positions = new int[child.elements.size()];
+				for (int i = 0; i < positions.length; i++) {
+					int[] entries = finishEntries(child.elements.get(i));
+					positions[i] = size;
+					writeNode(TAG_TABLE, entries);
+				}
+				tag = TAG_ARRAY;
+			}
+			int position = size;
+			writeKey(key);
+			writeNode(tag, positions);
+			return position;
+		}
+
+		/**
+		 * Writes a table or an array whose children are already written.
+		 */
+		void writeNode(byte tag, int[] positions) {
+			put(tag);
+			putInt(positions.length);
+			for (int position : positions) {
+				putInt(position);
+			}
+		}
+
+		private int compareKey(int entry, byte[] key) {
+			int length = getInt(entry);
+			int min = Math.min(length, key.length);
+			for (int i = 0; i < min; i++) {
+				int comparison = (get(entry + 4 + i) & 0xFF) - (key[i] & 0xFF);
+				if (comparison != 0)
+					return comparison;
+			}
+			return length - key.length;
+		}
+
+		private int compareKeys(int a, int b) {
+			int lengthA = getInt(a), lengthB = getInt(b);
+			int min = Math.min(lengthA, lengthB);
+			for (int i = 0; i < min; i++) {
+				int comparison = (get(a + 4 + i) & 0xFF) - (get(b + 4 + i) & 0xFF);
+				if (comparison != 0)
+					return comparison;
+			}
+			return lengthA - lengthB;
+		}
+
+		// ---- Encoding of a Map ----
+
+		void writeTable(Map<?, ?> table) {
+			int count = table.size();
+			byte[][] keys = new byte[count][];
+			Object[] values = new Object[count];
+			Integer[] order = new Integer[count];
+			int i = 0;
+			for (Map.Entry<?, ?> entry : table.entrySet()) {
+				keys[i] = ((String) entry.getKey()).getBytes(StandardCharsets.UTF_8);
+				values[i] = entry.getValue();
+				order[i] = i;
+				i++;
+			}
+			Arrays.sort(order, (a, b) -> compare(keys[a], keys[b]));
+
+			put(TAG_TABLE);
+			putInt(count);
+			int offsets = size;
+			skip(4 * count);
+			for (i = 0; i < count; i++) {
+				putInt(offsets + 4 * i, size);
+				writeKey(keys[order[i]]);
+				writeValue(values[order[i]]);
+			}
+		}
+
+		void writeArray(Object array, int count) {
+			put(TAG_ARRAY);
+			putInt(count);
+			int offsets = size;
+			skip(4 * count);
+			if (array instanceof Collection) {
+				int i = 0;
+				for (Object element : (Collection<?>) array) {
+					putInt(offsets + 4 * i++, size);
+					writeValue(element);
+				}
+			} else {
+				for (int i = 0; i < count; i++) {
+					putInt(offsets + 4 * i, size);
+					writeValue(Array.get(array, i));
+				}
+			}
+		}
+
+		void writeValue(Object value) {
+			if (value instanceof String) {
+				writeString(TAG_STRING, (String) value);
+			} else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+				put(TAG_INT);
+				putLong(((Number) value).longValue());
+			} else if (value instanceof Long) {
+				put(TAG_LONG);
+				putLong((Long) value);
+			} else if (value instanceof Double || value instanceof Float) {
+				put(TAG_DOUBLE);
+				putLong(Double.doubleToRawLongBits(((Number) value).doubleValue()));
+			} else if (value instanceof Boolean) {
+				put((Boolean) value ? TAG_TRUE : TAG_FALSE);
+			} else if (value instanceof TemporalAccessor) {
+				String formatted = Toml.DATE_FORMATTER.format((TemporalAccessor) value);
+				if (formatted.endsWith("T"))// LocalDate
+					formatted = formatted.substring(0, formatted.length() - 1);
+				writeString(TAG_DATETIME, formatted);
+			} else if (value instanceof Map) {
+				writeTable((Map<?, ?>) value);
+			} else if (value instanceof Collection) {
+				writeArray(value, ((Collection<?>) value).size());
+			} else if (value != null && value.getClass().isArray() && !(value instanceof char[])) {
+				writeArray(value, Array.getLength(value));
+			} else {
+				throw new TomlException("Unsupported value of type "
+						+ (value == null ? "null" : value.getClass().getCanonicalName()));
+			}
+		}
+
+		void writeString(byte tag, String str) {
+			put(tag);
+			writeKey(str.getBytes(StandardCharsets.UTF_8));
+		}
+
+		/**
+		 * Writes the length of some bytes, then the bytes.
+		 */
+		void writeKey(byte[] bytes) {
+			putInt(bytes.length);
+			int offset = 0;
+			while (offset < bytes.length) {
+				int chunkPos = size & CHUNK_MASK;
+				int n = Math.min(bytes.length - offset, CHUNK_SIZE - chunkPos);
+				System.arraycopy(bytes, offset, chunk(), chunkPos, n);
+				offset += n;
+				size += n;
+			}
+		}
+
+		static int compare(byte[] a, byte[] b) {
+			int min = Math.min(a.length, b.length);
+			for (int i = 0; i < min; i++) {
+				int comparison = (a[i] & 0xFF) - (b[i] & 0xFF);
+				if (comparison != 0)
+					return comparison;
+			}
+			return a.length - b.length;
+		}
+
+		// ---- Chunks ----
+
+		void put(byte b) {
+			chunk()[size & CHUNK_MASK] = b;
+			size++;
+		}
+
+		void putInt(int value) {
+			put((byte) (value >>> 24));
+			put((byte) (value >>> 16));
+			put((byte) (value >>> 8));
+			put((byte) value);
+		}
+
+		void putLong(long value) {
+			putInt((int) (value >>> 32));
+			putInt((int) value);
+		}
+
+		/**
+		 * Writes an int at a position already written, big-endian like ByteBuffer.
+		 */
+		void putInt(int position, int value) {
+			for (int i = 0; i < 4; i++) {
+				int p = position + i;
+				chunks[p >>> CHUNK_SHIFT][p & CHUNK_MASK] = (byte) (value >>> (24 - 8 * i));
+			}
+		}
+
+		byte get(int position) {
+			return chunks[position >>> CHUNK_SHIFT][position & CHUNK_MASK];
+		}
+
+		int getInt(int position) {
+			return (get(position) & 0xFF) << 24 | (get(position + 1) & 0xFF) << 16 | (get(position + 2) & 0xFF) << 8
+					| (get(position + 3) & 0xFF);
+		}
+
+		/**
+		 * Reserves some bytes, which are written later with {@link #putInt(int, int)}.
+		 */
+		void skip(int n) {
+			while (n > 0) {
+				chunk();
+				int step = Math.min(n, CHUNK_SIZE - (size & CHUNK_MASK));
+				size += step;
+				n -= step;
+			}
+		}
+
+		/**
+		 * Returns the chunk that contains the position {@code size}, creating it if needed.
+		 */
+		private byte[] chunk() {
+			int index = size >>> CHUNK_SHIFT;
+			if (index == chunkCount) {
+				if (index == MAX_CHUNKS)
+					throw new TomlException("The data is too big for a tape");
+				if (index == chunks.length)
+					chunks = Arrays.copyOf(chunks, index * 2);
+				chunks[index] = new byte[CHUNK_SIZE];
+				chunkCount++;
+			}
+			return chunks[index];
+		}
+
+		/**
+		 * Copies the chunks to a direct ByteBuffer of the exact size.
+		 */
+		ByteBuffer toBuffer() {
+			ByteBuffer buffer = ByteBuffer.allocateDirect(size);
+			for (int i = 0; i < chunkCount; i++) {
+				buffer.put(chunks[i], 0, Math.min(CHUNK_SIZE, size - (i << CHUNK_SHIFT)));
+			}
+			buffer.flip();
+			return buffer.asReadOnlyBuffer();
+		}
+	}
+
+}
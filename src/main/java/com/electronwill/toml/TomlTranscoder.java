@@ -0,0 +1,674 @@
+package com.electronwill.toml;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.temporal.TemporalAccessor;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Converts TOML data to JSON, and JSON data to TOML, without building the Map of the whole document.
+ * <h1>TOML to JSON</h1>
+ * <p>
+ * The TOML data is read by a {@link TomlReader} in two steps. The first step reads the [tables] and the [[tables]]
+ * and skips their values, to know which tables belong to which: this is the only model kept in memory, with the
+ * position of each table in the data. The second step writes each JSON object with its own values, read directly
+ * from the data, followed by the objects of its sub-tables. Therefore the tables may appear in any order in the
+ * TOML data. The result is the same as reading the data with {@link Toml#read(String)} and writing the Map in JSON,
+ * except for the order of the keys, which is the one of the TOML data. The datetimes are written as JSON strings.
+ * </p>
+ * <h1>JSON to TOML</h1>
+ * <p>
+ * The JSON data is written with a {@link TomlStreamWriter}, so the keys are quoted and the strings are escaped like
+ * {@link TomlWriter} does. In TOML, the simple values of a table must come before its sub-tables: for each JSON
+ * object, the simple values and the arrays of values are written first, and the positions of the nested objects
+ * and of the arrays of objects are remembered, then these are written as [tables] and [[tables]]. The JSON null
+ * isn't supported, and the arrays must contain values of the same type, because TOML requires it.
+ * </p>
+ */
+public final class TomlTranscoder {
+
+	// -- TOML to JSON --
+	private TomlReader toml;
+	private Writer out;
+	private final char[] buffer = new char[8192];
+	private int count = 0;// number of chars in the buffer
+
+	// -- JSON to TOML --
+	private String json;
+	private int pos;// position in the json data
+	private TomlStreamWriter tomlOut;
+
+	private TomlTranscoder() {}
+
+	/**
+	 * Converts TOML data to JSON.
+	 *
+	 * @param toml the TOML data
+	 * @param strictAsciiBareKeys <code>true</code> to enforce strict bare keys (see {@link Toml}).
+	 * @param out where to write the JSON data. It isn't closed.
+	 * @throws IOException if a write error occurs
+	 * @throws TomlException if the TOML data is invalid
+	 */
+	public static void tomlToJson(String toml, boolean strictAsciiBareKeys, Writer out) throws IOException {
+		TomlTranscoder transcoder = new TomlTranscoder();
+		transcoder.toml = new TomlReader(toml, strictAsciiBareKeys, TomlMetrics.NONE, null);
+		transcoder.out = out;
+		transcoder.tomlToJson();
+	}
+
+	/**
+	 * Converts an UTF-8 encoded TOML file to an UTF-8 encoded JSON file. Lenient bare keys are allowed (see
+	 * {@link Toml}).
+	 *
+	 * @param toml the TOML file to read
+	 * @param json the JSON file to write
+	 * @throws IOException if a read or write error occurs
+	 * @throws TomlException if the TOML data is invalid
+	 */
+	public static void tomlToJson(File toml, File json) throws IOException {
+		String data = readFile(toml);
+		try (OutputStream os = new FileOutputStream(json)) {
+			Writer writer = new OutputStreamWriter(os, StandardCharsets.UTF_8);
+			tomlToJson(data, false, writer);
+			writer.flush();
+		}
+	}
+
+	/**
+	 * Converts JSON data to TOML. The default parameters of {@link TomlStreamWriter} are used.
+	 *
+	 * @param json the JSON data. It must be an object.
+	 * @param out where to write the TOML data. It isn't closed.
+	 * @throws IOException if a write error occurs
+	 * @throws TomlException if the JSON data is invalid, or can't be represented in TOML
+	 */
+	public static void jsonToToml(String json, Writer out) throws IOException {
+		TomlTranscoder transcoder = new TomlTranscoder();
+		transcoder.json = json;
+		transcoder.tomlOut = new TomlStreamWriter(out);
+		transcoder.jsonToToml();
+		transcoder.tomlOut.flush();
+	}
+
+	/**
+	 * Converts an UTF-8 encoded JSON file to an UTF-8 encoded TOML file.
+	 *
+	 * @param json the JSON file to read
+	 * @param toml the TOML file to write
+	 * @throws IOException if a read or write error occurs
+	 * @throws TomlException if the JSON data is invalid, or can't be represented in TOML
+	 */
+	public static void jsonToToml(File json, File toml) throws IOException {
+		String data = readFile(json);
+		try (OutputStream os = new FileOutputStream(toml)) {
+			jsonToToml(data, new OutputStreamWriter(os, StandardCharsets.UTF_8));
+		}
+	}
+
+	private static String readFile(File file) throws IOException {
+		try (InputStream in = new FileInputStream(file)) {
+			Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8);
+			StringBuilder sb = new StringBuilder((int) file.length());
+			char[] buf = new char[8192];
+			int read;
+			while ((read = reader.read(buf)) != -1) {
+				sb.append(buf, 0, read);
+			}
+			return sb.toString();
+		}
+	}
+
+	// ---------------- TOML to JSON ----------------
+
+	/**
+	 * A table of the TOML data, or an array of tables.
+	 */
+	private static final class Table {
+		final int position, line;// the position of the content in the TOML data, or -1 for an implicit table
+		final Map<String, Table> children = new LinkedHashMap<>(4);// the tables and arrays of tables it contains
+		List<Table> elements;// the elements of the array of tables, or null if this isn't an array
+
+		Table(int position, int line) {
+			this.position = position;
+			this.line = line;
+		}
+	}
+
+	private void tomlToJson() throws IOException {
+		// 1: Finds the tables
+		Table root = new Table(0, 1);
+		skipTableContent();
+		toml.checkUnfinishedTable();
+		while (toml.hasNext()) {
+			List<String> keyParts = toml.nextTableHeader();
+			Table parent = root;
+			for (int i = 0; i < keyParts.size() - 1; i++) {
+				String part = keyParts.get(i);
+				Table child = parent.children.get(part);
+				if (child == null) {// implicit table
+					child = new Table(-1, -1);
+					parent.children.put(part, child);
+				} else if (child.elements != null) {// array of tables: the table is its last element
+					child = child.elements.get(child.elements.size() - 1);
+				}
+				parent = child;
+			}
+			String name = keyParts.get(keyParts.size() - 1);
+			Table table = new Table(toml.position(), toml.line());
+			if (toml.headerIsArray) {
+				Table array = parent.children.get(name);
+				if (array == null) {
+					array = new Table(-1, -1);
+					array.elements = new ArrayList<>(2);
+					parent.children.put(name, array);
+				} else if (array.elements == null) {
+					throw new TomlException("Invalid array of tables at line " + toml.line() + ": \"" + name
+							+ "\" is already a table");
+				}
+				array.elements.add(table);
+			} else {
+				parent.children.put(name, table);// replaces the previous table, like TomlReader does
+			}
+			skipTableContent();
+		}
+
+		// 2: Writes the tables
+		writeTable(root);
+		flushBuffer();
+	}
+
+	private void skipTableContent() {
+		while (toml.nextEntryKey() != null) {
+			toml.skipEntryValue();
+		}
+	}
+
+	private void writeTable(Table table) throws IOException {
+		write('{');
+		boolean first = true;
+		if (table.position >= 0) {
+			toml.seek(table.position, table.line);
+			Set<String> keys = new HashSet<>();
+			String key;
+			while ((key = toml.nextEntryKey()) != null) {
+				Object value = toml.nextEntryValue();
+				if (!keys.add(key))
+					throw new TomlException("Duplicate key \"" + key + "\"");
+				if (table.children.containsKey(key))
+					continue;// replaced by the table, like TomlReader does
+				if (!first)
+					write(',');
+				writeJsonString(key);
+				write(':');
+				writeJsonValue(value);
+				first = false;
+			}
+		}
+		for (Map.Entry<String, Table> entry : table.children.entrySet()) {
+			if (!first)
+				write(',');
+			writeJsonString(entry.getKey());
+			write(':');
+			Table child = entry.getValue();
+			if (child.elements == null) {
+				writeTable(child);
+			} else {
+				write('[');
+				for (int i = 0; i < child.elements.size(); i++) {
+					if (i > 0)
+						write(',');
+					writeTable(child.elements.get(i));
+				}
+				write(']');
+			}
+			first = false;
+		}
+		write('}');
+	}
+
+	private void writeJsonValue(Object value) throws IOException {
+		if (value instanceof String) {
+			writeJsonString((String) value);
+		} else if (value instanceof Integer || value instanceof Long) {
+			ensureCapacity(FastNumberFormatter.MAX_CHARS);
+			count += FastNumberFormatter.formatLong(((Number) value).longValue(), buffer, count);
+		} else if (value instanceof Double) {
+			double d = (Double) value;
+			if (Double.isNaN(d) || Double.isInfinite(d))
+				throw new TomlException("Unsupported value " + d + ": JSON numbers must be finite");
+			ensureCapacity(FastNumberFormatter.MAX_CHARS);
+			count += FastNumberFormatter.formatDouble(d, buffer, count);
+		} else if (value instanceof Boolean) {
+			write(value.toString());
+		} else if (value instanceof TemporalAccessor) {
+			String formatted = Toml.DATE_FORMATTER.format((TemporalAccessor) value);
+			if (formatted.endsWith("T"))// same as TomlWriter
+				formatted = formatted.substring(0, formatted.length() - 1);
+			writeJsonString(formatted);
+		} else if (value instanceof Collection) {
+			write('[');
+			boolean first = true;
+			for (Object element : (Collection<?>) value) {
+				if (!first)
+					write(',');
+				writeJsonValue(element);
+				first = false;
+			}
+			write(']');
+		} else {// inline table
+			write('{');
+			boolean first = true;
+			for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+				if (!first)
+					write(',');
+				writeJsonString((String) entry.getKey());
+				write(':');
+				writeJsonValue(entry.getValue());
+				first = false;
+			}
+			write('}');
+		}
+	}
+
+	private void writeJsonString(String str) throws IOException {
+		write('"');
+		int start = 0;// the beginning of the characters that don't need to be escaped
+		for (int i = 0; i < str.length(); i++) {
+			char c = str.charAt(i);
+			if (c >= 0x20 && c != '"' && c != '\\')
+				continue;
+			write(str, start, i);
+			start = i + 1;
+			switch (c) {
+				case '"':
+					write("\\\"");
+					break;
+				case '\\':
+					write("\\\\");
+					break;
+				case '\b':
+					write("\\b");
+					break;
+				case '\f':
+					write("\\f");
+					break;
+				case '\n':
+					write("\\n");
+					break;
+				case '\r':
+					write("\\r");
+					break;
+				case '\t':
+					write("\\t");
+					break;
+				default:
+					write("\\u00");
+					write(Character.forDigit(c >> 4, 16));
+					write(Character.forDigit(c & 0xF, 16));
+			}
+		}
+		write(str, start, str.length());
+		write('"');
+	}
+
+	private void write(char c) throws IOException {
+		if (count == buffer.length)
+			flushBuffer();
+		buffer[count++] = c;
+	}
+
+	private void write(String str) throws IOException {
+		write(str, 0, str.length());
+	}
+
+	private void write(String str, int start, int end) throws IOException {
+		while (start < end) {
+			if (count == buffer.length)
+				flushBuffer();
+			int n = Math.min(end - start, buffer.length - count);
+			str.getChars(start, start + n, buffer, count);
+			count += n;
+			start += n;
+		}
+	}
+
+	private void ensureCapacity(int chars) throws IOException {
+		if (buffer.length - count < chars)
+			flushBuffer();
+	}
+
+	private void flushBuffer() throws IOException {
+		out.write(buffer, 0, count);
+		count = 0;
+	}
+
+	// ---------------- JSON to TOML ----------------
+
+	private void jsonToToml() throws IOException {
+		skipWhitespace();
+		expect('{');
+		writeObject(new String[0]);
+		skipWhitespace();
+		if (pos < json.length())
+			throw jsonError("unexpected data after the object");
+	}
+
+	/**
+	 * Writes the content of a JSON object, after its '{'.
+	 *
+	 * @param path the path of the TOML table
+	 */
+	private void writeObject(String[] path) throws IOException {
+		List<String> tableKeys = null;// the keys of the objects and the arrays of objects, written after the values
+		List<Integer> tablePositions = null;
+		skipWhitespace();
+		if (peek() == '}') {
+			pos++;
+			return;
+		}
+		while (true) {
+			skipWhitespace();
+			expect('"');
+			String key = jsonString();
+			skipWhitespace();
+			expect(':');
+			skipWhitespace();
+			char c = peek();
+			if (c == '{' || (c == '[' && isArrayOfObjects())) {
+				if (tableKeys == null) {
+					tableKeys = new ArrayList<>();
+					tablePositions = new ArrayList<>();
+				}
+				tableKeys.add(key);
+				tablePositions.add(pos);
+				skipJsonValue();
+			} else {
+				tomlOut.key(key);
+				writeTomlValue();
+			}
+			skipWhitespace();
+			char after = next();
+			if (after == '}')
+				break;
+			if (after != ',')
+				throw jsonError("expected ',' or '}'");
+		}
+		if (tableKeys == null)
+			return;
+		int end = pos;
+		for (int i = 0; i < tableKeys.size(); i++) {
+			String[] tablePath = Arrays.copyOf(path, path.length + 1);
+			tablePath[path.length] = tableKeys.get(i);
+			pos = tablePositions.get(i);
+			if (next() == '{') {
+				tomlOut.beginTable(tablePath);
+				writeObject(tablePath);
+			} else {// array of objects
+				while (true) {
+					skipWhitespace();
+					expect('{');
+					tomlOut.beginArrayTable(tablePath);
+					writeObject(tablePath);
+					skipWhitespace();
+					char after = next();
+					if (after == ']')
+						break;
+					if (after != ',')
+						throw jsonError("expected ',' or ']'");
+				}
+			}
+		}
+		pos = end;
+	}
+
+	/**
+	 * Writes a value that isn't an object nor an array of objects.
+	 *
+	 * @return the type of the value, to check that the arrays are homogeneous
+	 */
+	private char writeTomlValue() throws IOException {
+		char c = next();
+		switch (c) {
+			case '"':
+				tomlOut.value(jsonString());
+				return 's';
+			case 't':
+				expectWord("rue");
+				tomlOut.value(true);
+				return 'b';
+			case 'f':
+				expectWord("alse");
+				tomlOut.value(false);
+				return 'b';
+			case 'n':
+				pos--;
+				throw jsonError("null isn't supported by TOML");
+			case '{':
+				pos--;
+				throw jsonError("objects inside arrays of values aren't supported by TOML");
+			case '[': {
+				tomlOut.beginArray();
+				skipWhitespace();
+				if (peek() == ']') {
+					pos++;
+				} else {
+					char type = 0;
+					while (true) {
+						skipWhitespace();
+						int start = pos;
+						char elementType = writeTomlValue();
+						if (type != 0 && elementType != type) {
+							pos = start;
+							throw jsonError("the values of an array must have the same type in TOML");
+						}
+						type = elementType;
+						skipWhitespace();
+						char after = next();
+						if (after == ']')
+							break;
+						if (after != ',')
+							throw jsonError("expected ',' or ']'");
+					}
+				}
+				tomlOut.endArray();
+				return 'a';
+			}
+			default:
+				if (c != '-' && (c < '0' || c > '9')) {
+					pos--;
+					throw jsonError("invalid value");
+				}
+				int start = pos - 1;
+				boolean decimal = false;
+				while (pos < json.length()) {
+					char n = json.charAt(pos);
+					if (n == '.' || n == 'e' || n == 'E')
+						decimal = true;
+					else if (n != '-' && n != '+' && (n < '0' || n > '9'))
+						break;
+					pos++;
+				}
+				String number = json.substring(start, pos);
+				try {
+					if (!decimal) {
+						tomlOut.value(Long.parseLong(number));
+						return 'i';
+					}
+					double d = Double.parseDouble(number);
+					if (!Double.isFinite(d)) {// 1e999 is valid JSON, but it overflows to infinity
+						pos = start;
+						throw jsonError("invalid number " + number);
+					}
+					tomlOut.value(d);
+					return 'd';
+				} catch (NumberFormatException ex) {
+					pos = start;
+					throw jsonError("invalid number " + number);
+				}
+		}
+	}
+
+	/**
+	 * Reads a JSON string, after its first '"'.
+	 */
+	private String jsonString() {
+		int start = pos;
+		while (pos < json.length()) {// fast path: no escape sequence
+			char c = json.charAt(pos);
+			if (c == '"') {
+				return json.substring(start, pos++);
+			}
+			if (c == '\\')
+				break;
+			pos++;
+		}
+		StringBuilder sb = new StringBuilder(json.length() - start < 64 ? 16 : 64);
+		sb.append(json, start, pos);
+		while (pos < json.length()) {
+			char c = json.charAt(pos++);
+			if (c == '"')
+				return sb.toString();
+			if (c != '\\') {
+				sb.append(c);
+				continue;
+			}
+			char escaped = next();
+			switch (escaped) {
+				case '"':
+				case '\\':
+				case '/':
+					sb.append(escaped);
+					break;
+				case 'b':
+					sb.append('\b');
+					break;
+				case 'f':
+					sb.append('\f');
+					break;
+				case 'n':
+					sb.append('\n');
+					break;
+				case 'r':
+					sb.append('\r');
+					break;
+				case 't':
+					sb.append('\t');
+					break;
+				case 'u':
+					if (pos + 4 > json.length())
+						throw jsonError("invalid escape sequence");
+					try {
+						sb.append((char) Integer.parseInt(json.substring(pos, pos + 4), 16));
+					} catch (NumberFormatException ex) {
+						throw jsonError("invalid escape sequence");
+					}
+					pos += 4;
+					break;
+				default:
+					pos--;
+					throw jsonError("invalid escape sequence");
+			}
+		}
+		throw jsonError("the string never ends");
+	}
+
+	/**
+	 * Checks if the array that begins at the current position contains objects.
+	 */
+	private boolean isArrayOfObjects() {
+		int i = pos + 1;
+		while (i < json.length() && isWhitespace(json.charAt(i))) {
+			i++;
+		}
+		return i < json.length() && json.charAt(i) == '{';
+	}
+
+	/**
+	 * Skips a JSON value, checking only its brackets and its strings.
+	 */
+	private void skipJsonValue() {
+		int depth = 0;
+		do {
+			if (pos >= json.length())
+				throw jsonError("the data ends before the value");
+			char c = json.charAt(pos++);
+			if (c == '{' || c == '[') {
+				depth++;
+			} else if (c == '}' || c == ']') {
+				depth--;
+			} else if (c == '"') {
+				while (true) {
+					if (pos >= json.length())
+						throw jsonError("the string never ends");
+					char s = json.charAt(pos++);
+					if (s == '"')
+						break;
+					if (s == '\\')
+						pos++;
+				}
+			}
+		} while (depth > 0);
+	}
+
+	private void skipWhitespace() {
+		while (pos < json.length() && isWhitespace(json.charAt(pos))) {
+			pos++;
+		}
+	}
+
+	private static boolean isWhitespace(char c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+	}
+
+	private char peek() {
+		if (pos >= json.length())
+			throw jsonError("the data ends too early");
+		return json.charAt(pos);
+	}
+
+	private char next() {
+		char c = peek();
+		pos++;
+		return c;
+	}
+
+	private void expect(char c) {
+		if (peek() != c)
+			throw jsonError("expected '" + c + "'");
+		pos++;
+	}
+
+	private void expectWord(String rest) {
+		if (!json.startsWith(rest, pos)) {
+			pos--;
+			throw jsonError("invalid value");
+		}
+		pos += rest.length();
+	}
+
+	private TomlException jsonError(String message) {
+		int line = 1;
+		for (int i = 0; i < pos && i < json.length(); i++) {
+			if (json.charAt(i) == '\n')
+				line++;
+		}
+		return new TomlException("Invalid JSON at line " + line + ": " + message);
+	}
+
+}
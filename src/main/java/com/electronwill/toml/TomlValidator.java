@@ -0,0 +1,125 @@
+package com.electronwill.toml;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks TOML data without building the values. The data is checked by a {@link TomlReader}, so the validator accepts
+ * exactly the data that the reader accepts.
+ * <p>
+ * All the errors are reported, with their line and column: after an error, the validation continues at the next
+ * line. A TomlValidator may be used by several threads at the same time.
+ * </p>
+ */
+public final class TomlValidator {
+
+	private final boolean strictAsciiBareKeys;
+
+	/**
+	 * Creates a new TomlValidator that allows lenient bare keys.
+	 */
+	public TomlValidator() {
+		this(false);
+	}
+
+	/**
+	 * Creates a new TomlValidator.
+	 *
+	 * @param strictAsciiBareKeys <code>true</false> to allow only strict bare keys, <code>false</code> to allow lenient
+	 *        ones.
+	 */
+	public TomlValidator(boolean strictAsciiBareKeys) {
+		this.strictAsciiBareKeys = strictAsciiBareKeys;
+	}
+
+	/**
+	 * Checks some TOML data.
+	 *
+	 * @param data the data to check
+	 * @return true if the data is valid, false otherwise
+	 */
+	public boolean isValid(String data) {
+		return validate(data).isEmpty();
+	}
+
+	/**
+	 * Checks an UTF-8 encoded TOML file.
+	 *
+	 * @param file the file to check
+	 * @return the problems found, in order. The list is empty if the file is valid.
+	 * @throws IOException if a read error occurs
+	 */
+	public List<Problem> validate(File file) throws IOException {
+		try (InputStream in = new FileInputStream(file)) {
+			Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8);
+			StringBuilder sb = new StringBuilder((int) file.length());
+			char[] buf = new char[8192];
+			int read;
+			while ((read = reader.read(buf)) != -1) {
+				sb.append(buf, 0, read);
+			}
+			return validate(sb.toString());
+		}
+	}
+
+	/**
+	 * Checks some TOML data.
+	 *
+	 * @param data the data to check
+	 * @return the problems found, in order. The list is empty if the data is valid.
+	 */
+	public List<Problem> validate(String data) {
+		List<Problem> problems = new ArrayList<>();
+		new TomlReader(data, strictAsciiBareKeys, TomlMetrics.NONE).validate(problems);
+		return problems;
+	}
+
+	/**
+	 * A problem found by the validator.
+	 */
+	public static final class Problem {
+
+		private final int line, column;
+		private final String message;
+
+		Problem(int line, int column, String message) {
+			this.line = line;
+			this.column = column;
+			this.message = message;
+		}
+
+		/**
+		 * @return the line of the problem, starting at 1
+		 */
+		public int getLine() {
+			return line;
+		}
+
+		/**
+		 * @return the column of the problem, starting at 1
+		 */
+		public int getColumn() {
+			return column;
+		}
+
+		/**
+		 * @return the description of the problem
+		 */
+		public String getMessage() {
+			return message;
+		}
+
+		@Override
+		public String toString() {
+			return line + ":" + column + ": " + message;
+		}
+	}
+
+}
@@ -0,0 +1,390 @@
+package com.electronwill.toml;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches TOML files, and reloads them when they change. The files are watched with a {@link WatchService}, so
+ * nothing is done while they don't change.
+ * <p>
+ * The events of a file are debounced: the file is reloaded when no event has been received for some time (the
+ * debounce delay), so that a burst of events causes only one reload. Before parsing the file, the watcher checks
+ * whether its size, its modification date, or a SHA-256 hash of its content has changed: if not, the reload is
+ * skipped. The files are parsed by a bounded pool of threads.
+ * </p>
+ * <p>
+ * The new data of a file is published atomically: {@link WatchedFile#get()} returns either the old data or the new
+ * data, never a partially read one. If the file is invalid, the previous data is kept and the listeners are
+ * notified of the error. The reloads are reported to the metrics with {@link TomlMetrics#reloadFinished},
+ * {@link TomlMetrics#reloadSkipped} and {@link TomlMetrics#reloadFailed}. Example:
+ *
+ * <pre>
+ * TomlWatcher watcher = new TomlWatcher();
+ * TomlWatcher.WatchedFile config = watcher.watch(new File("config.toml"));
+ * config.addListener((file, data) -&gt; reconfigure(data));
+ * Object port = ((Map) config.get().get("server")).get("port");// the latest valid data
+ * </pre>
+ * </p>
+ */
+public final class TomlWatcher implements Closeable {
+
+	/**
+	 * Receives the new data of a watched file.
+	 */
+	public interface Listener {
+		/**
+		 * Called when a file has been reloaded.
+		 *
+		 * @param file the file
+		 * @param data the new data, which must not be modified
+		 */
+		void reloaded(File file, Map<String, Object> data);
+
+		/**
+		 * Called when a file has changed but can't be reloaded. Its previous data is kept. Does nothing by default.
+		 *
+		 * @param file the file
+		 * @param error the error, an IOException or a TomlException
+		 */
+		default void failed(File file, Exception error) {}
+	}
+
+	private final long debounceNanos, maxDelayNanos;
+	private final TomlMetrics metrics;
+	private final WatchService watchService;
+	private final ScheduledThreadPoolExecutor pool;
+	private final Thread watchThread;
+	private final Map<Path, Map<Path, WatchedFile>> directories = new ConcurrentHashMap<>();
+	private volatile boolean closed = false;
+
+	/**
+	 * Creates a new TomlWatcher with a debounce delay of 100 milliseconds, 2 threads to parse the files, and the
+	 * metrics set with {@link Toml#setMetrics(TomlMetrics)}.
+	 *
+	 * @throws IOException if the WatchService can't be created
+	 */
+	public TomlWatcher() throws IOException {
+		this(100, 2, Toml.defaultMetrics());
+	}
+
+	/**
+	 * Creates a new TomlWatcher.
+	 *
+	 * @param debounceMillis the debounce delay: a file is reloaded when it hasn't changed during this delay. When
+	 *        a file changes continuously, it's reloaded at least every 10 delays.
+	 * @param threads the number of threads that parse the files
+	 * @param metrics the metrics, or {@link TomlMetrics#NONE}
+	 * @throws IOException if the WatchService can't be created
+	 */
+	public TomlWatcher(long debounceMillis, int threads, TomlMetrics metrics) throws IOException {
+		if (debounceMillis < 0)
+			throw new IllegalArgumentException("Invalid debounce delay " + debounceMillis);
+		if (threads < 1)
+			throw new IllegalArgumentException("Invalid number of threads " + threads);
+		this.debounceNanos = TimeUnit.MILLISECONDS.toNanos(debounceMillis);
+		this.maxDelayNanos = debounceNanos * 10;
+		this.metrics = metrics;
+		this.watchService = FileSystems.getDefault().newWatchService();
+		this.pool = new ScheduledThreadPoolExecutor(threads, runnable -> {
+			Thread thread = new Thread(runnable, "TomlWatcher-reload");
+			thread.setDaemon(true);
+			return thread;
+		});
+		pool.setRemoveOnCancelPolicy(true);
+		this.watchThread = new Thread(this::watchEvents, "TomlWatcher");
+		watchThread.setDaemon(true);
+		watchThread.start();
+	}
+
+	/**
+	 * Starts watching a file. The file is read immediately. If the file is already watched, returns the same
+	 * WatchedFile.
+	 *
+	 * @param file the file to watch
+	 * @return the watched file, with its current data
+	 * @throws IOException if the file can't be read
+	 * @throws TomlException if the file isn't valid
+	 */
+	public WatchedFile watch(File file) throws IOException {
+		if (closed)
+			throw new IllegalStateException("The watcher is closed");
+		Path path = file.toPath().toAbsolutePath().normalize();
+		Path directory = path.getParent();
+		Map<Path, WatchedFile> files = directories.get(directory);
+		WatchedFile watched = (files == null) ? null : files.get(path.getFileName());
+		if (watched != null)
+			return watched;
+
+		watched = new WatchedFile(file, path);
+		watched.data = watched.read();
+		synchronized (directories) {
+			files = directories.get(directory);
+			if (files == null) {
+				directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+						StandardWatchEventKinds.ENTRY_MODIFY);
+				files = new ConcurrentHashMap<>();
+				directories.put(directory, files);
+			}
+			WatchedFile previous = files.putIfAbsent(path.getFileName(), watched);
+			return (previous == null) ? watched : previous;
+		}
+	}
+
+	/**
+	 * Stops watching a file. Its WatchedFile keeps its last data.
+	 *
+	 * @param file the file
+	 * @return true if the file was watched
+	 */
+	public boolean unwatch(File file) {
+		Path path = file.toPath().toAbsolutePath().normalize();
+		Map<Path, WatchedFile> files = directories.get(path.getParent());
+		return files != null && files.remove(path.getFileName()) != null;
+	}
+
+	/**
+	 * Stops watching all the files, and stops the threads of the watcher.
+	 *
+	 * @throws IOException if an error occurs
+	 */
+	@Override
+	public void close() throws IOException {
+		closed = true;
+		pool.shutdownNow();
+		watchService.close();
+	}
+
+	/**
+	 * Receives the events of the WatchService, until it's closed.
+	 */
+	private void watchEvents() {
+		try {
+			while (!closed) {
+				WatchKey key = watchService.take();
+				long now = System.nanoTime();
+				Map<Path, WatchedFile> files = directories.get((Path) key.watchable());
+				if (files != null) {
+					for (WatchEvent<?> event : key.pollEvents()) {
+						if (event.kind() == StandardWatchEventKinds.OVERFLOW) {// some events are lost
+							for (WatchedFile watched : files.values()) {
+								watched.changed(now);
+							}
+						} else {
+							WatchedFile watched = files.get((Path) event.context());
+							if (watched != null)
+								watched.changed(now);
+						}
+					}
+				}
+				key.reset();
+			}
+		} catch (InterruptedException | ClosedWatchServiceException ex) {
+			// the watcher is closed
+		}
+	}
+
+	/**
+	 * A watched file, and its latest valid data.
+	 */
+	public final class WatchedFile {
+
+		private final File file;
+		private final Path path;
+		private final String source;
+		private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+		private volatile Map<String, Object> data;
+		private volatile Exception lastError;
+
+		// The state of the file, when it was read for the last time
+		private long size = -1, lastModified = -1, readTime = -1;
+		private byte[] digest;
+
+		// Debouncing, guarded by this
+		private long pendingSince = 0;// the time of the first change not reloaded yet, or 0
+		private long lastChange;// the time of the last change
+		private int generation = 0;// to ignore the reloads that have been rescheduled
+		private boolean scheduled = false, running = false;
+
+		private WatchedFile(File file, Path path) {
+			this.file = file;
+			this.path = path;
+			this.source = file.getPath();
+		}
+
+		/**
+		 * Returns the watched file.
+		 */
+		public File getFile() {
+			return file;
+		}
+
+		/**
+		 * Returns the latest valid data of the file. The data must not be modified.
+		 */
+		public Map<String, Object> get() {
+			return data;
+		}
+
+		/**
+		 * Returns the error of the last reload, or null if it was successful.
+		 */
+		public Exception getLastError() {
+			return lastError;
+		}
+
+		/**
+		 * Adds a listener, that will be notified of the next reloads.
+		 *
+		 * @param listener the listener
+		 */
+		public void addListener(Listener listener) {
+			listeners.add(listener);
+		}
+
+		/**
+		 * Removes a listener.
+		 *
+		 * @param listener the listener
+		 */
+		public void removeListener(Listener listener) {
+			listeners.remove(listener);
+		}
+
+		/**
+		 * Called when an event about this file is received: schedules a reload after the debounce delay.
+		 */
+		synchronized void changed(long now) {
+			lastChange = now;
+			if (pendingSince == 0)
+				pendingSince = now;
+			if (running || (scheduled && now - pendingSince >= maxDelayNanos))
+				return;// reloaded soon anyway
+			schedule(debounceNanos);
+		}
+
+		private void schedule(long delayNanos) {
+			if (closed)
+				return;
+			int scheduledGeneration = ++generation;
+			scheduled = true;
+			pool.schedule(() -> reload(scheduledGeneration), delayNanos, TimeUnit.NANOSECONDS);
+		}
+
+		private void reload(int scheduledGeneration) {
+			long since;
+			synchronized (this) {
+				if (scheduledGeneration != generation)
+					return;// rescheduled
+				scheduled = false;
+				running = true;
+				since = pendingSince;
+				pendingSince = 0;
+			}
+			try {
+				reload(since);
+			} finally {
+				synchronized (this) {
+					running = false;
+					if (pendingSince != 0)// changed during the reload
+						schedule(Math.max(0, debounceNanos - (System.nanoTime() - lastChange)));
+				}
+			}
+		}
+
+		private void reload(long since) {
+			Map<String, Object> newData;
+			try {
+				newData = read();
+			} catch (IOException | TomlException ex) {
+				lastError = ex;
+				metrics.reloadFailed(source, ex, System.nanoTime() - since);
+				for (Listener listener : listeners) {
+					try {
+						listener.failed(file, ex);
+					} catch (RuntimeException listenerError) {
+						reportError(listenerError);
+					}
+				}
+				return;
+			}
+			if (newData == null) {
+				metrics.reloadSkipped(source);
+				return;
+			}
+			data = newData;
+			lastError = null;
+			metrics.reloadFinished(source, System.nanoTime() - since);
+			for (Listener listener : listeners) {
+				try {
+					listener.reloaded(file, newData);
+				} catch (RuntimeException ex) {
+					reportError(ex);
+				}
+			}
+		}
+
+		/**
+		 * Reads the file if it has changed.
+		 *
+		 * @return the new data, or null if the file hasn't changed
+		 */
+		private Map<String, Object> read() throws IOException {
+			long newSize = Files.size(path);
+			long newLastModified = Files.getLastModifiedTime(path).toMillis();
+			// The modification date can't be trusted if it's too close to the last read: the file may have been
+			// modified again in the same tick of the clock of the file system.
+			if (newSize == size && newLastModified == lastModified && newLastModified < readTime - 2000)
+				return null;
+			long start = System.nanoTime();
+			readTime = System.currentTimeMillis();
+			byte[] bytes = Files.readAllBytes(path);
+			byte[] newDigest = sha256(bytes);
+			size = newSize;
+			lastModified = newLastModified;
+			if (Arrays.equals(newDigest, digest))// touched, but not modified
+				return null;
+			TomlReader reader = new TomlReader(new String(bytes, StandardCharsets.UTF_8), false, metrics, null);
+			reader.setSource(source, bytes.length, System.nanoTime() - start);
+			digest = newDigest;// even if the data is invalid, to parse it only once
+			return reader.read();
+		}
+
+		@Override
+		public String toString() {
+			return "WatchedFile[" + file + "]";
+		}
+	}
+
+	private static void reportError(RuntimeException ex) {
+		Thread thread = Thread.currentThread();
+		thread.getUncaughtExceptionHandler().uncaughtException(thread, ex);
+	}
+
+	private static byte[] sha256(byte[] bytes) {
+		try {
+			return MessageDigest.getInstance("SHA-256").digest(bytes);
+		} catch (NoSuchAlgorithmException ex) {
+			throw new IllegalStateException(ex);// SHA-256 is always available
+		}
+	}
+
+}
@@ -1,15 +1,20 @@
 package com.electronwill.toml;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.io.Writer;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.ZonedDateTime;
 import java.time.temporal.TemporalAccessor;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * Class for writing TOML v0.4.0.
@@ -34,8 +39,24 @@ public final class TomlWriter {
 	private final int indentSize;
 	private final char indentCharacter;
 	private final String lineSeparator;
-	private final LinkedList<String> tablesNames = new LinkedList<>();
+	private final TomlMetrics metrics;
+	private final StringBuilder headerBuilder = new StringBuilder();
+
+	/*
+	 * The current table path, as a stack of names. For each depth, tablesHeaders contains the encoded full name
+	 * of the table, ie "a.b.c", so that each header is written in one call. The entries above tablesDepth are
+	 * kept to be reused when the same table is entered again (like for each element of an array of tables):
+	 * they are valid up to validDepth.
+	 */
+	private String[] tablesNames = new String[8];
+	private char[][] tablesHeaders = new char[8][];
+	private int[] headersLengths = new int[8];
+	private int tablesDepth = 0, validDepth = 0;
+	private final char[] numberBuffer = new char[FastNumberFormatter.MAX_CHARS];
 	private int lineBreaks = 0, indentationLevel = -1;// -1 to prevent indenting the first level
+	private int tables = 0, keys = 0, values = 0;// counters for the metrics
+	private long chars = 0;
+	private String source = "writer";
 
 	/**
 	 * Creates a new TomlWriter with the defaults parameters. The system line separator is used (ie '\n' on
@@ -62,7 +83,8 @@ public final class TomlWriter {
 	}
 
 	/**
-	 * Creates a new TomlWriter with the specified parameters.
+	 * Creates a new TomlWriter with the specified parameters. The metrics set with
+	 * {@link Toml#setMetrics(TomlMetrics)} are used.
 	 *
 	 * @param writer where to write the data
 	 * @param indentSize the size of each indent
@@ -70,10 +92,32 @@ public final class TomlWriter {
 	 * @param lineSeparator the String to write to break lines
 	 */
 	public TomlWriter(Writer writer, int indentSize, boolean indentWithSpaces, String lineSeparator) {
+		this(writer, indentSize, indentWithSpaces, lineSeparator, Toml.defaultMetrics());
+	}
+
+	/**
+	 * Creates a new TomlWriter with the specified parameters, that reports its operations to the specified
+	 * metrics.
+	 *
+	 * @param writer where to write the data
+	 * @param indentSize the size of each indent
+	 * @param indentWithSpaces true to indent with spaces, false to indent with tabs
+	 * @param lineSeparator the String to write to break lines
+	 * @param metrics the metrics, or {@link TomlMetrics#NONE}
+	 */
+	public TomlWriter(Writer writer, int indentSize, boolean indentWithSpaces, String lineSeparator, TomlMetrics metrics) {
 		this.writer = writer;
 		this.indentSize = indentSize;
 		this.indentCharacter = indentWithSpaces ? ' ' : '\t';
 		this.lineSeparator = lineSeparator;
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Sets where the data is written, for the metrics.
+	 */
+	void setSource(String source) {
+		this.source = source;
 	}
 
 	/**
@@ -101,18 +145,233 @@ public final class TomlWriter {
 	 * @throws IOException if an error occurs
 	 */
 	public void write(Map<String, Object> data) throws IOException {
-		writeTableContent(data);
+		if (metrics == TomlMetrics.NONE) {
+			writeTableContent(data);
+			return;
+		}
+		long start = writeStarted();
+		try {
+			writeTableContent(data);
+		} catch (IOException | RuntimeException ex) {
+			metrics.writeFailed(source, ex, System.nanoTime() - start);
+			throw ex;
+		} catch (Error ex) {
+			// Reported too, so that the metrics never keep an operation pending
+			metrics.writeFailed(source, new RuntimeException(ex), System.nanoTime() - start);
+			throw ex;
+		}
+		metrics.writeFinished(source, chars, tables, keys, values, System.nanoTime() - start);
 	}
 
-	private void writeTableName() throws IOException {
-		Iterator<String> it = tablesNames.iterator();
-		while (it.hasNext()) {
-			String namePart = it.next();
-			writeKey(namePart);
-			if (it.hasNext()) {
-				write('.');
+	/**
+	 * Writes the specified data in the TOML format, rendering the top-level tables in parallel. Each top-level
+	 * table, or each chunk of a top-level array of tables, is written to its own buffer by a task of the given
+	 * pool. The buffers are then written in the original order, therefore the result is exactly the same as
+	 * with {@link #write(Map)}.
+	 *
+	 * @param data the data to write
+	 * @param pool the pool that runs the tasks
+	 * @throws IOException if an error occurs
+	 */
+	public void write(Map<String, Object> data, ForkJoinPool pool) throws IOException {
+		if (metrics == TomlMetrics.NONE) {
+			writeParallel(data, pool);
+			return;
+		}
+		long start = writeStarted();
+		try {
+			writeParallel(data, pool);
+		} catch (IOException | RuntimeException ex) {
+			metrics.writeFailed(source, ex, System.nanoTime() - start);
+			throw ex;
+		} catch (Error ex) {
+			// Reported too, so that the metrics never keep an operation pending
+			metrics.writeFailed(source, new RuntimeException(ex), System.nanoTime() - start);
+			throw ex;
+		}
+		metrics.writeFinished(source, chars, tables, keys, values, System.nanoTime() - start);
+	}
+
+	/**
+	 * Notifies the metrics that a write operation begins, and resets the counters.
+	 *
+	 * @return the start time, in nanoseconds
+	 */
+	private long writeStarted() {
+		metrics.writeStarted(source);
+		tables = keys = values = 0;
+		chars = 0;
+		return System.nanoTime();
+	}
+
+	private void writeParallel(Map<String, Object> data, ForkJoinPool pool) throws IOException {
+		writeTableContent(data, true);// the simple values are written first, like in writeTableContent(Map)
+
+		List<ForkJoinTask<TomlWriter>> segments = new ArrayList<>();
+		for (Map.Entry<String, Object> entry : data.entrySet()) {
+			String name = entry.getKey();
+			Object value = entry.getValue();
+			Object[] tables = null;
+			if (value instanceof Map) {
+				@SuppressWarnings("unchecked")
+				Map<String, Object> table = (Map<String, Object>) value;
+				segments.add(pool.submit(new Segment(name, table, null, 0, 0)));
+			} else if (value instanceof Collection) {
+				Collection<?> c = (Collection<?>) value;
+				if (!c.isEmpty() && c.iterator().next() instanceof Map) {
+					tables = c.toArray();
+				}
+			} else if (value instanceof Object[]) {
+				Object[] array = (Object[]) value;
+				if (array.length > 0 && array[0] instanceof Map) {
+					tables = array;
+				}
+			}
+			if (tables != null) {// splits the array of tables in chunks
+				int chunkSize = Math.max(64, tables.length / (4 * pool.getParallelism()));
+				for (int i = 0; i < tables.length; i += chunkSize) {
+					int end = Math.min(i + chunkSize, tables.length);
+					segments.add(pool.submit(new Segment(name, null, tables, i, end)));
+				}
+			}
+		}
+		try {
+			for (ForkJoinTask<TomlWriter> segment : segments) {
+				TomlWriter segmentWriter = segment.join();
+				FastStringWriter buffer = (FastStringWriter) segmentWriter.writer;
+				buffer.writeTo(writer);
+				buffer.release();
+				chars += segmentWriter.chars;
+				tables += segmentWriter.tables;
+				keys += segmentWriter.keys;
+				values += segmentWriter.values;
+				lineBreaks = segmentWriter.lineBreaks;// each segment starts with a header, ie not with a newline
+			}
+		} catch (UncheckedIOException ex) {
+			throw ex.getCause();
+		} finally {
+			for (ForkJoinTask<TomlWriter> segment : segments) {
+				segment.cancel(false);
 			}
 		}
+		newLine();
+	}
+
+	/**
+	 * A part of the document written by {@link #write(Map, ForkJoinPool)}: a top-level table, or some
+	 * consecutive elements of a top-level array of tables.
+	 */
+	private final class Segment extends RecursiveTask<TomlWriter> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final String name;
+		private final Map<String, Object> table;
+		private final Object[] tables;
+		private final int start, end;
+
+		Segment(String name, Map<String, Object> table, Object[] tables, int start, int end) {
+			this.name = name;
+			this.table = table;
+			this.tables = tables;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected TomlWriter compute() {
+			TomlWriter tw = new TomlWriter(new FastStringWriter(), indentSize, indentCharacter == ' ', lineSeparator,
+					TomlMetrics.NONE);
+			try {
+				tw.pushTableName(name);
+				if (table != null) {
+					tw.writeTableHeader(false);
+					tw.writeTableContent(table);
+				} else {
+					for (int i = start; i < end; i++) {
+						@SuppressWarnings("unchecked")
+						Map<String, Object> element = (Map<String, Object>) tables[i];
+						tw.writeTableHeader(true);
+						tw.writeTableContent(element);
+					}
+				}
+				tw.popTableName();
+				if (table != null || end == tables.length) {
+					tw.newLine();
+				}
+			} catch (IOException ex) {
+				throw new UncheckedIOException(ex);
+			}
+			return tw;
+		}
+	}
+
+	/**
+	 * Enters a sub-table: adds its name to the current table path and increases the indentation.
+	 */
+	void pushTableName(String name) {
+		int depth = tablesDepth;
+		if (depth == tablesNames.length) {
+			int newLength = depth * 2;
+			tablesNames = Arrays.copyOf(tablesNames, newLength);
+			tablesHeaders = Arrays.copyOf(tablesHeaders, newLength);
+			headersLengths = Arrays.copyOf(headersLengths, newLength);
+		}
+		if (depth >= validDepth || !name.equals(tablesNames[depth])) {// encodes the header
+			StringBuilder sb = headerBuilder;
+			sb.setLength(0);
+			if (depth > 0) {
+				sb.append(tablesHeaders[depth - 1], 0, headersLengths[depth - 1]);
+				sb.append('.');
+			}
+			appendKey(name, sb);
+			int length = sb.length();
+			char[] header = tablesHeaders[depth];
+			if (header == null || header.length < length) {
+				header = new char[Math.max(length, 16)];
+				tablesHeaders[depth] = header;
+			}
+			sb.getChars(0, length, header, 0);
+			headersLengths[depth] = length;
+			tablesNames[depth] = name;
+			validDepth = depth + 1;
+		}
+		tablesDepth = depth + 1;
+		indentationLevel++;
+	}
+
+	/**
+	 * Leaves the current table: removes the last name of the current table path and decreases the indentation.
+	 */
+	void popTableName() {
+		indentationLevel--;
+		tablesDepth--;
+	}
+
+	/**
+	 * Returns the number of names in the current table path.
+	 */
+	int tableDepth() {
+		return tablesDepth;
+	}
+
+	/**
+	 * Writes the header of the current table, ie [a.b.c], or [[a.b.c]] for an element of an array of tables.
+	 */
+	void writeTableHeader(boolean arrayOfTables) throws IOException {
+		tables++;
+		indent();
+		int last = tablesDepth - 1;
+		if (arrayOfTables) {
+			write("[[");
+			write(tablesHeaders[last], 0, headersLengths[last]);
+			write("]]\n");
+		} else {
+			write('[');
+			write(tablesHeaders[last], 0, headersLengths[last]);
+			write(']');
+			newLine();
+		}
 	}
 
 	private void writeTableContent(Map<String, Object> table) throws IOException {
@@ -120,6 +379,34 @@ public final class TomlWriter {
 		writeTableContent(table, false);
 	}
 
+	/**
+	 * Writes a table, with its [header] and its sub-tables, as if it were at the given path.
+	 */
+	void writeTable(String[] path, Map<String, Object> table) throws IOException {
+		for (String name : path) {
+			pushTableName(name);
+		}
+		writeTableHeader(false);
+		writeTableContent(table);
+		for (int i = 0; i < path.length; i++) {
+			popTableName();
+		}
+	}
+
+	/**
+	 * Writes one element of an array of tables, with its [[header]], as if it were in the array of the given path.
+	 */
+	void writeArrayTableElement(String[] arrayPath, Map<String, Object> element) throws IOException {
+		for (String name : arrayPath) {
+			pushTableName(name);
+		}
+		writeTableHeader(true);
+		writeTableContent(element);
+		for (int i = 0; i < arrayPath.length; i++) {
+			popTableName();
+		}
+	}
+
 	/**
 	 * Writes the content of a table.
 	 *
@@ -138,18 +425,13 @@ public final class TomlWriter {
 					if (simpleValues) {
 						continue;
 					}
-					tablesNames.addLast(name);
-					indentationLevel++;
+					pushTableName(name);
 					for (Object element : c) {
-						indent();
-						write("[[");
-						writeTableName();
-						write("]]\n");
+						writeTableHeader(true);
 						Map<String, Object> map = (Map) element;
 						writeTableContent(map);
 					}
-					indentationLevel--;
-					tablesNames.removeLast();
+					popTableName();
 				} else {// normal array
 					if (!simpleValues) {
 						continue;
@@ -165,18 +447,13 @@ public final class TomlWriter {
 					if (simpleValues) {
 						continue;
 					}
-					tablesNames.addLast(name);
-					indentationLevel++;
+					pushTableName(name);
 					for (Object element : array) {
-						indent();
-						write("[[");
-						writeTableName();
-						write("]]\n");
+						writeTableHeader(true);
 						Map<String, Object> map = (Map) element;
 						writeTableContent(map);
 					}
-					indentationLevel--;
-					tablesNames.removeLast();
+					popTableName();
 				} else {// normal array
 					if (!simpleValues) {
 						continue;
@@ -190,18 +467,10 @@ public final class TomlWriter {
 				if (simpleValues) {
 					continue;
 				}
-				tablesNames.addLast(name);
-				indentationLevel++;
-
-				indent();
-				write('[');
-				writeTableName();
-				write(']');
-				newLine();
+				pushTableName(name);
+				writeTableHeader(false);
 				writeTableContent((Map) value);
-
-				indentationLevel--;
-				tablesNames.removeLast();
+				popTableName();
 			} else {// simple value
 				if (!simpleValues) {
 					continue;
@@ -216,26 +485,48 @@ public final class TomlWriter {
 		newLine();
 	}
 
-	private void writeKey(String key) throws IOException {
+	// writeKey, writeString, writeValue, writeLong, writeDouble, newLine, write and indent are package-private, not
+	// private, because TomlStreamWriter writes its keys and values with them, to use exactly the same formatting.
+	void writeKey(String key) throws IOException {
+		keys++;
+		if (isBareKey(key)) {
+			write(key);
+		} else {
+			writeString(key);
+		}
+	}
+
+	void writeString(String str) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		appendString(str, sb);
+		write(sb.toString());
+	}
+
+	private static boolean isBareKey(String key) {
 		for (int i = 0; i < key.length(); i++) {
 			char c = key.charAt(i);
 			if (!(c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '-' || c == '_')) {
-				writeString(key);
-				return;
+				return false;
 			}
 		}
-		write(key);
+		return true;
 	}
 
-	private void writeString(String str) throws IOException {
-		StringBuilder sb = new StringBuilder();
+	private static void appendKey(String key, StringBuilder sb) {
+		if (isBareKey(key)) {
+			sb.append(key);
+		} else {
+			appendString(key, sb);
+		}
+	}
+
+	private static void appendString(String str, StringBuilder sb) {
 		sb.append('"');
 		for (int i = 0; i < str.length(); i++) {
 			char c = str.charAt(i);
 			addEscaped(c, sb);
 		}
 		sb.append('"');
-		write(sb.toString());
 	}
 
 	private void writeArray(Collection c) throws IOException {
@@ -257,51 +548,57 @@ public final class TomlWriter {
 	}
 
 	private void writeArray(byte[] array) throws IOException {
+		values += array.length;
 		write('[');
 		for (byte element : array) {
-			write(String.valueOf(element));
+			writeLong(element);
 			write(", ");
 		}
 		write(']');
 	}
 
 	private void writeArray(short[] array) throws IOException {
+		values += array.length;
 		write('[');
 		for (short element : array) {
-			write(String.valueOf(element));
+			writeLong(element);
 			write(", ");
 		}
 		write(']');
 	}
 
 	private void writeArray(char[] array) throws IOException {
+		values += array.length;
 		write('[');
 		for (char element : array) {
-			write(String.valueOf(element));
+			write(element);
 			write(", ");
 		}
 		write(']');
 	}
 
 	private void writeArray(int[] array) throws IOException {
+		values += array.length;
 		write('[');
 		for (int element : array) {
-			write(String.valueOf(element));
+			writeLong(element);
 			write(", ");
 		}
 		write(']');
 	}
 
 	private void writeArray(long[] array) throws IOException {
+		values += array.length;
 		write('[');
 		for (long element : array) {
-			write(String.valueOf(element));
+			writeLong(element);
 			write(", ");
 		}
 		write(']');
 	}
 
 	private void writeArray(float[] array) throws IOException {
+		values += array.length;
 		write('[');
 		for (float element : array) {
 			write(String.valueOf(element));
@@ -311,17 +608,23 @@ public final class TomlWriter {
 	}
 
 	private void writeArray(double[] array) throws IOException {
+		values += array.length;
 		write('[');
 		for (double element : array) {
-			write(String.valueOf(element));
+			writeDouble(element);
 			write(", ");
 		}
 		write(']');
 	}
 
-	private void writeValue(Object value) throws IOException {
+	void writeValue(Object value) throws IOException {
+		values++;
 		if (value instanceof String) {
 			writeString((String) value);
+		} else if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+			writeLong(((Number) value).longValue());
+		} else if (value instanceof Double) {
+			writeDouble((Double) value);
 		} else if (value instanceof Number || value instanceof Boolean) {
 			write(value.toString());
 		} else if (value instanceof TemporalAccessor) {
@@ -355,24 +658,50 @@ public final class TomlWriter {
 		}
 	}
 
-	private void newLine() throws IOException {
+	/**
+	 * Writes a long without creating a String.
+	 */
+	void writeLong(long value) throws IOException {
+		int length = FastNumberFormatter.formatLong(value, numberBuffer, 0);
+		write(numberBuffer, 0, length);
+	}
+
+	/**
+	 * Writes the shortest representation of a double, in the layout of {@link Double#toString(double)}, without
+	 * creating a String. See {@link FastNumberFormatter}.
+	 */
+	void writeDouble(double value) throws IOException {
+		int length = FastNumberFormatter.formatDouble(value, numberBuffer, 0);
+		write(numberBuffer, 0, length);
+	}
+
+	void newLine() throws IOException {
 		if (lineBreaks <= 1) {
 			writer.write(lineSeparator);
+			chars += lineSeparator.length();
 			lineBreaks++;
 		}
 	}
 
-	private void write(char c) throws IOException {
+	void write(char c) throws IOException {
 		writer.write(c);
+		chars++;
 		lineBreaks = 0;
 	}
 
-	private void write(String str) throws IOException {
+	void write(String str) throws IOException {
 		writer.write(str);
+		chars += str.length();
+		lineBreaks = 0;
+	}
+
+	private void write(char[] buffer, int offset, int length) throws IOException {
+		writer.write(buffer, offset, length);
+		chars += length;
 		lineBreaks = 0;
 	}
 
-	private void indent() throws IOException {
+	void indent() throws IOException {
 		for (int i = 0; i < indentationLevel; i++) {
 			for (int j = 0; j < indentSize; j++) {
 				write(indentCharacter);
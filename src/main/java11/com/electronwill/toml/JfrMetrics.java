@@ -0,0 +1,221 @@
+package com.electronwill.toml;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.FlightRecorderListener;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+import jdk.jfr.Timespan;
+
+/**
+ * {@link TomlMetrics} that emits JDK Flight Recorder events. This class is in the Java 11 part of the multi-release
+ * jar, and it's only loaded, by reflection, when the jdk.jfr module is available. The events are enabled and
+ * thresholded like any other JFR event, for example with
+ * {@code -XX:StartFlightRecording:com.electronwill.toml.Parse#threshold=1ms}.
+ * <p>
+ * These metrics are only used while a recording has the events enabled: a listener of the recorder updates
+ * {@link Toml.JfrState} when a recording starts or stops. The other times, the operations that use the default
+ * metrics aren't measured at all.
+ * </p>
+ * <p>
+ * The events are begun when the operation starts, so the duration of a Parse event doesn't include the time spent
+ * reading the input (see the inputDuration field). When no recording is running, nothing is kept between the
+ * calls.
+ * </p>
+ */
+final class JfrMetrics implements TomlMetrics, FlightRecorderListener {
+
+	private final ThreadLocal<ParseEvent> pendingParse = new ThreadLocal<>();
+	private final ThreadLocal<ParseErrorEvent> pendingError = new ThreadLocal<>();
+	private final ThreadLocal<WriteEvent> pendingWrite = new ThreadLocal<>();
+
+	JfrMetrics() {
+		FlightRecorder.addListener(this);
+		recordingStateChanged(null);// a recording may have been started before, with -XX:StartFlightRecording
+	}
+
+	@Override
+	public void recordingStateChanged(Recording recording) {
+		Toml.JfrState.recording = new ParseEvent().isEnabled() || new ParseErrorEvent().isEnabled()
+				|| new WriteEvent().isEnabled();
+	}
+
+	@Override
+	public void readStarted(String source, boolean strictAsciiBareKeys) {
+		ParseEvent parse = new ParseEvent();
+		ParseErrorEvent error = new ParseErrorEvent();
+		if (parse.isEnabled()) {
+			parse.strictAsciiBareKeys = strictAsciiBareKeys;
+			parse.begin();
+			pendingParse.set(parse);
+		}
+		if (error.isEnabled()) {
+			error.strictAsciiBareKeys = strictAsciiBareKeys;
+			error.begin();
+			pendingError.set(error);
+		}
+	}
+
+	@Override
+	public void readFinished(String source, long bytes, long chars, int tables, int keys, int values, long inputNanos,
+			long parseNanos) {
+		pendingError.remove();
+		ParseEvent event = pendingParse.get();
+		if (event == null)
+			return;
+		pendingParse.remove();
+		event.end();
+		if (event.shouldCommit()) {
+			event.source = source;
+			event.bytes = bytes;
+			event.chars = chars;
+			event.tables = tables;
+			event.keys = keys;
+			event.values = values;
+			event.inputDuration = inputNanos;
+			event.commit();
+		}
+	}
+
+	@Override
+	public void readFailed(String source, int line, TomlException error, long nanos) {
+		pendingParse.remove();
+		ParseErrorEvent event = pendingError.get();
+		if (event == null)
+			return;
+		pendingError.remove();
+		event.end();
+		if (event.shouldCommit()) {
+			event.source = source;
+			event.line = line;
+			event.message = error.getMessage();
+			event.commit();
+		}
+	}
+
+	@Override
+	public void writeStarted(String source) {
+		WriteEvent event = new WriteEvent();
+		if (event.isEnabled()) {
+			event.begin();
+			pendingWrite.set(event);
+		}
+	}
+
+	@Override
+	public void writeFinished(String source, long chars, int tables, int keys, int values, long nanos) {
+		WriteEvent event = pendingWrite.get();
+		if (event == null)
+			return;
+		pendingWrite.remove();
+		event.end();
+		if (event.shouldCommit()) {
+			event.source = source;
+			event.chars = chars;
+			event.tables = tables;
+			event.keys = keys;
+			event.values = values;
+			event.commit();
+		}
+	}
+
+	@Override
+	public void writeFailed(String source, Exception error, long nanos) {
+		WriteEvent event = pendingWrite.get();
+		if (event == null)
+			return;
+		pendingWrite.remove();
+		event.end();
+		if (event.shouldCommit()) {
+			event.source = source;
+			event.error = error.toString();
+			event.commit();
+		}
+	}
+
+	@Name("com.electronwill.toml.Parse")
+	@Label("TOML Parse")
+	@Description("Parsing of some TOML data")
+	@Category("TOML")
+	static final class ParseEvent extends Event {
+
+		@Label("Source")
+		@Description("File path, \"string\", \"stream\" or \"reader\"")
+		String source;
+
+		@Label("Size")
+		@DataAmount
+		long bytes;
+
+		@Label("Characters")
+		long chars;
+
+		@Label("Tables")
+		int tables;
+
+		@Label("Keys")
+		int keys;
+
+		@Label("Values")
+		int values;
+
+		@Label("Strict ASCII Bare Keys")
+		boolean strictAsciiBareKeys;
+
+		@Label("Input Duration")
+		@Description("Time spent reading the input, before the parsing")
+		@Timespan
+		long inputDuration;
+	}
+
+	@Name("com.electronwill.toml.ParseError")
+	@Label("TOML Parse Error")
+	@Description("Parsing of some invalid TOML data")
+	@Category("TOML")
+	static final class ParseErrorEvent extends Event {
+
+		@Label("Source")
+		String source;
+
+		@Label("Line")
+		int line;
+
+		@Label("Message")
+		String message;
+
+		@Label("Strict ASCII Bare Keys")
+		boolean strictAsciiBareKeys;
+	}
+
+	@Name("com.electronwill.toml.Write")
+	@Label("TOML Write")
+	@Description("Writing of some data in the TOML format")
+	@Category("TOML")
+	static final class WriteEvent extends Event {
+
+		@Label("Destination")
+		@Description("File path, \"string\", \"stream\" or \"writer\"")
+		String source;
+
+		@Label("Characters")
+		long chars;
+
+		@Label("Tables")
+		int tables;
+
+		@Label("Keys")
+		int keys;
+
+		@Label("Values")
+		int values;
+
+		@Label("Error")
+		@Description("The error, if the write failed")
+		String error;
+	}
+
+}
@@ -0,0 +1,44 @@
+package com.electronwill.toml;
+
+/**
+ * Creates the {@link CharScanner}s. This is the version for Java 17+: if the jdk.incubator.vector module is
+ * available (with {@code --add-modules jdk.incubator.vector}), the big documents are scanned with the Vector API.
+ * Otherwise, or if the system property com.electronwill.toml.disableVector is true, the scanning is the same as
+ * on Java 8.
+ */
+final class CharScanners {
+
+	/**
+	 * Below this length, filling the window of a {@link VectorCharScanner} costs more than it saves.
+	 */
+	private static final int VECTOR_THRESHOLD = 4096;
+
+	private static final boolean VECTOR_AVAILABLE = isVectorAvailable();
+
+	private CharScanners() {}
+
+	/**
+	 * Creates a scanner for the specified data.
+	 *
+	 * @param data the data to scan
+	 * @return a scanner
+	 */
+	static CharScanner create(String data) {
+		if (VECTOR_AVAILABLE && data.length() >= VECTOR_THRESHOLD)
+			return new VectorCharScanner(data);
+		return new CharScanner(data);
+	}
+
+	private static boolean isVectorAvailable() {
+		if (Boolean.getBoolean("com.electronwill.toml.disableVector")
+				|| ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty())
+			return false;
+		try {
+			new VectorCharScanner("").skipSpaces(0);// loads the Vector API
+			return true;
+		} catch (LinkageError e) {
+			return false;
+		}
+	}
+
+}
@@ -0,0 +1,109 @@
+package com.electronwill.toml;
+
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@link CharScanner} that classifies 16 or 32 characters at a time (depending on the CPU) with the Vector API.
+ * The vectors can't be loaded from a String, so the characters are copied, with {@link String#getChars}, to a
+ * small window that slides forward with the scanning: the data is never copied as a whole. The remaining
+ * characters, at the end of the data, are checked by the scalar code.
+ */
+final class VectorCharScanner extends CharScanner {
+
+	private static final VectorSpecies<Short> SPECIES = ShortVector.SPECIES_PREFERRED;
+
+	/**
+	 * The size of the window, in chars. It's a multiple of the size of the vectors.
+	 */
+	static final int WINDOW_SIZE = 1024;
+
+	private final char[] window = new char[WINDOW_SIZE];
+	private final int length;
+	private int windowStart = 0, windowEnd = 0;// the part of the data that is in the window
+
+	VectorCharScanner(String data) {
+		super(data);
+		this.length = data.length();
+	}
+
+	/**
+	 * Loads a vector, after moving the window to the index if the vector isn't entirely in it.
+	 *
+	 * @param index the index of the first char, in the data
+	 */
+	private ShortVector load(int index) {
+		if (index < windowStart || index + SPECIES.length() > windowEnd) {
+			windowEnd = Math.min(index + WINDOW_SIZE, length);
+			windowStart = index;
+			data.getChars(windowStart, windowEnd, window, 0);
+		}
+		return ShortVector.fromCharArray(SPECIES, window, index - windowStart);
+	}
+
+	@Override
+	int skipSpaces(int from) {
+		int i = from;
+		for (; i + SPECIES.length() <= length; i += SPECIES.length()) {
+			ShortVector v = load(i);
+			VectorMask<Short> other = v.compare(VectorOperators.NE, (short) ' ')
+					.and(v.compare(VectorOperators.NE, (short) '\t'));
+			if (other.anyTrue())
+				return i + other.firstTrue();
+		}
+		return super.skipSpaces(i);
+	}
+
+	@Override
+	int basicStringEnd(int from) {
+		int i = from;
+		for (; i + SPECIES.length() <= length; i += SPECIES.length()) {
+			ShortVector v = load(i);
+			VectorMask<Short> special = v.eq((short) '"')
+					.or(v.eq((short) '\\'))
+					.or(v.eq((short) '\n'))
+					.or(v.eq((short) '\r'));
+			if (special.anyTrue())
+				return i + special.firstTrue();
+		}
+		return super.basicStringEnd(i);
+	}
+
+	@Override
+	int bareKeyEnd(int from, boolean strict) {
+		int i = from;
+		for (; i + SPECIES.length() <= length; i += SPECIES.length()) {
+			ShortVector v = load(i);
+			VectorMask<Short> forbidden = strict ? strictForbidden(v) : lenientForbidden(v);
+			if (forbidden.anyTrue())
+				return i + forbidden.firstTrue();
+		}
+		return super.bareKeyEnd(i, strict);
+	}
+
+	private static VectorMask<Short> strictForbidden(ShortVector v) {
+		// the chars above 0x7FFF are negative shorts, so they are outside of all the ranges
+		VectorMask<Short> allowed = inRange(v, 'a', 'z')
+				.or(inRange(v, 'A', 'Z'))
+				.or(inRange(v, '0', '9'))
+				.or(v.eq((short) '_'))
+				.or(v.eq((short) '-'));
+		return allowed.not();
+	}
+
+	private static VectorMask<Short> lenientForbidden(ShortVector v) {
+		return v.compare(VectorOperators.UNSIGNED_LE, (short) ' ')
+				.or(v.eq((short) '#'))
+				.or(v.eq((short) '='))
+				.or(v.eq((short) '.'))
+				.or(v.eq((short) '['))
+				.or(v.eq((short) ']'));
+	}
+
+	private static VectorMask<Short> inRange(ShortVector v, char min, char max) {
+		return v.compare(VectorOperators.GE, (short) min).and(v.compare(VectorOperators.LE, (short) max));
+	}
+
+}
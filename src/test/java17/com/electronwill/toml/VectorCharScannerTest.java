@@ -0,0 +1,115 @@
+package com.electronwill.toml;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+import jdk.incubator.vector.ShortVector;
+import org.junit.Test;
+
+/**
+ * Checks that {@link VectorCharScanner} finds the same characters as the scalar {@link CharScanner}, with data
+ * that ends inside or just after a vector, with the character to find at every position of a vector, and with
+ * scans that move its window forward and backward. Needs {@code --add-modules jdk.incubator.vector}.
+ */
+public class VectorCharScannerTest {
+
+	private static final int WIDTH = ShortVector.SPECIES_PREFERRED.length();
+
+	/**
+	 * The characters of each class: spaces, string ends, bare key characters, forbidden characters, and non-ASCII
+	 * characters, some of which are negative as shorts.
+	 */
+	private static final String ALPHABET = " \t\"\\\n\razAZ09_-#=.[]\u0000\u001f\u007f\u00e9\u7fff\u8000\uffff";
+
+	@Test
+	public void randomData() {
+		Random random = new Random(42);
+		for (int length = 0; length <= 4 * WIDTH + 3; length++) {
+			for (int n = 0; n < 50; n++) {
+				char[] chars = new char[length];
+				for (int i = 0; i < length; i++) {
+					chars[i] = ALPHABET.charAt(random.nextInt(ALPHABET.length()));
+				}
+				compare(new String(chars), length);
+			}
+		}
+	}
+
+	@Test
+	public void oneCharacterToFind() {
+		String[] runs = {" \t", "a", "a-Z_9", "\u00e9\u8000"};
+		for (String run : runs) {
+			for (int length = 0; length <= 3 * WIDTH + 1; length++) {
+				for (int position = 0; position <= length; position++) {
+					StringBuilder sb = new StringBuilder(length);
+					for (int i = 0; i < length; i++) {
+						sb.append(run.charAt(i % run.length()));
+					}
+					for (int k = 0; k < ALPHABET.length(); k++) {
+						if (position < length)
+							sb.setCharAt(position, ALPHABET.charAt(k));
+						compare(sb.toString(), 1);// 0 and 1: the vectors are loaded from any index
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void slidingWindow() {
+		Random random = new Random(42);
+		int length = 3 * VectorCharScanner.WINDOW_SIZE + WIDTH + 3;
+		StringBuilder sb = new StringBuilder(length);
+		String runs = " a\u00e9";
+		while (sb.length() < length) {// long runs, so that the scans cross the edges of the window
+			char c = runs.charAt(random.nextInt(runs.length()));
+			for (int i = random.nextInt(3 * WIDTH); i > 0 && sb.length() < length; i--) {
+				sb.append(c);
+			}
+			sb.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+		}
+		sb.setLength(length);
+		String data = sb.toString();
+		CharScanner scalar = new CharScanner(data);
+		CharScanner vector = new VectorCharScanner(data);
+		for (int n = 0; n < 20_000; n++) {// forward and backward moves of the window
+			int from = random.nextInt(length + 1);
+			check("skipSpaces", data, from, scalar.skipSpaces(from), vector.skipSpaces(from));
+			check("basicStringEnd", data, from, scalar.basicStringEnd(from), vector.basicStringEnd(from));
+			check("strict bareKeyEnd", data, from, scalar.bareKeyEnd(from, true), vector.bareKeyEnd(from, true));
+			check("lenient bareKeyEnd", data, from, scalar.bareKeyEnd(from, false), vector.bareKeyEnd(from, false));
+		}
+	}
+
+	/**
+	 * Compares the results of the two scanners, from each index of the data up to maxFrom.
+	 */
+	private static void compare(String data, int maxFrom) {
+		CharScanner scalar = new CharScanner(data);
+		CharScanner vector = new VectorCharScanner(data);
+		for (int from = 0; from <= Math.min(maxFrom, data.length()); from++) {
+			check("skipSpaces", data, from, scalar.skipSpaces(from), vector.skipSpaces(from));
+			check("basicStringEnd", data, from, scalar.basicStringEnd(from), vector.basicStringEnd(from));
+			check("strict bareKeyEnd", data, from, scalar.bareKeyEnd(from, true), vector.bareKeyEnd(from, true));
+			check("lenient bareKeyEnd", data, from, scalar.bareKeyEnd(from, false), vector.bareKeyEnd(from, false));
+		}
+	}
+
+	private static void check(String method, String data, int from, int expected, int actual) {
+		if (expected != actual)// the message is only built when needed
+			assertEquals(method + " from " + from + " in " + escape(data), expected, actual);
+	}
+
+	private static String escape(String data) {
+		StringBuilder sb = new StringBuilder("\"");
+		for (int i = 0; i < data.length(); i++) {
+			char c = data.charAt(i);
+			if (c >= ' ' && c < 0x7f)
+				sb.append(c);
+			else
+				sb.append(String.format("\\u%04x", (int) c));
+		}
+		return sb.append('"').toString();
+	}
+
+}